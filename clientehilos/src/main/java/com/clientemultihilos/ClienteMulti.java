@@ -1,5 +1,6 @@
 package com.clientemultihilos;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.ConnectException;
@@ -10,6 +11,8 @@ public class ClienteMulti {
         String host = "localhost";
         int puerto = 8081;
         long tiempoEspera = 10000; // 10 segundos
+        // "binario" pide al servidor los eventos de la partida en el protocolo binario
+        String protocolo = args.length > 0 ? args[0] : System.getProperty("cliente.protocolo", "texto");
 
         System.setProperty("file.encoding", "UTF-8");
 
@@ -25,6 +28,10 @@ public class ClienteMulti {
                 s = new Socket(host, puerto);
                 System.out.println("¡Conectado!"); // Se reinicia (no logueado)
 
+                if (protocolo.equalsIgnoreCase("binario")) {
+                    new DataOutputStream(s.getOutputStream()).writeUTF("/protocolo binario");
+                }
+
                 // --- 2. INICIAR HILOS DE COMUNICACIÓN ---
                 ParaMandar paraMandar = new ParaMandar(s);
                 hiloParaMandar = new Thread(paraMandar);
@@ -0,0 +1,137 @@
+package com.clientemultihilos;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Convierte los mensajes del protocolo binario del servidor en las mismas frases
+ * que manda el protocolo de texto.
+ *
+ * Cuerpo de la trama: byte 0 (marca), tipo, y datos en varint / texto UTF-8.
+ * La tabla de tipos es la de ProtocoloBinario en el servidor.
+ */
+public class DecodificadorBinario {
+
+    private static final int MESA = 1;
+    private static final int TURNO = 2;
+    private static final int TU_TURNO = 3;
+    private static final int CARTA = 4;
+    private static final int BUST = 5;
+    private static final int PLANTADO = 6;
+    private static final int RESULTADOS = 7;
+    private static final int CHAT = 8;
+    private static final int MANO = 9;
+    private static final int CHAT_NOMBRE = 10;
+
+    // Nombres por código de carta (1-12 numéricas, 13-17 acción y bonus)
+    private static final String[] CARTAS = {
+        "?", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12",
+        "Second Chance", "Freeze", "Flip Three", "x2", "+10"
+    };
+
+    // Nombres de los jugadores por asiento, según la última MESA
+    private List<String> mesa = new ArrayList<>();
+
+    private byte[] datos;
+    private int posicion;
+
+    public static boolean esBinaria(byte[] cuerpo) {
+        return cuerpo.length > 1 && cuerpo[0] == 0;
+    }
+
+    // Devuelve el texto a mostrar, o null si el mensaje no se imprime (MESA)
+    public String decodificar(byte[] cuerpo) {
+        this.datos = cuerpo;
+        this.posicion = 2; // Saltamos la marca y el tipo
+        int tipo = cuerpo[1];
+
+        switch (tipo) {
+            case MESA:
+                int n = entero();
+                List<String> nueva = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) nueva.add(texto());
+                mesa = nueva;
+                return null;
+            case TURNO:
+                return "\n>>> Turno de: " + jugador(entero()) + " <<<";
+            case TU_TURNO:
+                return "Tu mano actual: " + cartas() + "\nEs tu turno. Escribe /jalar o /parar";
+            case MANO:
+                return "Tu mano actual: " + cartas();
+            case CARTA:
+                String quien = jugador(entero());
+                return quien + " jaló: " + carta(entero());
+            case BUST:
+                return "¡BUST! " + jugador(entero()) + " ha perdido la ronda.";
+            case PLANTADO:
+                String nombre = jugador(entero());
+                return nombre + " se ha PLANTADO con " + entero() + " puntos provisionales.";
+            case RESULTADOS:
+                StringBuilder sb = new StringBuilder("\n--- FIN DE LA RONDA ---\nResultados:\n");
+                int filas = entero();
+                for (int i = 0; i < filas; i++) {
+                    String j = jugador(entero());
+                    int ronda = entero();
+                    int total = entero();
+                    sb.append(" -> ").append(j).append(": +").append(ronda)
+                      .append(" (Total: ").append(total).append(")\n");
+                }
+                return sb.toString();
+            case CHAT:
+                String remitente = jugador(entero());
+                return "<" + remitente + ">: " + texto();
+            case CHAT_NOMBRE:
+                String sinAsiento = texto();
+                return "<" + sinAsiento + ">: " + texto();
+            default:
+                return "[Mensaje binario desconocido: tipo " + tipo + "]";
+        }
+    }
+
+    private int entero() {
+        int valor = 0;
+        int corrimiento = 0;
+        int b;
+        do {
+            b = datos[posicion++] & 0xFF;
+            valor |= (b & 0x7F) << corrimiento;
+            corrimiento += 7;
+        } while ((b & 0x80) != 0);
+        return valor;
+    }
+
+    private String texto() {
+        int longitud = entero();
+        String s = new String(datos, posicion, longitud, StandardCharsets.UTF_8);
+        posicion += longitud;
+        return s;
+    }
+
+    private String jugador(int asiento) {
+        return asiento >= 0 && asiento < mesa.size() ? mesa.get(asiento) : "Jugador " + asiento;
+    }
+
+    private static String carta(int codigo) {
+        return codigo > 0 && codigo < CARTAS.length ? CARTAS[codigo] : "?";
+    }
+
+    private String cartas() {
+        int n = entero();
+        List<String> mano = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) mano.add(carta(entero()));
+        return mano.toString();
+    }
+
+    // Las tramas de texto traen UTF modificado (formato de writeUTF)
+    public static String textoDeTrama(byte[] cuerpo) throws IOException {
+        byte[] conLongitud = new byte[cuerpo.length + 2];
+        conLongitud[0] = (byte) (cuerpo.length >>> 8);
+        conLongitud[1] = (byte) cuerpo.length;
+        System.arraycopy(cuerpo, 0, conLongitud, 2, cuerpo.length);
+        return new DataInputStream(new ByteArrayInputStream(conLongitud)).readUTF();
+    }
+}
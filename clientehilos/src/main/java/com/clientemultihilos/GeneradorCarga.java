@@ -0,0 +1,51 @@
+package com.clientemultihilos;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Abre muchas conexiones inactivas contra el servidor para medir cuántas aguanta
+ * cada modo (hilos, virtual, nio) y cuánta memoria usa por conexión.
+ *
+ * Uso: java com.clientemultihilos.GeneradorCarga [host] [puerto] [conexiones] [segundosEspera]
+ */
+public class GeneradorCarga {
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int puerto = args.length > 1 ? Integer.parseInt(args[1]) : 8081;
+        int total = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        long espera = args.length > 3 ? Long.parseLong(args[3]) : 30;
+
+        List<Socket> sockets = new ArrayList<>();
+        long inicio = System.currentTimeMillis();
+
+        for (int i = 0; i < total; i++) {
+            try {
+                Socket s = new Socket();
+                s.connect(new InetSocketAddress(host, puerto), 5000);
+                sockets.add(s);
+            } catch (IOException e) {
+                System.out.println("Falló la conexión #" + (i + 1) + ": " + e.getMessage());
+                break;
+            }
+            if ((i + 1) % 1000 == 0) {
+                System.out.println((i + 1) + " conexiones abiertas...");
+            }
+        }
+
+        long duracion = System.currentTimeMillis() - inicio;
+        System.out.println("Conexiones abiertas: " + sockets.size() + "/" + total + " en " + duracion + " ms");
+        System.out.println("Manteniéndolas inactivas " + espera + " segundos...");
+        Thread.sleep(espera * 1000);
+
+        for (Socket s : sockets) {
+            try {
+                s.close();
+            } catch (IOException e) { /* ign */ }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.net.Socket;
 public class ParaRecibir implements Runnable {
     
     final DataInputStream entrada;
+    private final DecodificadorBinario decodificador = new DecodificadorBinario();
 
     public ParaRecibir(Socket s) throws IOException {
         entrada = new DataInputStream(s.getInputStream());
@@ -18,7 +19,16 @@ public class ParaRecibir implements Runnable {
         
         try {
             while(true){
-                mensaje = entrada.readUTF();
+                // Misma trama que readUTF, pero puede traer un mensaje del protocolo binario
+                byte[] cuerpo = new byte[entrada.readUnsignedShort()];
+                entrada.readFully(cuerpo);
+
+                if (DecodificadorBinario.esBinaria(cuerpo)) {
+                    mensaje = decodificador.decodificar(cuerpo);
+                    if (mensaje == null) continue;
+                } else {
+                    mensaje = DecodificadorBinario.textoDeTrama(cuerpo);
+                }
                 System.out.println(mensaje);
             }
         } catch (IOException ex) {
@@ -0,0 +1,477 @@
+package com.servidormulti;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Bitácora de solo agregar para las partidas en curso, en segmentos de tamaño fijo
+ * (bitacora-000001.log, ...) mapeados a memoria. Cada registro es
+ * [largo][crc][mesa][datos]: el largo cubre el registro entero, el CRC32C cubre mesa
+ * y datos, la mesa dice de qué partida es y los datos los arma BitacoraMesa.
+ *
+ * anotar() no bloquea ni encola: aparta su lugar en el segmento con un solo
+ * getAndAdd y copia el registro ahí, desde el hilo de la sala. Lo escrito en el mapa
+ * ya es del sistema operativo, así que si el proceso muere no se pierde; un hilo hace
+ * fsync de lo nuevo cada ventana corta, y si se cae la máquina se pierde a lo más esa
+ * ventana. El largo se escribe al final: un registro a medias queda en cero o con un
+ * CRC que no cuadra, y ahí termina la lectura del segmento.
+ *
+ * El registro que no cabe en el segmento abre el siguiente. Los segmentos viejos se
+ * compactan: si ya no tienen registros de mesas abiertas se borran, y si lo vivo es
+ * menos de la mitad se reescriben con solo eso (mismo número, así el orden se mantiene).
+ *
+ * Al arrancar, iniciar() abre un segmento nuevo; leer() recorre los de la ejecución
+ * anterior en su lugar, sin copiar los registros.
+ *
+ * Java no suelta un mapa hasta que el GC recoge su buffer, y Windows no deja borrar ni
+ * reemplazar un archivo mapeado. Cuando la compactación no puede, deja el cambio
+ * pendiente (bitacora-N.log.borrar, o la copia compactada en bitacora-N.log.compactado)
+ * y el siguiente arranque lo aplica antes de mapear nada. En Linux se aplica en el momento.
+ */
+public final class Bitacora {
+
+    private static final String PREFIJO = "bitacora-";
+    private static final String SUFIJO = ".log";
+    private static final String BORRAR = ".borrar";         // Marca: el segmento ya no tiene nada vivo
+    private static final String COMPACTADO = ".compactado"; // Copia completa que reemplaza al segmento
+    private static final int CABECERA = 16; // largo, crc y mesa
+
+    private static volatile Bitacora activa; // null = sin bitácora: anotar() no hace nada
+    private static final AtomicLong siguienteMesa = new AtomicLong(1);
+    private static final ThreadLocal<CRC32C> crcPorHilo = ThreadLocal.withInitial(CRC32C::new);
+
+    private final Path directorio;
+    private final int bytesPorSegmento;
+    private final long ventanaNanos;
+    private final Set<Long> mesasAbiertas = ConcurrentHashMap.newKeySet(); // Las que no escribieron FIN
+    private final LongAdder registros = new LongAdder();
+
+    private final ReentrantLock candado = new ReentrantLock(); // Para abrir segmentos y la lista de retirados
+    private volatile Segmento actual;
+    private final List<Segmento> retirados = new ArrayList<>(); // Llenos, con fsync pendiente
+    private volatile boolean compactarPendiente = false;
+
+    // Un segmento abierto para escribir
+    private static final class Segmento {
+        final int numero;
+        final FileChannel canal;
+        final MappedByteBuffer mapa;
+        final AtomicInteger posicion = new AtomicInteger(); // Siguiente lugar libre (puede pasarse del final)
+        final AtomicInteger escribiendo = new AtomicInteger();
+        final AtomicLong completos = new AtomicLong(); // Bytes ya copiados
+        int forzado = 0; // Hasta dónde se hizo fsync; solo lo toca el hilo de fsync
+
+        Segmento(int numero, FileChannel canal, MappedByteBuffer mapa) {
+            this.numero = numero;
+            this.canal = canal;
+            this.mapa = mapa;
+        }
+
+        int usados() {
+            return Math.min(posicion.get(), mapa.capacity());
+        }
+    }
+
+    private Bitacora(Path directorio, int numeroSegmento, int bytesPorSegmento, int ventanaMs) throws IOException {
+        this.directorio = directorio;
+        this.bytesPorSegmento = bytesPorSegmento;
+        this.ventanaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, ventanaMs));
+        this.actual = abrirSegmento(numeroSegmento);
+
+        Metricas.registrarIndicador("bitacora.sinFsyncBytes", () -> {
+            Segmento s = actual;
+            return s.usados() - s.forzado;
+        });
+        Thread hilo = new Thread(this::ejecutar, "Fsync-Bitacora");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Empieza a escribir en un segmento nuevo, después de los que dejó la ejecución
+     * anterior (esos se leen con leer()).
+     */
+    public static void iniciar(Path directorio, int bytesPorSegmento, int ventanaMs) throws IOException {
+        Files.createDirectories(directorio);
+        terminarPendientes(directorio); // Antes de mapear nada
+        int ultimo = 0;
+        long mayor = 0;
+        for (Map.Entry<Integer, Path> segmento : segmentos(directorio).entrySet()) {
+            ultimo = segmento.getKey();
+            if (sinRegistros(segmento.getValue())) {
+                // El de un arranque en el que no se jugó: si no, cada reinicio dejaría uno más
+                Files.delete(segmento.getValue());
+                continue;
+            }
+            mayor = Math.max(mayor, mayorMesa(segmento.getValue()));
+        }
+        siguienteMesa.set(mayor + 1);
+        activa = new Bitacora(directorio, ultimo + 1, bytesPorSegmento, ventanaMs);
+    }
+
+    public static boolean estaActiva() {
+        return activa != null;
+    }
+
+    public static long nuevaMesa() {
+        return siguienteMesa.getAndIncrement();
+    }
+
+    // Desde aquí los registros de la mesa se conservan al compactar
+    public static void abrirMesa(long mesa) {
+        Bitacora b = activa;
+        if (b != null) b.mesasAbiertas.add(mesa);
+    }
+
+    // La mesa escribió FIN: lo suyo ya se puede compactar
+    public static void cerrarMesa(long mesa) {
+        Bitacora b = activa;
+        if (b != null) b.mesasAbiertas.remove(mesa);
+    }
+
+    // Compacta los segmentos viejos en el hilo de fsync (por ejemplo, después de recuperar)
+    public static void compactar() {
+        Bitacora b = activa;
+        if (b != null) b.compactarPendiente = true;
+    }
+
+    public static void anotar(long mesa, byte[] datos) {
+        Bitacora b = activa;
+        if (b == null) return;
+        int largo = CABECERA + datos.length;
+        if (largo > b.bytesPorSegmento) {
+            System.err.println("Registro de bitácora de " + largo + " bytes: no cabe en un segmento. Se descarta.");
+            return;
+        }
+        CRC32C crc = crcPorHilo.get();
+        crc.reset();
+        crc.update((int) (mesa >>> 56));
+        crc.update((int) (mesa >>> 48));
+        crc.update((int) (mesa >>> 40));
+        crc.update((int) (mesa >>> 32));
+        crc.update((int) (mesa >>> 24));
+        crc.update((int) (mesa >>> 16));
+        crc.update((int) (mesa >>> 8));
+        crc.update((int) mesa);
+        crc.update(datos);
+        int suma = (int) crc.getValue();
+
+        while (true) {
+            Segmento s = b.actual;
+            s.escribiendo.incrementAndGet();
+            try {
+                int inicio = s.posicion.getAndAdd(largo);
+                if (inicio + largo <= s.mapa.capacity()) {
+                    s.mapa.putInt(inicio + 4, suma);
+                    s.mapa.putLong(inicio + 8, mesa);
+                    s.mapa.put(inicio + CABECERA, datos, 0, datos.length);
+                    s.mapa.putInt(inicio, largo); // Al final: sin largo el registro no existe
+                    s.completos.addAndGet(largo);
+                    b.registros.increment();
+                    return;
+                }
+            } finally {
+                s.escribiendo.decrementAndGet();
+            }
+            if (!b.siguienteSegmento(s)) return;
+        }
+    }
+
+    // --- Lectura ---
+
+    /** Lo que recibe leer(): los datos apuntan dentro del segmento y solo valen durante la llamada. */
+    @FunctionalInterface
+    public interface Lector {
+        void registro(long mesa, ByteBuffer datos);
+    }
+
+    /**
+     * Recorre, en orden, los registros de los segmentos anteriores al que abrió iniciar().
+     * Se puede llamar varias veces; no copia ni crea nada por registro.
+     */
+    public static void leer(Lector lector) throws IOException {
+        Bitacora b = activa;
+        if (b == null) return;
+        for (Map.Entry<Integer, Path> segmento : segmentos(b.directorio).entrySet()) {
+            if (segmento.getKey() >= b.actual.numero) break;
+            Cursor c = new Cursor(mapearLectura(segmento.getValue()), segmento.getValue());
+            while (c.avanzar()) lector.registro(c.mesa, c.datos);
+        }
+    }
+
+    // Recorre los registros válidos de un segmento en su lugar
+    private static final class Cursor {
+        private final ByteBuffer segmento;
+        private final Path archivo;
+        private final CRC32C crc = new CRC32C();
+        final ByteBuffer datos; // Vista sobre el segmento; se mueve a cada registro
+        private int siguiente = 0;
+        int inicio;
+        int largo;
+        long mesa;
+
+        Cursor(ByteBuffer segmento, Path archivo) {
+            this.segmento = segmento;
+            this.archivo = archivo;
+            this.datos = segmento.duplicate();
+        }
+
+        boolean avanzar() {
+            if (siguiente + CABECERA > segmento.limit()) return false;
+            int l = segmento.getInt(siguiente);
+            if (l == 0) return false; // Lo que sigue nunca se escribió
+            if (l < CABECERA || l > segmento.limit() - siguiente) {
+                System.err.println("Bitácora " + archivo.getFileName() + ": largo no válido en " + siguiente + ", se ignora el resto.");
+                return false;
+            }
+            datos.limit(siguiente + l).position(siguiente + 8);
+            crc.reset();
+            crc.update(datos);
+            if ((int) crc.getValue() != segmento.getInt(siguiente + 4)) {
+                // Lo último que se alcanzó a escribir antes de caerse; lo anterior vale
+                System.err.println("Bitácora " + archivo.getFileName() + ": registro dañado en " + siguiente + ", se ignora el resto.");
+                return false;
+            }
+            inicio = siguiente;
+            largo = l;
+            mesa = segmento.getLong(siguiente + 8);
+            datos.position(siguiente + CABECERA);
+            siguiente += l;
+            return true;
+        }
+    }
+
+    // Número de segmento -> archivo, en orden. Los marcados para borrar ya no cuentan
+    private static Map<Integer, Path> segmentos(Path directorio) throws IOException {
+        Map<Integer, Path> segmentos = new TreeMap<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, PREFIJO + "*" + SUFIJO)) {
+            for (Path archivo : archivos) {
+                String nombre = archivo.getFileName().toString();
+                if (Files.exists(archivo.resolveSibling(nombre + BORRAR))) continue;
+                try {
+                    segmentos.put(Integer.parseInt(nombre.substring(PREFIJO.length(), nombre.length() - SUFIJO.length())), archivo);
+                } catch (NumberFormatException e) {
+                    System.err.println("Se ignora un archivo extraño en la bitácora: " + nombre);
+                }
+            }
+        }
+        return segmentos;
+    }
+
+    private static MappedByteBuffer mapearLectura(Path archivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            return canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()); // Sigue válido al cerrar el canal
+        }
+    }
+
+    // Sin mapear: lo que se mapea aquí ya no se podría borrar en Windows
+    private static boolean sinRegistros(Path archivo) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            ByteBuffer largo = ByteBuffer.allocate(4);
+            while (largo.hasRemaining() && canal.read(largo) >= 0) {
+                // Hasta tener los 4 bytes o llegar al final
+            }
+            return largo.position() < 4 || largo.getInt(0) == 0;
+        }
+    }
+
+    // Lo que la compactación dejó pendiente porque el archivo seguía mapeado
+    private static void terminarPendientes(Path directorio) throws IOException {
+        List<Path> pendientes = new ArrayList<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio,
+                PREFIJO + "*" + SUFIJO + "{" + BORRAR + "," + COMPACTADO + "}")) {
+            for (Path archivo : archivos) pendientes.add(archivo);
+        }
+        for (Path pendiente : pendientes) {
+            String nombre = pendiente.getFileName().toString();
+            if (nombre.endsWith(BORRAR)) {
+                Files.deleteIfExists(pendiente.resolveSibling(nombre.substring(0, nombre.length() - BORRAR.length())));
+                Files.delete(pendiente);
+                Metricas.incrementar("bitacora.segmentosBorrados");
+            } else {
+                Files.move(pendiente, pendiente.resolveSibling(nombre.substring(0, nombre.length() - COMPACTADO.length())),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Metricas.incrementar("bitacora.segmentosCompactados");
+            }
+        }
+    }
+
+    private static long mayorMesa(Path archivo) throws IOException {
+        Cursor c = new Cursor(mapearLectura(archivo), archivo);
+        long mayor = 0;
+        while (c.avanzar()) mayor = Math.max(mayor, c.mesa);
+        return mayor;
+    }
+
+    // --- Segmentos ---
+
+    private Segmento abrirSegmento(int numero) throws IOException {
+        FileChannel canal = FileChannel.open(archivoSegmento(numero),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Mapear más allá del final estira el archivo a su tamaño fijo (con ceros)
+        return new Segmento(numero, canal, canal.map(FileChannel.MapMode.READ_WRITE, 0, bytesPorSegmento));
+    }
+
+    private Path archivoSegmento(int numero) {
+        return directorio.resolve(String.format("%s%06d%s", PREFIJO, numero, SUFIJO));
+    }
+
+    // Lo llama quien no cupo en el segmento lleno; devuelve false si no se pudo seguir
+    private boolean siguienteSegmento(Segmento lleno) {
+        candado.lock();
+        try {
+            if (actual != lleno) return true; // Otro hilo ya abrió el siguiente
+            actual = abrirSegmento(lleno.numero + 1);
+            retirados.add(lleno);
+            compactarPendiente = true;
+            return true;
+        } catch (IOException e) {
+            System.err.println("No se pudo abrir el segmento " + (lleno.numero + 1) + " de la bitácora, se desactiva: " + e.getMessage());
+            activa = null;
+            return false;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    // --- Hilo de fsync ---
+
+    private void ejecutar() {
+        while (true) {
+            LockSupport.parkNanos(ventanaNanos);
+            try {
+                forzarRetirados();
+                forzar(actual, false);
+                if (compactarPendiente) {
+                    compactarPendiente = false;
+                    compactarSegmentos();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error en el fsync de la bitácora: " + e.getMessage());
+            }
+        }
+    }
+
+    // Un segmento lleno sin nadie copiándole nada ya no cambia: todo lo suyo cuenta como completo
+    private void forzar(Segmento s, boolean lleno) {
+        // Lo apartado puede no estar copiado todavía: si falta algo, el tramo se repite
+        long completos = lleno ? s.usados() : s.completos.get();
+        int hasta = s.usados();
+        if (hasta <= s.forzado) return;
+        long inicio = System.nanoTime();
+        s.mapa.force(s.forzado, hasta - s.forzado);
+        Metricas.incrementar("bitacora.fsyncs");
+        Metricas.sumar("bitacora.fsyncMicros", (System.nanoTime() - inicio) / 1000);
+        Metricas.sumar("bitacora.registros", registros.sumThenReset());
+        if (completos == hasta) {
+            Metricas.sumar("bitacora.bytes", hasta - s.forzado);
+            s.forzado = hasta;
+        }
+    }
+
+    // Un segmento lleno se suelta cuando nadie le está copiando nada y ya tuvo su fsync
+    private void forzarRetirados() throws IOException {
+        candado.lock();
+        try {
+            for (int i = retirados.size() - 1; i >= 0; i--) {
+                Segmento s = retirados.get(i);
+                if (s.escribiendo.get() > 0) continue;
+                forzar(s, true);
+                s.canal.close(); // El mapa sigue hasta que el GC recoja el segmento
+                retirados.remove(i);
+            }
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    // --- Compactación ---
+
+    private void compactarSegmentos() throws IOException {
+        long inicio = System.nanoTime();
+        int desde;
+        candado.lock();
+        try {
+            desde = actual.numero;
+            for (Segmento s : retirados) desde = Math.min(desde, s.numero); // Esos todavía se escriben
+        } finally {
+            candado.unlock();
+        }
+        for (Map.Entry<Integer, Path> segmento : segmentos(directorio).entrySet()) {
+            if (segmento.getKey() >= desde) break;
+            compactarSegmento(segmento.getValue());
+        }
+        Metricas.sumar("bitacora.compactacionMicros", (System.nanoTime() - inicio) / 1000);
+    }
+
+    private void compactarSegmento(Path archivo) throws IOException {
+        String nombre = archivo.getFileName().toString();
+        if (Files.exists(archivo.resolveSibling(nombre + COMPACTADO))) return; // Ya compactado, falta el arranque
+        MappedByteBuffer mapa = mapearLectura(archivo);
+        Cursor c = new Cursor(mapa, archivo);
+        long usados = 0, vivos = 0;
+        while (c.avanzar()) {
+            usados += c.largo;
+            if (mesasAbiertas.contains(c.mesa)) vivos += c.largo;
+        }
+        long tamaño = mapa.capacity();
+        if (vivos == 0) {
+            try {
+                Files.delete(archivo);
+            } catch (IOException e) { // Sigue mapeado (Windows): lo borra el siguiente arranque
+                Files.createFile(archivo.resolveSibling(nombre + BORRAR));
+                Metricas.incrementar("bitacora.compactacionesPendientes");
+                return;
+            }
+            Metricas.incrementar("bitacora.segmentosBorrados");
+            Metricas.sumar("bitacora.bytesLiberados", tamaño);
+            return;
+        }
+        if (vivos * 2 > usados) return; // Todavía vale la pena como está
+
+        // Solo los registros de mesas abiertas, en el mismo orden y con el mismo número
+        Path temporal = archivo.resolveSibling(nombre + ".tmp");
+        try (FileChannel salida = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer registro = mapa.duplicate();
+            c = new Cursor(mapa, archivo);
+            while (c.avanzar()) {
+                if (!mesasAbiertas.contains(c.mesa)) continue;
+                registro.limit(c.inicio + c.largo).position(c.inicio);
+                while (registro.hasRemaining()) salida.write(registro);
+            }
+            salida.force(true);
+        }
+        // Ya completa: desde aquí el arranque puede aplicarla aunque el reemplazo falle
+        Path compactado = archivo.resolveSibling(nombre + COMPACTADO);
+        Files.move(temporal, compactado, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            Files.move(compactado, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) { // Sigue mapeado (Windows): lo reemplaza el siguiente arranque
+            Metricas.incrementar("bitacora.compactacionesPendientes");
+            return;
+        }
+        Metricas.incrementar("bitacora.segmentosCompactados");
+        Metricas.sumar("bitacora.bytesLiberados", tamaño - vivos);
+    }
+}
@@ -0,0 +1,114 @@
+package com.servidormulti;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Un hilo con su propio Selector. Lee y escribe en los canales que tiene registrados;
+ * nunca ejecuta lógica de juego ni accede a la base de datos.
+ */
+class BucleSelector implements Runnable {
+
+    // Una trama de writeUTF mide como máximo 2 + 65535 bytes
+    private static final int TAM_LECTURA = 64 * 1024;
+
+    private final Selector selector;
+    private final Queue<ConexionNIO> porRegistrar = new ConcurrentLinkedQueue<>();
+    private final Queue<ConexionNIO> porEscribir = new ConcurrentLinkedQueue<>();
+
+    // Búfer compartido por todas las conexiones de este bucle
+    private final ByteBuffer lectura = ByteBuffer.allocateDirect(TAM_LECTURA);
+
+    BucleSelector() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    void registrar(ConexionNIO conexion) {
+        porRegistrar.add(conexion);
+        selector.wakeup();
+    }
+
+    void solicitarEscritura(ConexionNIO conexion) {
+        porEscribir.add(conexion);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+                procesarRegistros();
+                procesarEscriturasPendientes();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey llave = it.next();
+                    it.remove();
+                    ConexionNIO conexion = (ConexionNIO) llave.attachment();
+
+                    if (!llave.isValid()) {
+                        conexion.cerrar();
+                        continue;
+                    }
+                    if (llave.isReadable()) {
+                        leer(conexion);
+                    }
+                    if (llave.isValid() && llave.isWritable()) {
+                        escribir(conexion);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error en el bucle del selector: " + e.getMessage());
+            }
+        }
+    }
+
+    private void procesarRegistros() {
+        ConexionNIO conexion;
+        while ((conexion = porRegistrar.poll()) != null) {
+            try {
+                SelectionKey llave = conexion.getCanal().register(selector, SelectionKey.OP_READ, conexion);
+                conexion.asignarLlave(llave);
+            } catch (IOException e) {
+                conexion.cerrar();
+            }
+        }
+    }
+
+    private void procesarEscriturasPendientes() {
+        ConexionNIO conexion;
+        while ((conexion = porEscribir.poll()) != null) {
+            escribir(conexion);
+        }
+    }
+
+    private void leer(ConexionNIO conexion) {
+        lectura.clear();
+        int leidos;
+        try {
+            leidos = conexion.getCanal().read(lectura);
+        } catch (IOException e) {
+            leidos = -1;
+        }
+        if (leidos < 0) {
+            conexion.cerrar();
+            return;
+        }
+        lectura.flip();
+        conexion.consumir(lectura);
+    }
+
+    private void escribir(ConexionNIO conexion) {
+        try {
+            conexion.escribirPendiente();
+        } catch (IOException e) {
+            conexion.cerrar();
+        }
+    }
+}
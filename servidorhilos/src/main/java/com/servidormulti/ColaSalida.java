@@ -0,0 +1,211 @@
+package com.servidormulti;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cola de mensajes salientes de un cliente.
+ *
+ * Quien envía solo encola y sigue (nunca espera al socket). Un escritor propio del
+ * cliente la vacía: un hilo EscritorSalida en los modos de hilos, o el bucle del
+ * selector en modo NIO.
+ *
+ * Si los bytes pendientes pasan la marca alta, el cliente queda marcado como lento
+ * hasta que baje de la marca baja. Si sigue lento más de maxSaturadaMs, o llega al
+ * límite duro (4 veces la marca alta), se le desconecta. El plazo lo revisa también
+ * el Temporizador: se le desaloja aunque no le llegue nada más.
+ */
+public class ColaSalida {
+
+    private final String clienteID;
+    private final int marcaAlta;
+    private final int marcaBaja;
+    private final long maxSaturadaMs;
+    private final Runnable cerrarConexion;
+
+    // ReentrantLock en vez de synchronized/wait: el escritor puede ser un hilo virtual
+    private final ReentrantLock candado = new ReentrantLock();
+    private final Condition hayDatos = candado.newCondition();
+
+    private final ArrayDeque<ByteBuffer> tramas = new ArrayDeque<>();
+    private long bytesPendientes = 0;
+    private long saturadaDesde = -1;
+    private boolean cerrada = false;
+
+    private volatile Runnable alEncolar = null; // Aviso para el selector en modo NIO
+
+    public ColaSalida(String clienteID, Runnable cerrarConexion) {
+        this(clienteID, ConfiguracionServidor.marcaAltaSalida(), ConfiguracionServidor.marcaBajaSalida(),
+                ConfiguracionServidor.maxSaturadaMs(), cerrarConexion);
+    }
+
+    public ColaSalida(String clienteID, int marcaAlta, int marcaBaja, long maxSaturadaMs, Runnable cerrarConexion) {
+        this.clienteID = clienteID;
+        this.marcaAlta = marcaAlta;
+        this.marcaBaja = Math.min(marcaBaja, marcaAlta);
+        this.maxSaturadaMs = maxSaturadaMs;
+        this.cerrarConexion = cerrarConexion;
+    }
+
+    void alEncolar(Runnable aviso) {
+        this.alEncolar = aviso;
+    }
+
+    /**
+     * Agrega una trama sin bloquear. Devuelve false si la conexión ya está cerrada
+     * o si el cliente fue desalojado por lento.
+     */
+    public boolean encolar(ByteBuffer trama) {
+        boolean desalojar = false;
+        boolean programarRevision = false;
+        long pendientes;
+        candado.lock();
+        try {
+            if (cerrada) return false;
+
+            // slice(): la trama empieza en 0 y su tamaño es limit(), aunque el escritor la avance
+            ByteBuffer propia = trama.slice();
+            tramas.addLast(propia);
+            bytesPendientes += propia.limit();
+
+            if (bytesPendientes > marcaAlta) {
+                long ahora = System.currentTimeMillis();
+                if (saturadaDesde < 0) {
+                    saturadaDesde = ahora;
+                    programarRevision = true;
+                }
+                if (bytesPendientes > 4L * marcaAlta || ahora - saturadaDesde > maxSaturadaMs) {
+                    desalojar = true;
+                    cerrarInterno();
+                }
+            }
+            if (!desalojar) {
+                hayDatos.signal();
+            }
+            pendientes = bytesPendientes;
+        } finally {
+            candado.unlock();
+        }
+
+        if (desalojar) {
+            desalojar(pendientes);
+            return false;
+        }
+        if (programarRevision) {
+            // Si ya no le llega nada, nadie más vería que se le pasó el plazo
+            Temporizador.programar(maxSaturadaMs + 1, Runnable::run, this::revisarSaturacion);
+        }
+
+        Runnable aviso = alEncolar;
+        if (aviso != null) {
+            aviso.run();
+        }
+        return true;
+    }
+
+    // Corre en el Temporizador al vencer el plazo de una saturación
+    private void revisarSaturacion() {
+        long pendientes;
+        candado.lock();
+        try {
+            // Si se puso al día (o volvió a saturarse después) no hay nada que hacer aquí
+            if (cerrada || saturadaDesde < 0 || System.currentTimeMillis() - saturadaDesde <= maxSaturadaMs) return;
+            pendientes = bytesPendientes;
+            cerrarInterno();
+        } finally {
+            candado.unlock();
+        }
+        desalojar(pendientes);
+    }
+
+    private void desalojar(long pendientes) {
+        System.out.println("Cliente #" + clienteID + " desconectado: no lee sus mensajes ("
+                + pendientes + " bytes pendientes).");
+        cerrarConexion.run();
+    }
+
+    // --- Lado del escritor ---
+
+    // Espera la siguiente trama (la saca de la cola). Devuelve null si la cola se cerró.
+    ByteBuffer tomar() throws InterruptedException {
+        candado.lock();
+        try {
+            while (tramas.isEmpty() && !cerrada) {
+                hayDatos.await();
+            }
+            if (cerrada) return null;
+            return quitar();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    // Saca la primera trama una vez que se escribió completa
+    void quitarPrimera() {
+        candado.lock();
+        try {
+            if (!tramas.isEmpty()) quitar();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    boolean estaVacia() {
+        candado.lock();
+        try {
+            return tramas.isEmpty();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    private ByteBuffer quitar() {
+        ByteBuffer trama = tramas.pollFirst();
+        bytesPendientes -= trama.limit();
+        if (saturadaDesde >= 0 && bytesPendientes <= marcaBaja) {
+            saturadaDesde = -1; // El cliente se puso al día
+        }
+        return trama;
+    }
+
+    // --- Cierre ---
+
+    void cerrar() {
+        candado.lock();
+        try {
+            cerrarInterno();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    private void cerrarInterno() {
+        cerrada = true;
+        tramas.clear();
+        hayDatos.signalAll();
+    }
+
+    // Cierra la cola y la conexión (el cliente se fue o se está desconectando)
+    void cerrarConexion() {
+        cerrar();
+        cerrarConexion.run();
+    }
+
+    // Copia varias tramas pendientes (sin sacarlas) para una escritura con gathering
+    int primeras(ByteBuffer[] destino) {
+        candado.lock();
+        try {
+            if (cerrada) return 0;
+            int n = 0;
+            for (ByteBuffer trama : tramas) {
+                if (n == destino.length) break;
+                destino[n++] = trama;
+            }
+            return n;
+        } finally {
+            candado.unlock();
+        }
+    }
+}
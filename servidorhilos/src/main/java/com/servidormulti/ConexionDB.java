@@ -6,45 +6,109 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class ConexionDB {
 
     private static final String URL = "jdbc:sqlite:usuarios.db";
 
     /*
-     * Obtiene la conexión de la base de datos.
+     * Lecturas: las clases de BD piden su conexión aquí y la devuelven con cerrarConexion().
+     * Se prestan de un pool acotado de conexiones de SOLO LECTURA; en modo WAL pueden
+     * leer mientras el escritor confirma.
+     * El límite del pool también cubre a los hilos virtuales: el driver de SQLite corre
+     * en código nativo (JNI) y fija al hilo portador, así que con hilos virtuales se deja
+     * al menos un portador libre (ver ConfiguracionServidor.conexionesDB).
+     *
+     * Escrituras: todas pasan por escribir(), que las manda al único hilo EscritorDB.
+     */
+    private static volatile PoolConexiones pool;
+    private static volatile EscritorDB escritor;
+
+    private static PoolConexiones pool() {
+        PoolConexiones p = pool;
+        if (p != null) return p;
+        synchronized (ConexionDB.class) {
+            if (pool == null) {
+                escritor(); // El escritor crea la BD y activa WAL antes de abrir lectores
+                org.sqlite.SQLiteConfig config = new org.sqlite.SQLiteConfig();
+                config.setReadOnly(true);
+                config.setBusyTimeout(5000);
+
+                pool = new PoolConexiones(URL, config.toProperties(),
+                        ConfiguracionServidor.conexionesDB(Hilos.sonVirtuales()),
+                        ConfiguracionServidor.esperaMaxConexionMs(),
+                        ConfiguracionServidor.umbralFugaConexionMs());
+            }
+            return pool;
+        }
+    }
+
+    private static EscritorDB escritor() {
+        EscritorDB e = escritor;
+        if (e != null) return e;
+        synchronized (ConexionDB.class) {
+            if (escritor == null) {
+                org.sqlite.SQLiteConfig config = new org.sqlite.SQLiteConfig();
+                config.enforceForeignKeys(true);
+                config.setJournalMode(org.sqlite.SQLiteConfig.JournalMode.WAL);
+                // En WAL, NORMAL solo hace fsync en los checkpoints y sigue siendo consistente
+                config.setSynchronous(org.sqlite.SQLiteConfig.SynchronousMode.NORMAL);
+                config.setTempStore(org.sqlite.SQLiteConfig.TempStore.MEMORY);
+                config.setBusyTimeout(5000);
+                try {
+                    escritor = new EscritorDB(DriverManager.getConnection(URL, config.toProperties()),
+                            ConfiguracionServidor.loteEscrituraMs());
+                } catch (SQLException ex) {
+                    throw new IllegalStateException("No se pudo abrir la conexión de escritura: " + ex.getMessage(), ex);
+                }
+            }
+            return escritor;
+        }
+    }
+
+    /*
+     * Presta una conexión de lectura del pool. Devolverla con cerrarConexion() (o close()).
      */
     public static Connection conectar() {
-        Connection conn = null;
         try {
-            Class.forName("org.sqlite.JDBC");
-            
-            org.sqlite.SQLiteConfig config = new org.sqlite.SQLiteConfig();
-            config.enforceForeignKeys(true);
-            
-            conn = DriverManager.getConnection(URL, config.toProperties());
-            
-        } catch (ClassNotFoundException e) {
-            System.err.println("Error: Driver JDBC de SQLite no encontrado.");
-            e.printStackTrace();
-        } catch (SQLException e) {
+            return pool().tomar();
+        } catch (SQLException | IllegalStateException e) {
             System.err.println("Error de conexión: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     * Manda una escritura al hilo escritor. El futuro se completa cuando ya se confirmó.
+     */
+    public static <T> CompletableFuture<T> escribir(OperacionEscritura<T> operacion) {
+        return escritor().encolar(operacion);
+    }
+
+    // Para los llamadores que necesitan la respuesta: espera el commit y, si algo
+    // falla, lo reporta y devuelve 'siFalla'
+    public static <T> T escribirYEsperar(OperacionEscritura<T> operacion, T siFalla) {
+        try {
+            return escribir(operacion).join();
+        } catch (CompletionException | IllegalStateException e) {
+            Throwable causa = e.getCause() != null ? e.getCause() : e;
+            System.err.println("Error de escritura en BD: " + causa.getMessage());
+            return siFalla;
         }
-        return conn;
     }
 
     /**
      * Método para inicializar la BD.
      */
     public static void inicializar() {
-        try (Connection conn = conectar()) {
-            if (conn != null) {
-                crearTablas(conn);
-                inicializarDatosBase(conn); // Aquí se limpian las salas viejas
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        escribirYEsperar(conn -> {
+            crearTablas(conn);
+            inicializarDatosBase(conn); // Aquí se limpian las salas viejas
+            return null;
+        }, null);
+        pool();
     }
 
     private static void crearTablas(Connection conn) {
@@ -74,7 +138,15 @@ public class ConexionDB {
         String sqlPartidasGuardadas = "CREATE TABLE IF NOT EXISTS partidas_guardadas (" +
                      "id INTEGER PRIMARY KEY AUTOINCREMENT," +
                      "sala TEXT NOT NULL," +
-                     "turno_actual INTEGER" +
+                     "turno_actual INTEGER," +
+                     "estado BLOB" + // InstantaneaPartida; null en guardados viejos
+                     ");";
+
+        // Respaldo automático de las partidas en curso (RespaldoPartidas): una fila por sala
+        String sqlPartidasActivas = "CREATE TABLE IF NOT EXISTS partidas_activas (" +
+                     "sala TEXT PRIMARY KEY," +
+                     "estado BLOB NOT NULL," + // InstantaneaPartida
+                     "actualizado INTEGER" +   // Milisegundos desde la época
                      ");";
 
         // Tabla de Jugadores Guardados
@@ -96,18 +168,32 @@ public class ConexionDB {
             stmt.execute(sqlGruposMiembros);
             stmt.execute(sqlPartidasGuardadas);
             stmt.execute(sqlJugadoresGuardados);
+            stmt.execute(sqlPartidasActivas);
+            agregarColumnaSiFalta(stmt, "partidas_guardadas", "estado", "BLOB");
             System.out.println("Tablas verificadas.");
         } catch (SQLException e) {
             System.err.println("Error al crear las tablas: " + e.getMessage());
         }
     }
 
+    // Para bases creadas antes de que la tabla tuviera la columna
+    private static void agregarColumnaSiFalta(Statement stmt, String tabla, String columna, String tipo) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + tabla + ")")) {
+            while (rs.next()) {
+                if (rs.getString("name").equalsIgnoreCase(columna)) return;
+            }
+        }
+        stmt.execute("ALTER TABLE " + tabla + " ADD COLUMN " + columna + " " + tipo);
+        System.out.println("Columna " + tabla + "." + columna + " agregada.");
+    }
+
     /**
      * Inicializa datos y limpia basura de ejecuciones anteriores.
      */
     private static void inicializarDatosBase(Connection conn) {
-        // 1. Limpiar grupos basura de ejecuciones anteriores (respetando 'Todos')
-        String sqlLimpiar = "DELETE FROM grupos WHERE nombre <> 'Todos'";
+        // 1. Al arrancar no hay nadie conectado: se vacían las membresías, no las salas.
+        // Las salas que quedaron (el servidor cayó con gente dentro) las recupera RegistroSalas
+        String sqlLimpiar = "DELETE FROM grupos_miembros";
         
         // 2. Verificar o crear el grupo base 'Todos'
         String sqlCheck = "SELECT COUNT(*) FROM grupos WHERE nombre = ?";
@@ -117,7 +203,7 @@ public class ConexionDB {
             // Ejecutamos la limpieza
             int borrados = stmt.executeUpdate(sqlLimpiar);
             if (borrados > 0) {
-                System.out.println("Se limpiaron " + borrados + " salas antiguas de la base de datos.");
+                System.out.println("Se limpiaron " + borrados + " membresías de la ejecución anterior.");
             }
 
             // Verificamos 'Todos'
@@ -137,11 +223,11 @@ public class ConexionDB {
         }
     }
 
+    // Devuelve la conexión al pool (no la cierra de verdad)
     public static void cerrarConexion(Connection conn) {
+        if (conn == null) return;
         try {
-            if (conn != null) {
-                conn.close();
-            }
+            conn.close();
         } catch (SQLException ex) {
             System.err.println("Error al cerrar la conexión: " + ex.getMessage());
         }
@@ -0,0 +1,147 @@
+package com.servidormulti;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Estado de un cliente en modo NIO: separa las tramas (2 bytes de longitud + UTF modificado,
+ * el mismo formato de DataOutputStream.writeUTF) y vacía la ColaSalida del cliente
+ * cuando el socket acepta datos.
+ */
+class ConexionNIO {
+
+    // Tramas que se juntan en una sola llamada write() (gathering)
+    private static final int TRAMAS_POR_ESCRITURA = 16;
+
+    private final SocketChannel canal;
+    private final BucleSelector bucle;
+    private final EjecutorSerial ejecutor; // Mantiene el orden de los mensajes del cliente
+    private final ColaSalida colaSalida;
+
+    private final AtomicBoolean escrituraSolicitada = new AtomicBoolean(false);
+    private final AtomicBoolean cerrada = new AtomicBoolean(false);
+
+    private UnCliente cliente;
+    private SelectionKey llave;      // Solo la usa el hilo del selector
+    private byte[] tramaIncompleta;  // Bytes recibidos de una trama que aún no llega completa
+    private final ByteBuffer[] porEscribir = new ByteBuffer[TRAMAS_POR_ESCRITURA];
+
+    ConexionNIO(SocketChannel canal, BucleSelector bucle, EjecutorSerial ejecutor, String clienteID) {
+        this.canal = canal;
+        this.bucle = bucle;
+        this.ejecutor = ejecutor;
+        this.colaSalida = new ColaSalida(clienteID, this::cerrar);
+        this.colaSalida.alEncolar(this::solicitarEscritura);
+    }
+
+    void asignarCliente(UnCliente cliente) { this.cliente = cliente; }
+    void asignarLlave(SelectionKey llave) { this.llave = llave; }
+    SocketChannel getCanal() { return canal; }
+    ColaSalida getColaSalida() { return colaSalida; }
+
+    // Envía el menú de bienvenida, igual que UnCliente.run() en el modo de hilos
+    void iniciar() {
+        ejecutor.execute(cliente::mostrarBienvenida);
+    }
+
+    // --- LECTURA (hilo del selector) ---
+
+    void consumir(ByteBuffer datos) {
+        ByteBuffer fuente = datos;
+        if (tramaIncompleta != null) {
+            byte[] unidos = new byte[tramaIncompleta.length + datos.remaining()];
+            System.arraycopy(tramaIncompleta, 0, unidos, 0, tramaIncompleta.length);
+            datos.get(unidos, tramaIncompleta.length, datos.remaining());
+            fuente = ByteBuffer.wrap(unidos);
+            tramaIncompleta = null;
+        }
+
+        while (fuente.remaining() >= 2) {
+            int largo = fuente.getShort(fuente.position()) & 0xFFFF;
+            if (fuente.remaining() < 2 + largo) break;
+
+            byte[] trama = new byte[2 + largo];
+            fuente.get(trama);
+            String mensaje;
+            try {
+                mensaje = new DataInputStream(new ByteArrayInputStream(trama)).readUTF();
+            } catch (IOException e) {
+                System.err.println("Trama UTF no válida, cerrando conexión: " + e.getMessage());
+                cerrar();
+                return;
+            }
+            entregar(mensaje);
+        }
+
+        if (fuente.hasRemaining()) {
+            tramaIncompleta = new byte[fuente.remaining()];
+            fuente.get(tramaIncompleta);
+        }
+    }
+
+    private void entregar(String mensaje) {
+        ejecutor.execute(() -> {
+            if (cerrada.get()) return;
+            try {
+                cliente.procesarMensaje(mensaje);
+            } catch (Exception e) {
+                cerrar();
+            }
+        });
+    }
+
+    // --- ESCRITURA ---
+
+    private void solicitarEscritura() {
+        if (escrituraSolicitada.compareAndSet(false, true)) {
+            bucle.solicitarEscritura(this);
+        }
+    }
+
+    // Hilo del selector: escribe lo que se pueda sin bloquear
+    void escribirPendiente() throws IOException {
+        if (llave == null || !llave.isValid()) return;
+        while (true) {
+            int n;
+            while ((n = colaSalida.primeras(porEscribir)) > 0) {
+                canal.write(porEscribir, 0, n);
+                int completas = 0;
+                while (completas < n && !porEscribir[completas].hasRemaining()) {
+                    colaSalida.quitarPrimera();
+                    completas++;
+                }
+                Arrays.fill(porEscribir, 0, n, null);
+                if (completas < n) {
+                    // El socket está lleno: esperamos a que el selector avise
+                    llave.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            llave.interestOps(SelectionKey.OP_READ);
+            escrituraSolicitada.set(false);
+            // Si alguien encoló mientras terminábamos, volvemos a intentar
+            if (colaSalida.estaVacia() || !escrituraSolicitada.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    // --- CIERRE ---
+
+    void cerrar() {
+        if (!cerrada.compareAndSet(false, true)) return;
+        try {
+            canal.close(); // También cancela la llave del selector
+        } catch (IOException e) {
+            System.err.println("Error al cerrar canal: " + e.getMessage());
+        }
+        colaSalida.cerrar();
+        ejecutor.execute(cliente::desconectar);
+    }
+}
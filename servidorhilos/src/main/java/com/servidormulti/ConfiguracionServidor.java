@@ -0,0 +1,156 @@
+package com.servidormulti;
+
+/**
+ * Parámetros de arranque del servidor.
+ * Se leen de propiedades del sistema, por ejemplo: java -Dservidor.modo=nio ...
+ */
+public final class ConfiguracionServidor {
+
+    private ConfiguracionServidor() {}
+
+    public static int puerto() {
+        return entero("servidor.puerto", 8081);
+    }
+
+    public static ModoConexion modo() {
+        return ModoConexion.desdeTexto(System.getProperty("servidor.modo", "hilos"));
+    }
+
+    // Cola de conexiones pendientes de aceptar
+    public static int backlog() {
+        return entero("servidor.backlog", 1024);
+    }
+
+    // Número de bucles de Selector en modo NIO
+    public static int selectores() {
+        return entero("servidor.selectores", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    // Hilos que ejecutan la lógica de menús/salas en modo NIO
+    public static int trabajadores() {
+        return entero("servidor.trabajadores", Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    // Hilos compartidos por todas las salas (cada sala es un EjecutorSerial sobre ellos).
+    // Con hilos virtuales no se usa: cada turno de sala corre en un hilo virtual
+    public static int hilosSalas() {
+        return entero("servidor.salas.hilos", Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    // Tiempo para /jalar o /parar; al vencer, el jugador se planta solo (0 = sin límite)
+    public static int limiteTurnoMs() {
+        return entero("servidor.turno.limiteMs", 30000);
+    }
+
+    // Tiempo para elegir objetivo de Freeze/Flip Three/Second Chance; al vencer se elige solo
+    public static int limiteObjetivoMs() {
+        return entero("servidor.turno.limiteObjetivoMs", 20000);
+    }
+
+    // Tiempos vencidos seguidos tras los que se marca al jugador como AFK y se saltan sus turnos
+    public static int expiracionesParaAfk() {
+        return entero("servidor.turno.afkTras", 2);
+    }
+
+    // Pausa antes de cada jugada de un bot, para que la mesa alcance a leerla (0 = al momento)
+    public static int pausaBotMs() {
+        return entero("servidor.bots.pausaMs", 1000);
+    }
+
+    // Estrategia de los bots cuando no se indica otra (ver EstrategiaBot.desdeTexto)
+    public static String estrategiaBots() {
+        return System.getProperty("servidor.bots.estrategia", "optima");
+    }
+
+    // Semilla fija para todas las partidas, para reproducir una partida del registro
+    // (se imprime al iniciar cada una). null = cada partida sortea la suya
+    public static Long semillaJuego() {
+        String valor = System.getProperty("servidor.juego.semilla");
+        if (valor == null) return null;
+        try {
+            return Long.parseLong(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Valor no válido para servidor.juego.semilla: '" + valor + "'. Se ignora.");
+            return null;
+        }
+    }
+
+    // Bytes pendientes por cliente a partir de los cuales se le considera lento
+    public static int marcaAltaSalida() {
+        return entero("servidor.salida.marcaAlta", 256 * 1024);
+    }
+
+    // Bytes pendientes por debajo de los cuales el cliente deja de ser lento
+    public static int marcaBajaSalida() {
+        return entero("servidor.salida.marcaBaja", 64 * 1024);
+    }
+
+    // Tiempo máximo que un cliente puede seguir lento antes de desconectarlo
+    public static long maxSaturadaMs() {
+        return entero("servidor.salida.maxSaturadaMs", 10000);
+    }
+
+    // Cada cuántos segundos se imprimen las métricas (0 = nunca)
+    public static int intervaloMetricasSeg() {
+        return entero("servidor.metricas.intervaloSeg", 60);
+    }
+
+    // Conexiones máximas del pool de SQLite. Con hilos virtuales se deja un núcleo libre:
+    // el driver corre en código nativo y fija al hilo portador mientras consulta
+    public static int conexionesDB(boolean hilosVirtuales) {
+        int nucleos = Runtime.getRuntime().availableProcessors();
+        return entero("servidor.db.conexiones", hilosVirtuales ? Math.max(1, nucleos - 1) : 8);
+    }
+
+    // Cuánto espera un hilo por una conexión libre antes de rendirse
+    public static int esperaMaxConexionMs() {
+        return entero("servidor.db.esperaMaxMs", 5000);
+    }
+
+    // Una conexión prestada por más tiempo que esto se reporta como posible fuga (0 = no vigilar)
+    public static int umbralFugaConexionMs() {
+        return entero("servidor.db.fugaMs", 10000);
+    }
+
+    // Ventana en la que el escritor de BD junta escrituras para un solo commit
+    public static int loteEscrituraMs() {
+        return entero("servidor.db.loteEscrituraMs", 2);
+    }
+
+    // Carpeta de la bitácora de partidas en curso ("" = sin bitácora)
+    public static String directorioBitacora() {
+        return System.getProperty("servidor.bitacora.dir", "bitacora");
+    }
+
+    // Ventana en la que la bitácora junta registros para un solo fsync
+    public static int ventanaBitacoraMs() {
+        return entero("servidor.bitacora.ventanaMs", 5);
+    }
+
+    // Tamaño fijo de cada segmento de la bitácora (se mapea entero a memoria)
+    public static int segmentoBitacoraMB() {
+        return entero("servidor.bitacora.segmentoMB", 64);
+    }
+
+    // Cuánto espera una partida reconstruida a que vuelva alguno de sus jugadores
+    public static int esperaRegresoMs() {
+        return entero("servidor.bitacora.esperaRegresoMs", 10 * 60 * 1000);
+    }
+
+    // Cada cuántos segundos se respaldan en la BD las partidas que cambiaron; también se
+    // respaldan al terminar cada ronda (0 = sin respaldo)
+    public static int respaldoSeg() {
+        return entero("servidor.respaldo.segundos", 30);
+    }
+
+    static int entero(String clave, int porDefecto) {
+        String valor = System.getProperty(clave);
+        if (valor == null) return porDefecto;
+        try {
+            return Integer.parseInt(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Valor no válido para " + clave + ": '" + valor + "'. Usando " + porDefecto + ".");
+            return porDefecto;
+        }
+    }
+}
@@ -8,6 +8,7 @@ public class ContextoServidor {
 
     // Instancias Únicas
     private final GrupoDB grupoDB;
+    private final RegistroSalas registroSalas;
     private final ManejadorAutenticacion manejadorAutenticacion;
     private final ManejadorMensajes manejadorMensajes;
     private final ManejadorSalas manejadorSalas;
@@ -18,14 +19,15 @@ public class ContextoServidor {
         this.clientesConectados = clientesConectados; 
 
         this.grupoDB = new GrupoDB();
+        this.registroSalas = new RegistroSalas(this.grupoDB);
         this.manejadorAutenticacion = new ManejadorAutenticacion(clientesConectados); 
     
         this.manejadorMensajes = new ManejadorMensajes(
             clientesConectados, 
-            this.grupoDB
+            this.registroSalas
         );
         
-        this.manejadorSalas = new ManejadorSalas(this.grupoDB, this.manejadorMensajes);
+        this.manejadorSalas = new ManejadorSalas(this.grupoDB, this.registroSalas, this.manejadorMensajes);
 
         this.manejadorMenu = new ManejadorMenu(this.manejadorAutenticacion, this.manejadorSalas, this.grupoDB);
     }
@@ -33,6 +35,7 @@ public class ContextoServidor {
     public ManejadorMensajes getManejadorMensajes() { return manejadorMensajes; }
     public ManejadorAutenticacion getManejadorAutenticacion() { return manejadorAutenticacion; }
     public GrupoDB getGrupoDB() { return grupoDB; }
+    public RegistroSalas getRegistroSalas() { return registroSalas; }
     public ManejadorSalas getManejadorSalas() { return manejadorSalas; } 
     public ManejadorMenu getManejadorMenu() { return manejadorMenu; }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.servidormulti;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ejecuta tareas una a la vez y en el orden en que llegan, pero sin hilo propio:
+ * las tareas corren sobre un pool compartido. Así muchos clientes (o salas)
+ * comparten unos cuantos hilos sin perder el orden de sus mensajes.
+ */
+public class EjecutorSerial implements Executor {
+
+    // Tareas que se ejecutan seguidas antes de ceder el hilo a otro ejecutor
+    private static final int TAREAS_POR_TURNO = 64;
+
+    private final Executor base;
+    private final Queue<Runnable> tareas = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean programado = new AtomicBoolean(false);
+
+    public EjecutorSerial(Executor base) {
+        this.base = base;
+    }
+
+    @Override
+    public void execute(Runnable tarea) {
+        tareas.add(tarea);
+        programar();
+    }
+
+    private void programar() {
+        if (programado.compareAndSet(false, true)) {
+            try {
+                base.execute(this::drenar);
+            } catch (RejectedExecutionException e) {
+                programado.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drenar() {
+        try {
+            Runnable tarea;
+            int ejecutadas = 0;
+            while (ejecutadas < TAREAS_POR_TURNO && (tarea = tareas.poll()) != null) {
+                try {
+                    tarea.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error en tarea serial: " + e.getMessage());
+                    e.printStackTrace();
+                }
+                ejecutadas++;
+            }
+        } finally {
+            programado.set(false);
+            if (!tareas.isEmpty()) {
+                programar();
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.servidormulti;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Único hilo que escribe en SQLite.
+ *
+ * Las clases de BD le mandan sus escrituras con ConexionDB.escribir(); el hilo junta
+ * las que llegan en una ventana corta (servidor.db.loteEscrituraMs) y las confirma en
+ * una sola transacción, así varios registros/uniones/salidas simultáneos cuestan un
+ * solo fsync. Cada operación corre dentro de su propio SAVEPOINT: si una falla solo
+ * se deshace esa, y su CompletableFuture termina con la excepción.
+ */
+final class EscritorDB {
+
+    private static final int MAX_POR_LOTE = 256;
+
+    private final Connection conn;
+    private final long ventanaNanos;
+    private final BlockingQueue<Pendiente<?>> cola = new LinkedBlockingQueue<>();
+
+    EscritorDB(Connection conn, int loteEscrituraMs) throws SQLException {
+        this.conn = conn;
+        this.ventanaNanos = TimeUnit.MILLISECONDS.toNanos(loteEscrituraMs);
+        conn.setAutoCommit(false);
+
+        Metricas.registrarIndicador("db.escriturasEnCola", cola::size);
+        Thread hilo = new Thread(this::ejecutar, "Escritor-DB");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    <T> CompletableFuture<T> encolar(OperacionEscritura<T> operacion) {
+        Pendiente<T> p = new Pendiente<>(operacion);
+        cola.add(p);
+        return p.resultado;
+    }
+
+    private void ejecutar() {
+        List<Pendiente<?>> lote = new ArrayList<>();
+        while (true) {
+            try {
+                lote.add(cola.take());
+                // Ventana de agrupación: lo que llegue mientras tanto va en el mismo commit
+                long limite = System.nanoTime() + ventanaNanos;
+                while (lote.size() < MAX_POR_LOTE) {
+                    long restante = limite - System.nanoTime();
+                    Pendiente<?> otra = restante > 0 ? cola.poll(restante, TimeUnit.NANOSECONDS) : cola.poll();
+                    if (otra == null) break;
+                    lote.add(otra);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            confirmar(lote);
+            lote.clear();
+        }
+    }
+
+    private void confirmar(List<Pendiente<?>> lote) {
+        long inicio = System.nanoTime();
+        for (Pendiente<?> p : lote) {
+            p.aplicar();
+        }
+        try {
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("Error al confirmar " + lote.size() + " escrituras: " + e.getMessage());
+            try { conn.rollback(); } catch (SQLException ex) { /* La conexión ya no sirve */ }
+            for (Pendiente<?> p : lote) p.fallar(e);
+            return;
+        }
+        for (Pendiente<?> p : lote) p.completar();
+
+        Metricas.incrementar("db.commits");
+        Metricas.sumar("db.escrituras", lote.size());
+        Metricas.sumar("db.commitMicros", (System.nanoTime() - inicio) / 1000);
+    }
+
+    private final class Pendiente<T> {
+        private final OperacionEscritura<T> operacion;
+        private final CompletableFuture<T> resultado = new CompletableFuture<>();
+        private T valor;
+        private SQLException error;
+
+        Pendiente(OperacionEscritura<T> operacion) {
+            this.operacion = operacion;
+        }
+
+        void aplicar() {
+            Savepoint punto = null;
+            try {
+                punto = conn.setSavepoint();
+                valor = operacion.ejecutar(conn);
+                conn.releaseSavepoint(punto);
+            } catch (SQLException | RuntimeException e) {
+                error = e instanceof SQLException ? (SQLException) e : new SQLException(e);
+                if (punto != null) {
+                    try {
+                        conn.rollback(punto);
+                        conn.releaseSavepoint(punto);
+                    } catch (SQLException ex) { /* Se reporta el error original */ }
+                }
+            }
+        }
+
+        // Se llama después del commit: nadie ve el resultado antes de que esté en disco
+        void completar() {
+            if (error != null) resultado.completeExceptionally(error);
+            else resultado.complete(valor);
+        }
+
+        void fallar(SQLException e) {
+            resultado.completeExceptionally(error != null ? error : e);
+        }
+    }
+}
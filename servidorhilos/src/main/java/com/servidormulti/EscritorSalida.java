@@ -0,0 +1,51 @@
+package com.servidormulti;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Escritor propio de un cliente en los modos de hilos: es el único que bloquea
+ * cuando el socket está lleno, así nadie más espera al cliente lento.
+ *
+ * Escribe sobre un flujo con búfer y solo hace flush cuando la cola queda vacía,
+ * así varias tramas seguidas salen en una sola escritura al socket.
+ */
+class EscritorSalida implements Runnable {
+
+    private final ColaSalida cola;
+    private static final int TAM_BUFER = 16 * 1024;
+
+    private final OutputStream salida;
+    private final WritableByteChannel canal;
+    private final Runnable alFallar;
+
+    EscritorSalida(ColaSalida cola, OutputStream salidaSocket, Runnable alFallar) {
+        this.cola = cola;
+        this.salida = new BufferedOutputStream(salidaSocket, TAM_BUFER);
+        this.canal = Channels.newChannel(salida);
+        this.alFallar = alFallar;
+    }
+
+    @Override
+    public void run() {
+        try {
+            ByteBuffer trama;
+            while ((trama = cola.tomar()) != null) {
+                while (trama.hasRemaining()) {
+                    canal.write(trama);
+                }
+                if (cola.estaVacia()) {
+                    salida.flush();
+                }
+            }
+        } catch (IOException e) {
+            alFallar.run(); // Socket roto: el hilo lector se enterará al leer
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.servidormulti.Flip7;
+
+/**
+ * Los números aleatorios de una partida: el mismo algoritmo (SplitMix64) y la misma
+ * secuencia que SplittableRandom con la misma semilla, pero con el estado a la vista
+ * para que una instantánea lo guarde y la partida siga barajeando igual al cargarla.
+ */
+final class Azar {
+
+    private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long estado;
+
+    Azar(long semilla) {
+        this.estado = semilla;
+    }
+
+    long obtenerEstado() { return estado; }
+    void fijarEstado(long estado) { this.estado = estado; }
+
+    long nextLong() {
+        long z = (estado += GAMMA);
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    int nextInt() {
+        long z = (estado += GAMMA);
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    // Entre 0 y limite - 1, sin sesgo (el rechazo de SplittableRandom.nextInt)
+    int nextInt(int limite) {
+        int r = nextInt();
+        int m = limite - 1;
+        if ((limite & m) == 0) return r & m;
+        for (int u = r >>> 1; u + m - (r = u % limite) < 0; u = nextInt() >>> 1) ;
+        return r;
+    }
+}
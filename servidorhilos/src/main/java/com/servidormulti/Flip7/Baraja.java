@@ -1,58 +1,168 @@
 package com.servidormulti.Flip7;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
+// La baraja es un arreglo de códigos de carta (ver Carta.desdeCodigo) y un cursor:
+// jalar es avanzar el cursor, sin mover el resto ni crear objetos.
+// Las cartas que salen del juego (fin de ronda, BUST, acciones usadas) van al descarte;
+// cuando el mazo se acaba se revuelve solo el descarte, nunca las que siguen en mano
 public class Baraja {
-    private List<Carta> cartas;
 
-    public Baraja() {
-        this.cartas = new ArrayList<>();
-        inicializarCartas();
-        Collections.shuffle(this.cartas);
+    // Cuántas hay de cada código en la baraja de las reglas
+    private static final int[] ESTANDAR = crearComposicionEstandar();
+
+    // Composición completa en el orden de creación; cada reinicio la copia y la revuelve
+    private final int[] composicion;
+    private final int[] cartas;
+    private int siguiente; // Índice de la próxima carta a jalar
+    private final int[] descarte;
+    private int enDescarte;
+    private final Azar azar; // El de la partida: misma semilla, mismo orden
+
+    Baraja(Azar azar) {
+        this(azar, ESTANDAR);
     }
 
-    private void inicializarCartas() {
-        for (int valor = 1; valor <= 12; valor++) {
-            for (int cuenta = 0; cuenta < valor; cuenta++) {
-                cartas.add(new Carta(valor, String.valueOf(valor), TipoCarta.NUMERICA));
-            }
-        }
-        
-        // Second Chance
-        for (int i = 0; i < 3; i++) {
-            cartas.add(new Carta(0, "Second Chance", TipoCarta.ACCION));
+    // 'porCodigo' ya validado (ver MotorFlip7.Reglas)
+    Baraja(Azar azar, int[] porCodigo) {
+        this.azar = azar;
+        int total = 0;
+        for (int cuenta : porCodigo) total += cuenta;
+        composicion = new int[total];
+        int i = 0;
+        for (int codigo = 1; codigo < porCodigo.length; codigo++) {
+            for (int c = 0; c < porCodigo[codigo]; c++) composicion[i++] = codigo;
         }
+        cartas = new int[total];
+        descarte = new int[total];
+        reiniciarBaraja();
+    }
 
-        // Freeze (Congelar)
-        for (int i = 0; i < 3; i++) {
-            cartas.add(new Carta(0, "Freeze", TipoCarta.ACCION));
-        }
+    private static int[] crearComposicionEstandar() {
+        int[] cuentas = new int[Carta.MAX_CODIGO + 1];
+        // Numéricas: del 1 al 12, tantas copias como su valor
+        for (int valor = 1; valor <= 12; valor++) cuentas[valor] = valor;
 
-        // Flip Three (Jalar 3)
-        for (int i = 0; i < 3; i++) {
-            cartas.add(new Carta(0, "Flip Three", TipoCarta.ACCION));
-        }
+        // Second Chance, Freeze (Congelar) y Flip Three (Jalar 3)
+        cuentas[Carta.SECOND_CHANCE] = 3;
+        cuentas[Carta.FREEZE] = 3;
+        cuentas[Carta.FLIP_THREE] = 3;
 
         // Bonus (x2 y +10)
-        cartas.add(new Carta(0, "x2", TipoCarta.BONUS));
-        cartas.add(new Carta(0, "+10", TipoCarta.BONUS));
-
-        // Barajear al final de la creación
-        Collections.shuffle(this.cartas);
+        cuentas[Carta.X2] = 1;
+        cuentas[Carta.MAS_10] = 1;
+        return cuentas;
     }
 
     public Carta jalarCarta() {
-        if (cartas.isEmpty()) {
+        if (siguiente == cartas.length) {
             return null;
         }
-        return cartas.remove(0);
+        return Carta.desdeCodigo(cartas[siguiente++]);
+    }
+
+    public int cartasRestantes() {
+        return cartas.length - siguiente;
+    }
+
+    public int cartasEnDescarte() {
+        return enDescarte;
+    }
+
+    public void descartar(Carta carta) {
+        descarte[enDescarte++] = carta.obtenerCodigo();
+    }
+
+    // Con el mazo vacío, el descarte pasa a ser el mazo. false si tampoco hay descarte
+    public boolean rebarajearDescarte() {
+        if (enDescarte == 0) return false;
+        // Las que quedaban en el mazo (si las hay) se revuelven junto con el descarte
+        int restantes = cartasRestantes();
+        System.arraycopy(cartas, siguiente, cartas, cartas.length - restantes, restantes);
+        siguiente = cartas.length - restantes - enDescarte;
+        System.arraycopy(descarte, 0, cartas, siguiente, enDescarte);
+        enDescarte = 0;
+        barajear(siguiente);
+        return true;
+    }
+
+    // Saca del mazo una carta que ya está en juego (al cargar una partida guardada).
+    // false si no quedaba ninguna de ese código
+    public boolean retirar(Carta carta) {
+        int codigo = carta.obtenerCodigo();
+        for (int i = siguiente; i < cartas.length; i++) {
+            if (cartas[i] == codigo) {
+                cartas[i] = cartas[siguiente];
+                cartas[siguiente++] = codigo;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Suma a 'cuentas' (indexado por código) las cartas del mazo y del descarte
+    public void contarCartas(int[] cuentas) {
+        for (int i = siguiente; i < cartas.length; i++) cuentas[cartas[i]]++;
+        for (int i = 0; i < enDescarte; i++) cuentas[descarte[i]]++;
+    }
+
+    // Suma a 'cuentas' lo que se puede jalar: el mazo, o el descarte si el mazo ya se acabó
+    // (es lo que se revolverá). Es información pública: cualquiera puede contar cartas
+    public void contarPorJalar(int[] cuentas) {
+        if (siguiente < cartas.length) {
+            for (int i = siguiente; i < cartas.length; i++) cuentas[cartas[i]]++;
+        } else {
+            for (int i = 0; i < enDescarte; i++) cuentas[descarte[i]]++;
+        }
+    }
+
+    // Para una instantánea: lo que queda por jalar, en orden, y el descarte (un byte por carta)
+    void escribir(DataOutput salida) throws IOException {
+        salida.writeByte(cartasRestantes());
+        for (int i = siguiente; i < cartas.length; i++) salida.writeByte(cartas[i]);
+        salida.writeByte(enDescarte);
+        for (int i = 0; i < enDescarte; i++) salida.writeByte(descarte[i]);
+    }
+
+    // Lo contrario de escribir. Que las cartas cuadren con las manos lo revisa el motor
+    void leer(DataInput entrada) throws IOException {
+        int restantes = entrada.readUnsignedByte();
+        if (restantes > cartas.length) throw new IOException("Mazo de " + restantes + " cartas");
+        siguiente = cartas.length - restantes;
+        for (int i = siguiente; i < cartas.length; i++) cartas[i] = leerCodigo(entrada);
+        enDescarte = entrada.readUnsignedByte();
+        if (enDescarte > descarte.length) throw new IOException("Descarte de " + enDescarte + " cartas");
+        for (int i = 0; i < enDescarte; i++) descarte[i] = leerCodigo(entrada);
+    }
+
+    static int leerCodigo(DataInput entrada) throws IOException {
+        int codigo = entrada.readUnsignedByte();
+        if (codigo < 1 || codigo > Carta.MAX_CODIGO) throw new IOException("Código de carta " + codigo);
+        return codigo;
+    }
+
+    // Cuántas hay de cada código en una baraja completa de las reglas estándar
+    public static int[] composicionPorCodigo() {
+        return ESTANDAR.clone();
     }
 
     // Método para el reinicio de la baraja (se llama al inicio de cada partida)
     public void reiniciarBaraja() {
-        this.cartas.clear();
-        inicializarCartas();
+        System.arraycopy(composicion, 0, cartas, 0, cartas.length);
+        siguiente = 0;
+        enDescarte = 0;
+        barajear(0);
+    }
+
+    // Fisher–Yates en el mismo arreglo, de 'desde' al final
+    private void barajear(int desde) {
+        for (int i = cartas.length - 1; i > desde; i--) {
+            int j = desde + azar.nextInt(i + 1 - desde);
+            int tmp = cartas[i];
+            cartas[i] = cartas[j];
+            cartas[j] = tmp;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,209 @@
+package com.servidormulti.Flip7;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.servidormulti.Bitacora;
+
+/**
+ * Lo que una SesionJuego anota en la Bitacora: todo lo que entra al motor, en orden.
+ * Con la semilla y esas entradas MotorFlip7 repite la partida igual, así que las
+ * cartas no se anotan: salen de la semilla. Los resultados de cada ronda sí, para
+ * comprobar al reproducir que se llegó al mismo lugar.
+ *
+ * Los jugadores van por su número de asiento al empezar (un byte), no por su id.
+ * Sin bitácora activa no se anota nada.
+ */
+final class BitacoraMesa {
+
+    // Tipos de registro: el primer byte de cada uno
+    static final byte INICIO = 1;     // sala, semilla y asientos (id, nombre, estrategia o "" si es humano)
+    static final byte PREPARAR = 2;   // prepararMesa, antes de restaurar una partida guardada
+    static final byte RESTAURAR = 3;  // jugador, puntos, banderas y mano
+    static final byte INICIAR = 4;
+    static final byte REANUDAR = 5;   // turno
+    static final byte PRESENTE = 6;   // jugador (solo si estaba AFK o con tiempos vencidos)
+    static final byte JALAR = 7;
+    static final byte PARAR = 8;
+    static final byte USAR = 9;       // jugador, objetivo (-1 si no se encontró)
+    static final byte SALIDA = 10;    // jugador
+    static final byte PASO = 11;      // corrió el paso programado del motor (carta del Flip Three, espera, límite)
+    static final byte BOT = 12;       // jugador, estrategia: un bot toma el asiento
+    static final byte HUMANO = 13;    // jugador: su dueño recupera el asiento
+    static final byte RONDA = 14;     // puntos totales por jugador (en orden de INICIO)
+    static final byte FIN = 15;
+    static final byte INSTANTANEA = 16; // una partida guardada cargada, ya con los ids de esta mesa
+
+    private final long mesa;
+    private final List<String> ids = new ArrayList<>(); // Número de jugador -> id del motor
+    private boolean cerrada = false;
+
+    BitacoraMesa(long mesa) {
+        this.mesa = mesa;
+    }
+
+    long obtenerMesa() { return mesa; }
+
+    // Los asientos de la partida; fija el número de cada jugador
+    void asientos(List<String> idsAsientos) {
+        ids.clear();
+        ids.addAll(idsAsientos);
+    }
+
+    String idDe(int numero) {
+        return numero >= 0 && numero < ids.size() ? ids.get(numero) : null;
+    }
+
+    int numeroDe(String id) {
+        return ids.indexOf(id);
+    }
+
+    int asientosIniciales() {
+        return ids.size();
+    }
+
+    void inicio(String sala, long semilla, List<String> nombres, List<String> estrategias) {
+        Bitacora.abrirMesa(mesa);
+        Registro r = new Registro(INICIO).texto(sala).largo(semilla).entero(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            r.texto(ids.get(i)).texto(nombres.get(i)).texto(estrategias.get(i));
+        }
+        anotar(r);
+    }
+
+    void preparar() { anotar(new Registro(PREPARAR)); }
+    void iniciar() { anotar(new Registro(INICIAR)); }
+    void reanudar(int turno) { anotar(new Registro(REANUDAR).entero(turno)); }
+    void paso() { anotar(new Registro(PASO)); }
+
+    void restaurar(String id, int puntos, boolean secondChance, boolean bust, boolean planto,
+                   boolean congelado, List<Carta> mano) {
+        int banderas = (secondChance ? 1 : 0) | (bust ? 2 : 0) | (planto ? 4 : 0) | (congelado ? 8 : 0);
+        Registro r = new Registro(RESTAURAR).jugador(id).entero(puntos).octeto(banderas).octeto(mano.size());
+        for (Carta c : mano) r.octeto(c.obtenerCodigo());
+        anotar(r);
+    }
+
+    void instantanea(byte[] datos) {
+        anotar(new Registro(INSTANTANEA).bloque(datos));
+    }
+
+    void presente(String id) { anotar(new Registro(PRESENTE).jugador(id)); }
+    void jalar(String id) { anotar(new Registro(JALAR).jugador(id)); }
+    void parar(String id) { anotar(new Registro(PARAR).jugador(id)); }
+    void salida(String id) { anotar(new Registro(SALIDA).jugador(id)); }
+    void humano(String id) { anotar(new Registro(HUMANO).jugador(id)); }
+
+    void usar(String id, String idObjetivo) {
+        anotar(new Registro(USAR).jugador(id).jugador(idObjetivo));
+    }
+
+    void bot(String id, String estrategia) {
+        anotar(new Registro(BOT).jugador(id).texto(estrategia));
+    }
+
+    void ronda(int[] totales) {
+        Registro r = new Registro(RONDA).octeto(totales.length);
+        for (int total : totales) r.entero(total);
+        anotar(r);
+    }
+
+    // Después de FIN no se anota nada más: la mesa no se vuelve a reconstruir
+    void fin() {
+        if (cerrada) return;
+        anotar(new Registro(FIN));
+        cerrada = true;
+        Bitacora.cerrarMesa(mesa);
+    }
+
+    // Una mesa reconstruida sigue anotando donde se quedó
+    void retomar() {
+        Bitacora.abrirMesa(mesa);
+    }
+
+    private void anotar(Registro r) {
+        if (cerrada || !Bitacora.estaActiva()) return;
+        Bitacora.anotar(mesa, r.bytes());
+    }
+
+    // Para recorrer la bitácora sin mover los datos: lee el tipo en su lugar
+    static byte tipo(ByteBuffer datos) {
+        return datos.hasRemaining() ? datos.get(datos.position()) : 0;
+    }
+
+    // La sala de un registro INICIO
+    static String salaDe(ByteBuffer inicio) {
+        ByteBuffer vista = inicio.duplicate();
+        vista.get();
+        return leerTexto(vista);
+    }
+
+    static String leerTexto(ByteBuffer datos) {
+        byte[] b = new byte[datos.getShort() & 0xFFFF];
+        datos.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // Los registros son chicos: se arman en un arreglo y se entregan de una vez
+    private final class Registro {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+        private final DataOutputStream salida = new DataOutputStream(bytes);
+
+        Registro(byte tipo) {
+            octeto(tipo);
+        }
+
+        Registro octeto(int v) {
+            try { salida.writeByte(v); } catch (IOException e) { throw new UncheckedIOException(e); }
+            return this;
+        }
+
+        Registro entero(int v) {
+            try { salida.writeInt(v); } catch (IOException e) { throw new UncheckedIOException(e); }
+            return this;
+        }
+
+        Registro largo(long v) {
+            try { salida.writeLong(v); } catch (IOException e) { throw new UncheckedIOException(e); }
+            return this;
+        }
+
+        // Largo (2 bytes) y UTF-8; se lee con leerTexto
+        Registro texto(String v) {
+            byte[] b = v.getBytes(StandardCharsets.UTF_8);
+            try {
+                salida.writeShort(b.length);
+                salida.write(b);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        // Largo (4 bytes) y los bytes tal cual
+        Registro bloque(byte[] v) {
+            try {
+                salida.writeInt(v.length);
+                salida.write(v);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        // Número de jugador; -1 si el id no es de la mesa (o es null)
+        Registro jugador(String id) {
+            return octeto(id == null ? -1 : numeroDe(id));
+        }
+
+        byte[] bytes() {
+            return bytes.toByteArray();
+        }
+    }
+}
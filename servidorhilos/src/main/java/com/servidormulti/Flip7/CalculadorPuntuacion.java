@@ -1,50 +1,49 @@
 package com.servidormulti.Flip7;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
+// Trabaja sobre el resumen de la mano que lleva Jugador (máscara de valores, suma y
+// bonus), así que no recorre la mano ni crea objetos
 public class CalculadorPuntuacion {
-    public int calcularPuntuacion(List<Carta> mano) {
-        int sumaBase = 0;
-        int multiplicador = 1;
-        int bonoPuntos = 0;
-
-        Set<Integer> valoresUnicos = new HashSet<>();
-
-        for (Carta c : mano) {
-            if (c.obtenerTipo() == TipoCarta.NUMERICA) {
-                sumaBase += c.obtenerValor();
-                valoresUnicos.add(c.obtenerValor());
-            } else if (c.obtenerTipo() == TipoCarta.BONUS) {
-                if (c.toString().equals("x2")) {
-                    multiplicador *= 2;
-                } else if (c.toString().contains("+10")) {
-                    bonoPuntos += 10;
-                }
-            }
-        }
 
-        int total = sumaBase * multiplicador;
+    public static final int BONO_FLIP7 = 15;
 
-        total += bonoPuntos;
+    private final int bonoFlip7;
 
-        if (valoresUnicos.size() == 7) {
-            total += 15;
-        }
+    public CalculadorPuntuacion() {
+        this(BONO_FLIP7);
+    }
 
-        return total;
+    // Otro bono solo para simular reglas de la casa (ver MotorFlip7.Reglas)
+    public CalculadorPuntuacion(int bonoFlip7) {
+        this.bonoFlip7 = bonoFlip7;
+    }
+
+    public int calcularPuntuacion(Jugador jugador) {
+        return puntuacion(jugador.obtenerMascaraValores(), jugador.obtenerSumaNumericas(),
+                jugador.obtenerCantidadX2(), jugador.obtenerCantidadMas10(), bonoFlip7);
     }
 
-    public boolean verificarFlip7(List<Carta> mano) {
-        Set<Integer> valoresUnicos = new HashSet<>();
+    public boolean verificarFlip7(Jugador jugador) {
+        return esFlip7(jugador.obtenerMascaraValores());
+    }
+
+    // Cada x2 duplica la suma de las numéricas; los +10 se suman después
+    public static int puntuacion(int mascaraValores, int sumaNumericas, int cantidadX2, int cantidadMas10) {
+        return puntuacion(mascaraValores, sumaNumericas, cantidadX2, cantidadMas10, BONO_FLIP7);
+    }
+
+    public static int puntuacion(int mascaraValores, int sumaNumericas, int cantidadX2, int cantidadMas10,
+                                 int bonoFlip7) {
+        int total = (sumaNumericas << cantidadX2) + 10 * cantidadMas10;
 
-        for (Carta c : mano) {
-            if (c.obtenerTipo() == TipoCarta.NUMERICA) {
-                valoresUnicos.add(c.obtenerValor());
-            }
+        if (esFlip7(mascaraValores)) {
+            total += bonoFlip7;
         }
-        return valoresUnicos.size() == 7;
+
+        return total;
     }
 
-}
\ No newline at end of file
+    // Siete números distintos en la mano
+    public static boolean esFlip7(int mascaraValores) {
+        return Integer.bitCount(mascaraValores) == 7;
+    }
+}
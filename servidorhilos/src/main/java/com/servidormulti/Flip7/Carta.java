@@ -1,16 +1,54 @@
 package com.servidormulti.Flip7;
 
+// Inmutable y con una sola instancia por tipo de carta (ver desdeCodigo): las barajas
+// guardan solo el código y todas comparten estas instancias
 public class Carta {
+
+    // Códigos de 1 byte (también los usa ProtocoloBinario): 1-12 numéricas, 13-17 acción y bonus
+    public static final int SECOND_CHANCE = 13;
+    public static final int FREEZE = 14;
+    public static final int FLIP_THREE = 15;
+    public static final int X2 = 16;
+    public static final int MAS_10 = 17;
+    public static final int MAX_CODIGO = 17;
+
+    private static final Carta[] POR_CODIGO = new Carta[MAX_CODIGO + 1];
+
+    static {
+        for (int valor = 1; valor <= 12; valor++) {
+            POR_CODIGO[valor] = new Carta(valor, valor, String.valueOf(valor), TipoCarta.NUMERICA);
+        }
+        POR_CODIGO[SECOND_CHANCE] = new Carta(SECOND_CHANCE, 0, "Second Chance", TipoCarta.ACCION);
+        POR_CODIGO[FREEZE] = new Carta(FREEZE, 0, "Freeze", TipoCarta.ACCION);
+        POR_CODIGO[FLIP_THREE] = new Carta(FLIP_THREE, 0, "Flip Three", TipoCarta.ACCION);
+        POR_CODIGO[X2] = new Carta(X2, 0, "x2", TipoCarta.BONUS);
+        POR_CODIGO[MAS_10] = new Carta(MAS_10, 0, "+10", TipoCarta.BONUS);
+    }
+
+    private final int codigo;
     private final int valor;
     private final String nombre;
     private final TipoCarta tipo;
 
-    public Carta(int valor, String nombre, TipoCarta tipo) {
+    private Carta(int codigo, int valor, String nombre, TipoCarta tipo) {
+        this.codigo = codigo;
         this.valor = valor;
         this.nombre = nombre;
         this.tipo = tipo;
     }
 
+    public static Carta desdeCodigo(int codigo) {
+        return POR_CODIGO[codigo];
+    }
+
+    // Para partidas guardadas, que guardan la mano por nombre. null si no existe
+    public static Carta desdeNombre(String nombre) {
+        for (int codigo = 1; codigo <= MAX_CODIGO; codigo++) {
+            if (POR_CODIGO[codigo].nombre.equals(nombre)) return POR_CODIGO[codigo];
+        }
+        return null;
+    }
+
     public int obtenerValor() {
         return valor;
     }
@@ -19,6 +57,10 @@ public class Carta {
         return tipo;
     }
 
+    public int obtenerCodigo() {
+        return codigo;
+    }
+
     @Override
     public String toString() {
         return nombre;
@@ -0,0 +1,204 @@
+package com.servidormulti.Flip7;
+
+import java.util.Arrays;
+
+/**
+ * Cuándo conviene /parar. Con lo que queda por jalar (cuántas de cada carta) y la mano
+ * (máscara de números, x2, +10 y Second Chance) calcula la probabilidad de BUST en la
+ * siguiente carta y cuántos puntos se esperan si se planta ahora o si jala y después
+ * sigue jugando lo mejor posible.
+ *
+ * El valor de jalar se resuelve hacia adelante estado por estado, recordando cada uno
+ * en una tabla indexada por una llave de 16 bits (ver valor()). Cada hilo tiene su
+ * tabla y no se limpia entre consultas: basta cambiar de generación.
+ *
+ * El modelo mira solo al propio jugador:
+ *  - el mazo cambia solo por lo que él jala (lo que jalan los demás no se adivina);
+ *  - Freeze y Flip Three se los tiraría a otro: no cambian su mano;
+ *  - una segunda Second Chance la regala: tampoco cambia su mano;
+ *  - se cuenta a lo más una Second Chance gastada por consulta, y la carta repetida
+ *    que se come no se descuenta del mazo.
+ */
+public final class ConsejeroFlip7 {
+
+    /** La respuesta para una mano. */
+    public static final class Consejo {
+        public final double probabilidadBust;  // Perder la mano con la siguiente carta
+        public final double puntosPlantandose;
+        public final double puntosJalando;     // Esperados, jalando ahora y jugando bien después
+
+        Consejo(double probabilidadBust, double puntosPlantandose, double puntosJalando) {
+            this.probabilidadBust = probabilidadBust;
+            this.puntosPlantandose = puntosPlantandose;
+            this.puntosJalando = puntosJalando;
+        }
+
+        public boolean convieneJalar() {
+            return puntosJalando > puntosPlantandose;
+        }
+    }
+
+    // mascara (12 bits) | x2 jalado (1) | +10 jalado (1) | Second Chance: 0 sin, 1 guardada, 2 ya gastada (2)
+    private static final int ESTADOS = 1 << 16;
+    private static final int SIN_SC = 0, CON_SC = 1, SC_GASTADA = 2;
+
+    // Tabla por hilo; la generación evita limpiarla en cada consulta
+    private static final ThreadLocal<ConsejeroFlip7> porHilo = ThreadLocal.withInitial(ConsejeroFlip7::new);
+
+    private final double[] valor = new double[ESTADOS];
+    private final int[] generacionDe = new int[ESTADOS];
+    private int generacion;
+
+    // La consulta en curso
+    private final int[] mazo = new int[Carta.MAX_CODIGO + 1];
+    private int mascaraInicial;
+    private int x2Inicial;
+    private int mas10Inicial;
+    private int bonoFlip7;
+
+    private ConsejeroFlip7() {}
+
+    // 'porJalar' indexado por código (ver Baraja.contarPorJalar)
+    // 'bonoFlip7' el de las reglas de la mesa (ver MotorFlip7.Reglas)
+    public static Consejo aconsejar(int[] porJalar, int mascara, int cantidadX2, int cantidadMas10,
+                                    boolean secondChance, int bonoFlip7) {
+        return porHilo.get().resolver(porJalar, mascara, cantidadX2, cantidadMas10, secondChance, bonoFlip7);
+    }
+
+    public static Consejo aconsejar(int[] porJalar, Jugador j, int bonoFlip7) {
+        return aconsejar(porJalar, j.obtenerMascaraValores(), j.obtenerCantidadX2(),
+                j.obtenerCantidadMas10(), j.tieneSecondChance(), bonoFlip7);
+    }
+
+    /**
+     * Solo la decisión, para bots que preguntan en cada turno. Si jalar una carta y
+     * plantarse después ya rinde más que plantarse ahora, jalar es lo mejor (jugar bien
+     * después no puede rendir menos) y no hace falta resolver. Eso pasa con las manos
+     * chicas, que son las caras de resolver; las grandes se resuelven en microsegundos.
+     */
+    public static boolean convieneJalar(int[] porJalar, Jugador j, int bonoFlip7) {
+        ConsejeroFlip7 c = porHilo.get();
+        if (c.jalarUnaYPlantarse(porJalar, j, bonoFlip7) > CalculadorPuntuacion.puntuacion(j.obtenerMascaraValores(),
+                j.obtenerSumaNumericas(), j.obtenerCantidadX2(), j.obtenerCantidadMas10(), bonoFlip7)) {
+            return true;
+        }
+        return aconsejar(porJalar, j, bonoFlip7).convieneJalar();
+    }
+
+    // Esperanza de jalar hasta que salga una carta que cambie la mano, y plantarse
+    private double jalarUnaYPlantarse(int[] porJalar, Jugador j, int bono) {
+        int mascara = j.obtenerMascaraValores();
+        int suma = j.obtenerSumaNumericas();
+        int x2 = j.obtenerCantidadX2();
+        int mas10 = j.obtenerCantidadMas10();
+        double actual = CalculadorPuntuacion.puntuacion(mascara, suma, x2, mas10, bono);
+        double total = 0;
+        int cuentan = 0;
+        for (int v = 1; v <= 12; v++) {
+            int n = porJalar[v];
+            if (n == 0) continue;
+            cuentan += n;
+            if ((mascara & (1 << v)) == 0) {
+                total += n * (double) CalculadorPuntuacion.puntuacion(mascara | (1 << v), suma + v, x2, mas10, bono);
+            } else if (j.tieneSecondChance()) {
+                total += n * actual;
+            }
+        }
+        cuentan += porJalar[Carta.X2] + porJalar[Carta.MAS_10];
+        total += porJalar[Carta.X2] * (double) CalculadorPuntuacion.puntuacion(mascara, suma, x2 + 1, mas10, bono);
+        total += porJalar[Carta.MAS_10] * (double) CalculadorPuntuacion.puntuacion(mascara, suma, x2, mas10 + 1, bono);
+        if (!j.tieneSecondChance()) {
+            cuentan += porJalar[Carta.SECOND_CHANCE];
+            total += porJalar[Carta.SECOND_CHANCE] * actual;
+        }
+        return cuentan == 0 ? actual : total / cuentan;
+    }
+
+    private Consejo resolver(int[] porJalar, int mascara, int x2, int mas10, boolean secondChance, int bono) {
+        if (++generacion == 0) { // Dio la vuelta: se limpia una vez
+            Arrays.fill(generacionDe, 0);
+            generacion = 1;
+        }
+        System.arraycopy(porJalar, 0, mazo, 0, mazo.length);
+        mascaraInicial = mascara;
+        x2Inicial = x2;
+        mas10Inicial = mas10;
+        bonoFlip7 = bono;
+
+        int total = 0;
+        int repetidas = 0;
+        int suma = 0;
+        for (int codigo = 1; codigo <= Carta.MAX_CODIGO; codigo++) total += mazo[codigo];
+        for (int v = 1; v <= 12; v++) {
+            if ((mascara & (1 << v)) != 0) {
+                repetidas += mazo[v];
+                suma += v;
+            }
+        }
+
+        double plantarse = puntos(mascara, suma, 0, 0);
+        if (total == 0) return new Consejo(0, plantarse, plantarse);
+
+        double probBust = secondChance ? 0 : (double) repetidas / total;
+        double jalar = valorDeJalar(mascara, suma, 0, 0, secondChance ? CON_SC : SIN_SC);
+        return new Consejo(probBust, plantarse, jalar);
+    }
+
+    // x2 y +10 son los jalados en esta consulta (se cuenta a lo más uno de cada uno, como
+    // en la baraja estándar)
+    private double puntos(int mascara, int suma, int x2, int mas10) {
+        return CalculadorPuntuacion.puntuacion(mascara, suma, x2Inicial + x2, mas10Inicial + mas10, bonoFlip7);
+    }
+
+    // Lo mejor entre plantarse y jalar; se calcula una vez por estado
+    private double valor(int mascara, int suma, int x2, int mas10, int sc) {
+        int llave = (mascara >>> 1) | (x2 << 12) | (mas10 << 13) | (sc << 14);
+        if (generacionDe[llave] == generacion) return valor[llave];
+        double v = Math.max(puntos(mascara, suma, x2, mas10), valorDeJalar(mascara, suma, x2, mas10, sc));
+        generacionDe[llave] = generacion;
+        valor[llave] = v;
+        return v;
+    }
+
+    // Esperanza de jalar una carta. Las que no cambian la mano se quitan del reparto:
+    // si conviene jalar, tras una de ellas se vuelve a jalar desde el mismo estado
+    private double valorDeJalar(int mascara, int suma, int x2, int mas10, int sc) {
+        double total = 0;
+        int cuentan = 0;
+
+        for (int v = 1; v <= 12; v++) {
+            int bit = 1 << v;
+            boolean enMano = (mascara & bit) != 0;
+            // Si salió en esta consulta, esa copia ya no está en el mazo
+            int n = mazo[v] - (enMano && (mascaraInicial & bit) == 0 ? 1 : 0);
+            if (n <= 0) continue;
+            cuentan += n;
+            if (enMano) {
+                // Repetida: sin Second Chance es BUST (0 puntos)
+                if (sc == CON_SC) total += n * valor(mascara, suma, x2, mas10, SC_GASTADA);
+            } else {
+                int nueva = mascara | bit;
+                total += n * (CalculadorPuntuacion.esFlip7(nueva)
+                        ? puntos(nueva, suma + v, x2, mas10) // Flip 7: la ronda se acaba ahí
+                        : valor(nueva, suma + v, x2, mas10, sc));
+            }
+        }
+
+        if (x2 == 0 && mazo[Carta.X2] > 0) {
+            cuentan += mazo[Carta.X2];
+            total += mazo[Carta.X2] * valor(mascara, suma, 1, mas10, sc);
+        }
+        if (mas10 == 0 && mazo[Carta.MAS_10] > 0) {
+            cuentan += mazo[Carta.MAS_10];
+            total += mazo[Carta.MAS_10] * valor(mascara, suma, x2, 1, sc);
+        }
+        // Una Second Chance solo sirve si no tiene; tras gastar una, las demás se cuentan
+        // como cartas sin efecto (así el estado no da vueltas)
+        if (sc == SIN_SC && mazo[Carta.SECOND_CHANCE] > 0) {
+            cuentan += mazo[Carta.SECOND_CHANCE];
+            total += mazo[Carta.SECOND_CHANCE] * valor(mascara, suma, x2, mas10, CON_SC);
+        }
+
+        return cuentan == 0 ? puntos(mascara, suma, x2, mas10) : total / cuentan;
+    }
+}
@@ -0,0 +1,87 @@
+package com.servidormulti.Flip7;
+
+import java.util.List;
+
+/**
+ * Cómo juega un bot: si jala otra carta y a quién le tira una carta de acción.
+ * Solo mira el motor, no lo cambia; quien lo usa hace la jugada.
+ *
+ * Las estrategias se pueden escribir como texto ("umbral:25", "cartas:5", "optima") para
+ * elegirlas desde la línea de comandos o la configuración.
+ */
+public interface EstrategiaBot {
+
+    String nombre();
+
+    // true = /jalar, false = /parar
+    boolean quiereJalar(Jugador yo, MotorFlip7 mesa);
+
+    // Freeze y Flip Three al rival que va mejor (el que más le puede quitar a uno);
+    // la Second Chance a cualquiera que no sea uno mismo. Uno mismo solo si no hay otro
+    default String elegirObjetivo(String miId, Carta accion, List<String> idsObjetivo, MotorFlip7 mesa) {
+        String mejor = null;
+        int mejorPuntos = -1;
+        for (String id : idsObjetivo) {
+            if (id.equals(miId)) continue;
+            Jugador j = mesa.obtenerJugador(id);
+            int puntos = j.obtenerPuntuacionTotal() + puntosEnMano(j, mesa);
+            if (puntos > mejorPuntos) {
+                mejorPuntos = puntos;
+                mejor = id;
+            }
+        }
+        return mejor != null ? mejor : idsObjetivo.get(0);
+    }
+
+    // Con el bono de Flip 7 de las reglas de la mesa
+    static int puntosEnMano(Jugador j, MotorFlip7 mesa) {
+        return CalculadorPuntuacion.puntuacion(j.obtenerMascaraValores(), j.obtenerSumaNumericas(),
+                j.obtenerCantidadX2(), j.obtenerCantidadMas10(), mesa.obtenerReglas().bonoFlip7);
+    }
+
+    // Se planta en cuanto la mano vale 'puntos' o más
+    static EstrategiaBot umbral(int puntos) {
+        return new EstrategiaBot() {
+            public String nombre() { return "umbral:" + puntos; }
+            public boolean quiereJalar(Jugador yo, MotorFlip7 mesa) {
+                return puntosEnMano(yo, mesa) < puntos;
+            }
+        };
+    }
+
+    // Se planta al juntar 'cantidad' números distintos
+    static EstrategiaBot cartas(int cantidad) {
+        return new EstrategiaBot() {
+            public String nombre() { return "cartas:" + cantidad; }
+            public boolean quiereJalar(Jugador yo, MotorFlip7 mesa) {
+                return Integer.bitCount(yo.obtenerMascaraValores()) < cantidad;
+            }
+        };
+    }
+
+    // Jala mientras ConsejeroFlip7 diga que jalar rinde más puntos que plantarse
+    static EstrategiaBot optima() {
+        return new EstrategiaBot() {
+            public String nombre() { return "optima"; }
+            public boolean quiereJalar(Jugador yo, MotorFlip7 mesa) {
+                return ConsejeroFlip7.convieneJalar(mesa.contarPorJalar(), yo, mesa.obtenerReglas().bonoFlip7);
+            }
+        };
+    }
+
+    // "umbral:25", "cartas:5" u "optima"; IllegalArgumentException si no se entiende
+    static EstrategiaBot desdeTexto(String texto) {
+        String[] partes = texto.trim().toLowerCase().split(":");
+        if (partes[0].equals("optima")) return optima();
+        try {
+            int n = Integer.parseInt(partes[1]);
+            switch (partes[0]) {
+                case "umbral": return umbral(n);
+                case "cartas": return cartas(n);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            // Cae al error de abajo
+        }
+        throw new IllegalArgumentException("Estrategia desconocida: " + texto + " (usa umbral:N, cartas:N u optima)");
+    }
+}
@@ -1,99 +1,166 @@
 package com.servidormulti.Flip7;
 
 import com.servidormulti.ConexionDB;
+import com.servidormulti.Metricas;
 import com.servidormulti.UnCliente;
-import java.sql.Connection;
+import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
+/**
+ * El /guardar de una mesa. Todo lo que se escribe se copia en el actor de la sala al
+ * crearlo; después la mesa se suelta de inmediato y la escritura sigue sola en el
+ * escritor de BD. Los jugadores se enteran cuando queda confirmada o si falló; si falló,
+ * la partida vuelve a su sala como un respaldo y la retoman al volver a entrar.
+ */
 public class GuardadoPartida {
 
-    public boolean guardarYTerminar(List<UnCliente> clientes, Map<String, Jugador> jugadores, int turnoActual, VistaJuego vista) {
-        
-        vista.mostrarMensajeGenerico(clientes, "Todos aceptaron. Guardando partida en base de datos...");
+    // Una fila de jugadores_guardados, copiada antes de soltar la mesa
+    private static final class FilaJugador {
+        final String nombreUsuario;
+        final int puntuacion;
+        final boolean secondChance;
+        final String cartas;
+        final boolean bust;
+        final boolean planto;
+        final boolean congelado;
 
-        Connection conn = ConexionDB.conectar();
-        if (conn == null) {
-            vista.mostrarMensajeGenerico(clientes, "Error crítico: No hay conexión a BD.");
-            return false;
+        FilaJugador(Jugador j) {
+            nombreUsuario = j.obtenerNombreUsuario();
+            puntuacion = j.obtenerPuntuacionTotal();
+            secondChance = j.tieneSecondChance();
+            cartas = j.obtenerCartasEnMano().stream().map(Carta::toString).collect(Collectors.joining(","));
+            bust = j.tieneBUST();
+            planto = j.sePlanto();
+            congelado = j.estaCongelado();
         }
+    }
 
-        try {
-            conn.setAutoCommit(false); // Transacción segura
+    private final String nombreSala;
+    private final long mesa; // La de la bitácora: identifica a esta partida ante RespaldoPartidas
+    private final int turnoActual;
+    private final byte[] estado;
+    private final List<FilaJugador> filas = new ArrayList<>();
 
-            // 1. Guardar la partida (Sala y Turno)
-            String sqlPartida = "INSERT INTO partidas_guardadas (sala, turno_actual) VALUES (?, ?)";
-            int partidaId = -1;
-            
-            // Asumimos que todos están en la misma sala, tomamos el nombre del primero
-            String nombreSala = clientes.get(0).obtenerSalaActual();
+    // 'estado' es la InstantaneaPartida con la que la partida sigue exactamente igual; las filas
+    // de jugadores_guardados quedan para listar las partidas de cada usuario
+    public GuardadoPartida(String nombreSala, long mesa, Map<String, Jugador> jugadores, int turnoActual,
+                           byte[] estado) {
+        this.nombreSala = nombreSala;
+        this.mesa = mesa;
+        this.turnoActual = turnoActual;
+        this.estado = estado;
+        // Todos los asientos, también los que juega un bot
+        for (Jugador j : jugadores.values()) {
+            filas.add(new FilaJugador(j));
+        }
+    }
 
-            try (PreparedStatement pstmt = conn.prepareStatement(sqlPartida)) {
-                pstmt.setString(1, nombreSala);
-                pstmt.setInt(2, turnoActual);
-                pstmt.executeUpdate();
+    /**
+     * Saca a los jugadores de la sala y manda la escritura. No espera el commit: el futuro
+     * trae el id de la partida guardada y se completa en el hilo escritor.
+     */
+    public CompletableFuture<Integer> guardarYTerminar(List<UnCliente> clientes, VistaJuego vista) {
+        vista.mostrarMensajeGenerico(clientes, "Todos aceptaron. Guardando partida en base de datos... Cerrando sala.");
 
-                // Recuperamos el ID generado
-                try (Statement stmt = conn.createStatement();
-                     ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
-                    if (rs.next()) {
-                        partidaId = rs.getInt(1);
-                    }
-                }
+        // 1. La mesa ya no espera a la BD: cada jugador sale de la sala y vuelve al menú
+        for (UnCliente c : clientes) {
+            try {
+                c.getManejadorSalas().salirDelGrupoActual(c);
+                c.getManejadorMenu().mostrarMenuSalaPrincipal(c, c.getSalida());
+            } catch (IOException e) {
+                System.err.println("No se pudo devolver al menú a " + c.getNombreUsuario() + ": " + e.getMessage());
             }
+        }
 
-            // 2. Guardar a cada jugador
-            String sqlJugador = "INSERT INTO jugadores_guardados " +
-                "(partida_id, nombre_usuario, puntuacion, tiene_second_chance, cartas_mano, es_bust, se_planto, esta_congelado) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-            
-            try (PreparedStatement pstmt = conn.prepareStatement(sqlJugador)) {
-                for (UnCliente c : clientes) {
-                    Jugador j = jugadores.get(c.getClienteID());
-                    
-                    String cartasString = j.obtenerCartasEnMano().stream()
-                                           .map(Carta::toString)
-                                           .collect(Collectors.joining(","));
+        // 2. Todo el guardado es una sola operación del escritor de BD: o entra completo o nada
+        long inicio = System.nanoTime();
+        CompletableFuture<Integer> guardado;
+        try {
+            guardado = ConexionDB.escribir(conn -> {
+                // Guardar la partida (Sala, Turno y la instantánea)
+                String sqlPartida = "INSERT INTO partidas_guardadas (sala, turno_actual, estado) VALUES (?, ?, ?)";
+                int partidaId = -1;
 
-                    pstmt.setInt(1, partidaId);
-                    pstmt.setString(2, j.obtenerNombreUsuario());
-                    pstmt.setInt(3, j.obtenerPuntuacionTotal());
-                    pstmt.setInt(4, j.tieneSecondChance() ? 1 : 0);
-                    pstmt.setString(5, cartasString);
-                    pstmt.setInt(6, j.tieneBUST() ? 1 : 0);
-                    pstmt.setInt(7, j.sePlanto() ? 1 : 0);
-                    pstmt.setInt(8, j.estaCongelado() ? 1 : 0);
-                    
-                    pstmt.addBatch();
-                }
-                pstmt.executeBatch();
-            }
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlPartida)) {
+                    pstmt.setString(1, nombreSala);
+                    pstmt.setInt(2, turnoActual);
+                    pstmt.setBytes(3, estado);
+                    pstmt.executeUpdate();
 
-            conn.commit(); // Confirmar cambios
-            vista.mostrarMensajeGenerico(clientes, "¡Partida guardada exitosamente! Cerrando sala...");
+                    // Recuperamos el ID generado
+                    try (Statement stmt = conn.createStatement();
+                         ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                        if (rs.next()) {
+                            partidaId = rs.getInt(1);
+                        }
+                    }
+                }
 
-            // 3. Gestionar la salida de los jugadores (resetear su estado visual)
-            List<UnCliente> copiaClientes = new ArrayList<>(clientes);
-            for (UnCliente c : copiaClientes) {
-                c.getManejadorMenu().mostrarMenuSalaPrincipal(c, c.getSalida());
-                c.establecerSalaActual(null);
-            }
+                // Guardar a cada jugador
+                String sqlJugador = "INSERT INTO jugadores_guardados " +
+                    "(partida_id, nombre_usuario, puntuacion, tiene_second_chance, cartas_mano, es_bust, se_planto, esta_congelado) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 
-            return true; // Éxito
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlJugador)) {
+                    for (FilaJugador f : filas) {
+                        pstmt.setInt(1, partidaId);
+                        pstmt.setString(2, f.nombreUsuario);
+                        pstmt.setInt(3, f.puntuacion);
+                        pstmt.setInt(4, f.secondChance ? 1 : 0);
+                        pstmt.setString(5, f.cartas);
+                        pstmt.setInt(6, f.bust ? 1 : 0);
+                        pstmt.setInt(7, f.planto ? 1 : 0);
+                        pstmt.setInt(8, f.congelado ? 1 : 0);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
 
-        } catch (Exception e) {
-            try { conn.rollback(); } catch (SQLException ex) {} // Deshacer si falla
-            vista.mostrarMensajeGenerico(clientes, "Error al guardar en BD: " + e.getMessage());
-            e.printStackTrace();
-            return false; // Fallo
-        } finally {
-            ConexionDB.cerrarConexion(conn);
+                // Su respaldo automático sobra: si quedara, al arrancar volvería como partida en curso
+                try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM partidas_activas WHERE sala = ?")) {
+                    pstmt.setString(1, nombreSala);
+                    pstmt.executeUpdate();
+                }
+                // En el mismo hilo: los respaldos de esta mesa que lleguen después no la reescriben
+                RespaldoPartidas.marcarGuardada(nombreSala, mesa);
+                return partidaId;
+            });
+        } catch (IllegalStateException e) { // El escritor ya se cerró
+            guardado = CompletableFuture.failedFuture(e);
         }
+
+        // 3. El aviso llega cuando se confirmó (o falló), ya fuera de la mesa
+        return guardado.whenComplete((partidaId, error) -> {
+            if (error == null) {
+                Metricas.incrementar("guardado.partidas");
+                Metricas.sumar("guardado.latenciaMicros", (System.nanoTime() - inicio) / 1000);
+                vista.mostrarMensajeGenerico(clientes, "¡Partida de '" + nombreSala + "' guardada exitosamente!");
+                return;
+            }
+            // Si falló la escritura, el escritor ya deshizo esta operación
+            Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            Metricas.incrementar("guardado.errores");
+            System.err.println("Error al guardar la partida de '" + nombreSala + "': " + causa.getMessage());
+            RespaldoPartidas.devolver(nombreSala, estado).whenComplete((devuelta, errorDevolver) -> {
+                String aviso = "Error al guardar en BD: " + causa.getMessage() + ". ";
+                if (Boolean.TRUE.equals(devuelta)) {
+                    aviso += "La partida sigue en la sala '" + nombreSala + "': entren de nuevo para retomarla.";
+                } else {
+                    if (errorDevolver != null) {
+                        System.err.println("No se pudo devolver la partida a '" + nombreSala + "': " + errorDevolver.getMessage());
+                    }
+                    aviso += "La partida no se pudo recuperar.";
+                }
+                vista.mostrarMensajeGenerico(clientes, aviso);
+            });
+        });
     }
-}
\ No newline at end of file
+}
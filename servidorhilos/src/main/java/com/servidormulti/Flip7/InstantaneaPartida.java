@@ -0,0 +1,106 @@
+package com.servidormulti.Flip7;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Una partida completa en un arreglo de bytes: quién ocupa cada asiento y el estado
+ * del motor (MotorFlip7.escribirEstado), con la baraja en orden, el Flip Three a medias
+ * y la acción que espera objetivo. Es lo que /guardar deja en partidas_guardadas.estado;
+ * al cargarla la partida sigue igual, con las mismas cartas por salir.
+ *
+ * Formato: versión (1 byte), número de asientos (1 byte); por asiento id, nombre y
+ * estrategia (vacía si es humano) en UTF; y el motor hasta el final. Unos cientos de bytes.
+ */
+final class InstantaneaPartida {
+
+    static final int VERSION = 1;
+
+    final List<String> ids;
+    final List<String> nombres;
+    final List<String> estrategias; // "" si el asiento es de un humano
+    private final byte[] motor;
+
+    InstantaneaPartida(List<String> ids, List<String> nombres, List<String> estrategias, byte[] motor) {
+        this.ids = Collections.unmodifiableList(new ArrayList<>(ids));
+        this.nombres = Collections.unmodifiableList(new ArrayList<>(nombres));
+        this.estrategias = Collections.unmodifiableList(new ArrayList<>(estrategias));
+        this.motor = motor;
+    }
+
+    static InstantaneaPartida tomar(List<String> ids, List<String> nombres, List<String> estrategias,
+                                    MotorFlip7 motor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            motor.escribirEstado(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // En memoria no pasa
+        }
+        return new InstantaneaPartida(ids, nombres, estrategias, bytes.toByteArray());
+    }
+
+    int asientos() {
+        return ids.size();
+    }
+
+    // Los mismos asientos con otros ids (los de la mesa que la carga)
+    InstantaneaPartida conIds(List<String> otrosIds, List<String> otrasEstrategias) {
+        return new InstantaneaPartida(otrosIds, nombres, otrasEstrategias, motor);
+    }
+
+    DataInput estadoMotor() {
+        return new DataInputStream(new ByteArrayInputStream(motor));
+    }
+
+    byte[] bytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + motor.length);
+        DataOutputStream salida = new DataOutputStream(bytes);
+        try {
+            salida.writeByte(VERSION);
+            salida.writeByte(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                salida.writeUTF(ids.get(i));
+                salida.writeUTF(nombres.get(i));
+                salida.writeUTF(estrategias.get(i));
+            }
+            salida.write(motor);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Lee una instantánea y la prueba en un motor aparte, para que un guardado roto no
+     * deje a medias la mesa que lo carga. IOException si la versión no es conocida o los
+     * datos no cuadran.
+     */
+    static InstantaneaPartida leer(byte[] datos) throws IOException {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(datos));
+        int version = entrada.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Versión de instantánea desconocida: " + version);
+        int n = entrada.readUnsignedByte();
+        List<String> ids = new ArrayList<>(n), nombres = new ArrayList<>(n), estrategias = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ids.add(entrada.readUTF());
+            nombres.add(entrada.readUTF());
+            estrategias.add(entrada.readUTF());
+        }
+        InstantaneaPartida instantanea = new InstantaneaPartida(ids, nombres, estrategias, entrada.readAllBytes());
+
+        // Sin tiempos ni oyente: los pasos que pida quedan sin correr
+        MotorFlip7 prueba = new MotorFlip7(0, MotorFlip7.Tiempos.sinEsperas(),
+                (retrasoMs, paso) -> new CompletableFuture<Void>(), new OyenteJuego() {});
+        prueba.restaurar(instantanea.estadoMotor(), ids, nombres);
+        return instantanea;
+    }
+}
@@ -1,11 +1,20 @@
 package com.servidormulti.Flip7;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Jugador {
     private final String nombreUsuario;
-    private List<Carta> cartasEnMano;
+    private final List<Carta> cartasEnMano;
+    private final List<Carta> vistaMano; // Solo lectura: la mano cambia únicamente por aquí
+
+    // Resumen de la mano para que BUST, Flip 7 y la puntuación sean O(1) y sin objetos:
+    // bit v encendido = ya tiene el número v (1-12)
+    private int mascaraValores;
+    private int sumaNumericas;
+    private int cantidadX2;
+    private int cantidadMas10;
     private boolean tieneBUST;
     private boolean sePlanto;
     private int puntuacionTotal;
@@ -13,9 +22,14 @@ public class Jugador {
     private boolean tieneSecondChance;
     private boolean estaCongelado;
 
+    // Tiempos de turno vencidos sin que el jugador escribiera nada entre medio
+    private int expiracionesSeguidas;
+    private boolean afk;
+
     public Jugador(String nombreUsuario) {
         this.nombreUsuario = nombreUsuario;
         this.cartasEnMano = new ArrayList<>();
+        this.vistaMano = Collections.unmodifiableList(cartasEnMano);
         this.tieneBUST = false;
         this.sePlanto = false;
         this.tieneSecondChance = false;
@@ -41,7 +55,7 @@ public class Jugador {
 
         // Si es Bonus/Accion se agrega directo...
         if (nuevaCarta.obtenerTipo() != TipoCarta.NUMERICA) {
-            this.cartasEnMano.add(nuevaCarta);
+            agregarCarta(nuevaCarta);
             return true;
         }
 
@@ -52,30 +66,46 @@ public class Jugador {
               
                 return true; 
             } else {
-                this.cartasEnMano.clear(); // Se borra todo
+                vaciarMano(); // Se borra todo
                 this.tieneBUST = true;
                 this.sePlanto = true;
                 return false;
             }
         } else {
-            this.cartasEnMano.add(nuevaCarta);
+            agregarCarta(nuevaCarta);
             return true;
         }
     }
 
     // Método que implementa detectar si una carta numérica repite valor
-    private boolean verificarSiCausaBUST(Carta nuevaCarta) {
-        for (Carta carta : cartasEnMano) {
-            if (carta.obtenerTipo() == TipoCarta.NUMERICA && carta.obtenerValor() == nuevaCarta.obtenerValor()) {
-                return true;
-            }
+    public boolean verificarSiCausaBUST(Carta nuevaCarta) {
+        return (mascaraValores & (1 << nuevaCarta.obtenerValor())) != 0;
+    }
+
+    // Agrega sin revisar BUST (también la usa la carga de partidas guardadas)
+    public void agregarCarta(Carta carta) {
+        cartasEnMano.add(carta);
+        if (carta.obtenerTipo() == TipoCarta.NUMERICA) {
+            mascaraValores |= 1 << carta.obtenerValor();
+            sumaNumericas += carta.obtenerValor();
+        } else if (carta.obtenerCodigo() == Carta.X2) {
+            cantidadX2++;
+        } else if (carta.obtenerCodigo() == Carta.MAS_10) {
+            cantidadMas10++;
         }
-        return false;
+    }
+
+    private void vaciarMano() {
+        cartasEnMano.clear();
+        mascaraValores = 0;
+        sumaNumericas = 0;
+        cantidadX2 = 0;
+        cantidadMas10 = 0;
     }
 
     // Reiniciar estado para nueva ronda
     public void reiniciarParaRondaNueva() {
-        this.cartasEnMano.clear();
+        vaciarMano();
         this.tieneBUST = false;
         this.sePlanto = false;
         // Reiniciamos estados especiales también
@@ -83,6 +113,14 @@ public class Jugador {
         this.estaCongelado = false;
     }
 
+    // Otra partida con el mismo jugador (la simulación reutiliza los objetos)
+    public void reiniciarParaPartidaNueva() {
+        reiniciarParaRondaNueva();
+        this.puntuacionTotal = 0;
+        this.expiracionesSeguidas = 0;
+        this.afk = false;
+    }
+
     public void sumarPuntos(int puntos) {
         this.puntuacionTotal += puntos;
     }
@@ -103,8 +141,25 @@ public class Jugador {
         return sePlanto;
     }
 
+    // Para mostrar y guardar la mano; para reglas usar el resumen de abajo
     public List<Carta> obtenerCartasEnMano() {
-        return cartasEnMano;
+        return vistaMano;
+    }
+
+    public int obtenerMascaraValores() {
+        return mascaraValores;
+    }
+
+    public int obtenerSumaNumericas() {
+        return sumaNumericas;
+    }
+
+    public int obtenerCantidadX2() {
+        return cantidadX2;
+    }
+
+    public int obtenerCantidadMas10() {
+        return cantidadMas10;
     }
 
     // Getters y Setters
@@ -131,4 +186,33 @@ public class Jugador {
     public void setEstaCongelado(boolean estaCongelado) {
         this.estaCongelado = estaCongelado;
     }
+
+    // Devuelve cuántos tiempos lleva vencidos seguidos
+    public int registrarExpiracion() {
+        return ++expiracionesSeguidas;
+    }
+
+    public int obtenerExpiracionesSeguidas() {
+        return expiracionesSeguidas;
+    }
+
+    public void setExpiracionesSeguidas(int expiracionesSeguidas) {
+        this.expiracionesSeguidas = expiracionesSeguidas;
+    }
+
+    // El jugador escribió algo: ya no está ausente. Devuelve si eso cambió algo
+    public boolean marcarPresente() {
+        boolean cambio = afk || expiracionesSeguidas > 0;
+        this.expiracionesSeguidas = 0;
+        this.afk = false;
+        return cambio;
+    }
+
+    public boolean estaAfk() {
+        return afk;
+    }
+
+    public void setAfk(boolean afk) {
+        this.afk = afk;
+    }
 }
\ No newline at end of file
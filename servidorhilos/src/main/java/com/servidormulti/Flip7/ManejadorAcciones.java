@@ -23,9 +23,8 @@ public class ManejadorAcciones {
 
         Carta c = baraja.jalarCarta();
 
-        // Manejo de mazo vacío
-        if (c == null) {
-            baraja.reiniciarBaraja();
+        // Manejo de mazo vacío: se revuelve el descarte, no las cartas que siguen en mano
+        if (c == null && baraja.rebarajearDescarte()) {
             c = baraja.jalarCarta();
         }
         if (c == null)
@@ -0,0 +1,1042 @@
+package com.servidormulti.Flip7;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Las reglas de Flip 7 sin red: no conoce sockets, clientes, vistas ni base de datos.
+ * Los jugadores van por un id; lo que pasa en la mesa sale como eventos a un
+ * OyenteJuego, y las pausas (cartas del Flip Three, espera entre rondas, límites de
+ * turno) se piden a un Programador.
+ *
+ * SesionJuego lo usa detrás de la red; una simulación o un bot pueden usarlo igual,
+ * con un Programador que corra los pasos al momento.
+ *
+ * No tiene candados: todas las llamadas (y los pasos programados) deben correr en el
+ * mismo hilo o actor.
+ */
+public class MotorFlip7 {
+
+    public static final int PUNTOS_PARA_GANAR = 200;
+
+    // Textos de rechazo que también usa SesionJuego
+    static final String ESPERA_FLIP_THREE = "Espera a que terminen de salir las cartas del Flip Three.";
+    static final String ACCION_PENDIENTE = "¡Tienes una carta de ACCION pendiente! Usa: /usar [Nombre]";
+
+    /** Pausas y límites de tiempo en milisegundos. Un límite en 0 lo desactiva. */
+    public static final class Tiempos {
+        public final long pausaFlipThreeMs;
+        public final long esperaRondaMs;
+        public final long limiteTurnoMs;
+        public final long limiteObjetivoMs;
+        public final int expiracionesParaAfk;
+
+        public Tiempos(long pausaFlipThreeMs, long esperaRondaMs, long limiteTurnoMs,
+                       long limiteObjetivoMs, int expiracionesParaAfk) {
+            this.pausaFlipThreeMs = pausaFlipThreeMs;
+            this.esperaRondaMs = esperaRondaMs;
+            this.limiteTurnoMs = limiteTurnoMs;
+            this.limiteObjetivoMs = limiteObjetivoMs;
+            this.expiracionesParaAfk = expiracionesParaAfk;
+        }
+
+        // Sin pausas ni límites: lo que necesita una simulación
+        public static Tiempos sinEsperas() {
+            return new Tiempos(0, 0, 0, 0, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Reglas de la casa que se pueden cambiar para simular: el bono de Flip 7 y cuántas
+     * cartas hay de cada código. El servidor juega siempre con estandar().
+     */
+    public static final class Reglas {
+        public final int bonoFlip7;
+        private final int[] composicion; // Cartas por código (ver Carta.desdeCodigo)
+
+        // IllegalArgumentException si la baraja no se puede jugar o no cabe en una instantánea
+        public Reglas(int bonoFlip7, int[] composicionPorCodigo) {
+            if (composicionPorCodigo.length != Carta.MAX_CODIGO + 1) {
+                throw new IllegalArgumentException("La composición va por código, del 0 al " + Carta.MAX_CODIGO);
+            }
+            int total = 0;
+            for (int codigo = 0; codigo < composicionPorCodigo.length; codigo++) {
+                int cuenta = composicionPorCodigo[codigo];
+                if (cuenta < 0 || (codigo == 0 && cuenta != 0)) {
+                    throw new IllegalArgumentException("Cantidad no válida para el código " + codigo + ": " + cuenta);
+                }
+                total += cuenta;
+            }
+            if (total == 0 || total > 255) { // La instantánea guarda el tamaño del mazo en un byte
+                throw new IllegalArgumentException("La baraja debe tener de 1 a 255 cartas, tiene " + total);
+            }
+            this.bonoFlip7 = bonoFlip7;
+            this.composicion = composicionPorCodigo.clone();
+        }
+
+        public static Reglas estandar() {
+            return new Reglas(CalculadorPuntuacion.BONO_FLIP7, Baraja.composicionPorCodigo());
+        }
+
+        public int[] composicionPorCodigo() {
+            return composicion.clone();
+        }
+    }
+
+    private final List<String> asientos = new ArrayList<>(); // Ids en orden de asiento
+    private final Map<String, Jugador> jugadores = new LinkedHashMap<>();
+    private final Baraja baraja;
+    private final Reglas reglas;
+    private final CalculadorPuntuacion calculadora;
+    private final ManejadorAcciones manejadorAcciones = new ManejadorAcciones();
+
+    private final Tiempos tiempos;
+    private int puntosParaGanar = PUNTOS_PARA_GANAR;
+    private final Programador programador;
+    private final OyenteJuego oyente;
+
+    private volatile boolean juegoIniciado = false; // Se consulta desde fuera del actor (estado de la sala)
+    private boolean esperandoRonda = false; // Entre rondas: juegoIniciado en false pero la partida sigue
+    private int indiceTurnoActual = 0;
+    private boolean esperandoObjetivo = false;
+    private Carta accionPendiente = null;
+
+    private final List<Carta> accionesAcumuladasFlipThree = new ArrayList<>();
+    private int flipThreeCartasRestantes = 0;
+    private Jugador flipThreeObjetivo = null;
+    private boolean revelandoFlipThree = false; // Entre carta y carta nadie más puede jugar
+
+    // Quién debe elegir objetivo y entre quiénes (para elegir por él si se le acaba el tiempo)
+    private String idConAccion = null;
+    private List<String> objetivosPendientes = new ArrayList<>();
+    private int numeroAccion = 0; // Cambia con cada menú de objetivo que se muestra
+
+    // Lo único programado a la vez: la siguiente carta del Flip Three, la espera o un límite.
+    // La generación descarta un disparo que ya estaba en camino cuando se canceló
+    private Future<?> tareaProgramada = null;
+    private int generacionTarea = 0;
+
+    // Todo lo aleatorio de la partida (barajas y quién empieza) sale de aquí. Con la
+    // semilla y los comandos en orden la partida se puede repetir igual
+    private final long semilla;
+    private final Azar azar;
+
+    // Fases de la partida en una instantánea
+    private static final int DETENIDA = 0;
+    private static final int EN_RONDA = 1;
+    private static final int ENTRE_RONDAS = 2;
+
+    public MotorFlip7(long semilla, Tiempos tiempos, Programador programador, OyenteJuego oyente) {
+        this(semilla, tiempos, Reglas.estandar(), programador, oyente);
+    }
+
+    public MotorFlip7(long semilla, Tiempos tiempos, Reglas reglas, Programador programador, OyenteJuego oyente) {
+        this.semilla = semilla;
+        this.azar = new Azar(semilla);
+        this.reglas = reglas;
+        this.baraja = new Baraja(azar, reglas.composicion);
+        this.calculadora = new CalculadorPuntuacion(reglas.bonoFlip7);
+        this.tiempos = tiempos;
+        this.programador = programador;
+        this.oyente = oyente;
+    }
+
+    // --- Preparación ---
+
+    public void agregarJugador(String id, String nombreUsuario) {
+        if (jugadores.containsKey(id)) return;
+        asientos.add(id);
+        jugadores.put(id, new Jugador(nombreUsuario));
+    }
+
+    // Para reanudar una partida guardada: las cartas restauradas salen del mazo para no repetirse
+    public void restaurarJugador(String id, int puntos, boolean secondChance, boolean bust,
+                                 boolean planto, boolean congelado, List<Carta> mano) {
+        Jugador j = jugadores.get(id);
+        if (j == null) return;
+        j.sumarPuntos(puntos);
+        j.setTieneSecondChance(secondChance);
+        j.setTieneBUST(bust);
+        j.setSePlanto(planto);
+        j.setEstaCongelado(congelado);
+        if (secondChance) baraja.retirar(Carta.desdeCodigo(Carta.SECOND_CHANCE));
+        for (Carta c : mano) {
+            j.agregarCarta(c);
+            baraja.retirar(c);
+        }
+    }
+
+    // Baraja nueva y jugadores en cero; si se va a restaurar una partida, llamar antes de restaurarJugador
+    public void prepararMesa() {
+        cancelarProgramada();
+        esperandoRonda = false;
+        baraja.reiniciarBaraja();
+        // Lo que haya quedado de la partida anterior ya está dentro de la baraja nueva
+        accionesAcumuladasFlipThree.clear();
+        flipThreeCartasRestantes = 0;
+        flipThreeObjetivo = null;
+        revelandoFlipThree = false;
+        esperandoObjetivo = false;
+        accionPendiente = null;
+        idConAccion = null;
+        for (Jugador j : jugadores.values()) {
+            j.reiniciarParaPartidaNueva();
+        }
+    }
+
+    public void iniciarPartida() {
+        if (juegoIniciado) return;
+        prepararMesa();
+        if (!asientos.isEmpty()) indiceTurnoActual = azar.nextInt(asientos.size());
+        arrancar();
+    }
+
+    // Sigue una partida restaurada desde el turno guardado
+    public void reanudarPartida(int turno) {
+        if (juegoIniciado) return;
+        indiceTurnoActual = turno;
+        arrancar();
+    }
+
+    private void arrancar() {
+        juegoIniciado = true;
+        esperandoObjetivo = false;
+        oyente.partidaIniciada();
+        anunciarTurno();
+        assert verificarInvariantes();
+    }
+
+    // Regla de la casa: a cuántos puntos termina la partida (200 por defecto)
+    public void fijarPuntosParaGanar(int puntos) {
+        this.puntosParaGanar = puntos;
+    }
+
+    // La partida se cierra sin resultado (se guardó, o la sala se deshizo)
+    public void terminar() {
+        cancelarProgramada();
+        juegoIniciado = false;
+        esperandoRonda = false;
+    }
+
+    // --- Comandos de los jugadores ---
+
+    // Cualquier mensaje del jugador cuenta como presencia. Devuelve si cambió algo
+    // (estaba AFK o tenía tiempos vencidos)
+    public boolean marcarPresente(String id) {
+        Jugador j = jugadores.get(id);
+        if (j == null) return false;
+        if (j.estaAfk()) oyente.volvioDeAfk(id);
+        return j.marcarPresente();
+    }
+
+    // Si no puede jugar ahora, avisa por qué con comandoRechazado
+    public boolean puedeActuar(String id) {
+        if (!juegoIniciado || !jugadores.containsKey(id)) return false;
+        if (revelandoFlipThree) {
+            oyente.comandoRechazado(id, ESPERA_FLIP_THREE);
+            return false;
+        }
+        // Quien está sufriendo un Flip Three puede actuar fuera de su turno (para elegir objetivo)
+        if (!esSuTurno(id) && !esVictimaFlipThree(id)) {
+            oyente.comandoRechazado(id, "No es tu turno. Espera a "
+                    + jugadores.get(asientos.get(indiceTurnoActual)).obtenerNombreUsuario());
+            return false;
+        }
+        return true;
+    }
+
+    public void jalar(String id) {
+        if (!puedeActuar(id)) return;
+        if (esperandoObjetivo) {
+            oyente.comandoRechazado(id, ACCION_PENDIENTE);
+            return;
+        }
+        if (!esSuTurno(id)) {
+            oyente.comandoRechazado(id, "Estás en un Flip Three. Solo puedes usar /usar cuando se te pida.");
+            return;
+        }
+        accionJalar(id, jugadores.get(id));
+        assert verificarInvariantes();
+    }
+
+    public void parar(String id) {
+        if (!puedeActuar(id)) return;
+        if (esperandoObjetivo) {
+            oyente.comandoRechazado(id, ACCION_PENDIENTE);
+            return;
+        }
+        if (!esSuTurno(id)) return;
+        accionParar(id, jugadores.get(id));
+        assert verificarInvariantes();
+    }
+
+    // Aplica la carta de acción pendiente sobre 'idObjetivo' (null si no se encontró)
+    public void usar(String id, String idObjetivo) {
+        if (!puedeActuar(id)) return;
+        if (!esperandoObjetivo) {
+            oyente.comandoRechazado(id, "No tienes ninguna carta de ACCION pendiente.");
+            return;
+        }
+        ejecutarAccionPendiente(id, idObjetivo);
+        assert verificarInvariantes();
+    }
+
+    private boolean esSuTurno(String id) {
+        return !asientos.isEmpty() && asientos.get(indiceTurnoActual).equals(id);
+    }
+
+    private boolean esVictimaFlipThree(String id) {
+        return flipThreeObjetivo != null && flipThreeObjetivo == jugadores.get(id);
+    }
+
+    // --- Mazo y descarte ---
+
+    // Con el mazo vacío se revuelve el descarte; null si tampoco queda descarte
+    private Carta jalarDelMazo() {
+        if (baraja.cartasRestantes() == 0) {
+            if (!baraja.rebarajearDescarte()) return null;
+            oyente.descarteRebarajeado();
+        }
+        return baraja.jalarCarta();
+    }
+
+    // Pone la carta en la mano; lo que sale del juego (la mano entera en un BUST, o la
+    // repetida y la Second Chance que la salvó) va al descarte
+    private boolean jugarCarta(Jugador jugador, Carta carta) {
+        if (jugador.tieneBUST() || jugador.sePlanto()) {
+            baraja.descartar(carta);
+            return false;
+        }
+        if (carta.obtenerTipo() == TipoCarta.NUMERICA && jugador.verificarSiCausaBUST(carta)) {
+            if (jugador.tieneSecondChance()) {
+                baraja.descartar(Carta.desdeCodigo(Carta.SECOND_CHANCE));
+            } else {
+                for (Carta c : jugador.obtenerCartasEnMano()) baraja.descartar(c);
+            }
+            baraja.descartar(carta);
+        }
+        return jugador.intentarJalarCarta(carta);
+    }
+
+    // Fin de ronda o salida: la mano y la Second Chance guardada vuelven al descarte
+    private void descartarTodoDe(Jugador jugador) {
+        for (Carta c : jugador.obtenerCartasEnMano()) baraja.descartar(c);
+        if (jugador.tieneSecondChance()) baraja.descartar(Carta.desdeCodigo(Carta.SECOND_CHANCE));
+    }
+
+    private void descartarAcumuladasFlipThree() {
+        for (Carta c : accionesAcumuladasFlipThree) baraja.descartar(c);
+        accionesAcumuladasFlipThree.clear();
+    }
+
+    /**
+     * Cuenta de cartas: mazo + descarte + manos + Second Chance guardadas + acción por
+     * elegir + acciones acumuladas del Flip Three deben dar exactamente una baraja.
+     * Se revisa con assert al final de cada paso (activar con java -ea) y, paso a paso
+     * en partidas simuladas, en MotorFlip7Test.
+     */
+    boolean verificarInvariantes() {
+        int[] cuentas = new int[Carta.MAX_CODIGO + 1];
+        baraja.contarCartas(cuentas);
+        for (Jugador j : jugadores.values()) {
+            for (Carta c : j.obtenerCartasEnMano()) cuentas[c.obtenerCodigo()]++;
+            if (j.tieneSecondChance()) cuentas[Carta.SECOND_CHANCE]++;
+        }
+        if (esperandoObjetivo && accionPendiente != null) cuentas[accionPendiente.obtenerCodigo()]++;
+        for (Carta c : accionesAcumuladasFlipThree) cuentas[c.obtenerCodigo()]++;
+
+        int[] esperado = reglas.composicion;
+        for (int codigo = 1; codigo <= Carta.MAX_CODIGO; codigo++) {
+            if (cuentas[codigo] != esperado[codigo]) {
+                System.err.println("Cuenta de cartas rota: " + Carta.desdeCodigo(codigo) + " hay "
+                        + cuentas[codigo] + ", deberían ser " + esperado[codigo]);
+                return false;
+            }
+        }
+        if (indiceTurnoActual < 0 || (!asientos.isEmpty() && indiceTurnoActual >= asientos.size())) {
+            System.err.println("Índice de turno fuera de la mesa: " + indiceTurnoActual);
+            return false;
+        }
+        return true;
+    }
+
+    // --- Jugadas ---
+
+    private void accionJalar(String id, Jugador jugador) {
+        Carta carta = jalarDelMazo();
+
+        if (carta == null) {
+            oyente.mazoAgotado();
+            finalizarRonda();
+            return;
+        }
+
+        oyente.cartaJalada(id, carta);
+
+        if (carta.obtenerTipo() == TipoCarta.ACCION) {
+            procesarCartaAccion(id, jugador, carta);
+            return;
+        }
+
+        boolean teniaVida = jugador.tieneSecondChance();
+        boolean sobrevivio = jugarCarta(jugador, carta);
+
+        if (sobrevivio && teniaVida && !jugador.tieneSecondChance()) {
+            oyente.secondChanceUsada(id, carta);
+        }
+
+        if (!sobrevivio) {
+            oyente.bust(id);
+            siguienteTurno();
+        } else {
+            if (calculadora.verificarFlip7(jugador)) {
+                oyente.flip7(id, false);
+                finalizarRonda();
+                return;
+            }
+            oyente.manoCambiada(id);
+            siguienteTurno();
+        }
+    }
+
+    private void procesarCartaAccion(String id, Jugador jugador, Carta carta) {
+        int codigo = carta.obtenerCodigo();
+        List<String> objetivosValidos = new ArrayList<>();
+
+        if (codigo == Carta.SECOND_CHANCE && jugador.tieneSecondChance()) {
+            for (String otro : asientos) {
+                if (otro.equals(id)) continue;
+                Jugador j = jugadores.get(otro);
+                if (!j.tieneBUST() && !j.sePlanto() && !j.tieneSecondChance()) {
+                    objetivosValidos.add(otro);
+                }
+            }
+        }
+        else if (codigo == Carta.FREEZE || codigo == Carta.FLIP_THREE) {
+            for (String otro : asientos) {
+                Jugador j = jugadores.get(otro);
+                if (!j.sePlanto() && !j.tieneBUST()) objetivosValidos.add(otro);
+            }
+        }
+        else if (codigo == Carta.SECOND_CHANCE) {
+            jugador.setTieneSecondChance(true);
+            oyente.secondChanceObtenida(id);
+            siguienteTurno();
+            return;
+        }
+
+        if (!objetivosValidos.isEmpty()) {
+            this.accionPendiente = carta;
+            this.esperandoObjetivo = true;
+            this.idConAccion = id;
+            this.objetivosPendientes = objetivosValidos;
+            pedirObjetivo();
+        } else {
+            // Si no hay objetivos, se descarta y pasa turno
+            oyente.accionSinObjetivo(id, carta);
+            baraja.descartar(carta);
+            siguienteTurno();
+        }
+    }
+
+    // Muestra el menú de objetivo de la acción pendiente y programa su límite
+    private void pedirObjetivo() {
+        String id = idConAccion;
+        int accion = ++numeroAccion;
+        oyente.eligeObjetivo(id, accionPendiente, Collections.unmodifiableList(objetivosPendientes));
+        if (tiempos.limiteObjetivoMs > 0) {
+            programar(tiempos.limiteObjetivoMs, () -> expirarObjetivo(id, accion));
+        }
+    }
+
+    // Por qué la acción pendiente no puede ir a ese objetivo; null si puede
+    private String motivoRechazo(Jugador objetivo) {
+        if (objetivo == null) return "Jugador no encontrado.";
+        if (objetivo.sePlanto() || objetivo.tieneBUST()) return "El jugador no está activo.";
+        if (accionPendiente.obtenerCodigo() == Carta.SECOND_CHANCE && objetivo.tieneSecondChance()) {
+            return "Ya tiene Second Chance.";
+        }
+        return null;
+    }
+
+    private void ejecutarAccionPendiente(String idAtacante, String idObjetivo) {
+        Jugador objetivo = idObjetivo != null ? jugadores.get(idObjetivo) : null;
+        String rechazo = motivoRechazo(objetivo);
+        if (rechazo != null) {
+            oyente.accionFallida(idAtacante, rechazo);
+            return;
+        }
+
+        int codigo = accionPendiente.obtenerCodigo();
+
+        if (codigo == Carta.FLIP_THREE) {
+            baraja.descartar(accionPendiente);
+            this.flipThreeCartasRestantes = 3;
+            this.flipThreeObjetivo = objetivo;
+            descartarAcumuladasFlipThree();
+            this.esperandoObjetivo = false;
+            this.accionPendiente = null;
+            this.idConAccion = null;
+            this.revelandoFlipThree = true;
+            revelarCartaFlipThree(idObjetivo, objetivo);
+            return;
+        }
+
+        // Freeze o Second Chance (la Second Chance pasa al objetivo; el Freeze se descarta)
+        Carta accion = accionPendiente;
+        if (codigo == Carta.SECOND_CHANCE) manejadorAcciones.transferirSecondChance(objetivo);
+        else if (codigo == Carta.FREEZE) {
+            manejadorAcciones.aplicarFreeze(objetivo);
+            baraja.descartar(accion);
+        }
+
+        this.esperandoObjetivo = false;
+        this.accionPendiente = null;
+        this.idConAccion = null;
+        oyente.accionEjecutada(accion, idObjetivo);
+
+        if (this.flipThreeObjetivo != null) {
+            procesarSiguienteAccionAcumulada();
+        } else {
+            siguienteTurno();
+        }
+    }
+
+    // Una carta por paso; la pausa hasta la siguiente se programa en vez de dormir el hilo
+    private void revelarCartaFlipThree(String idObjetivo, Jugador objetivo) {
+        if (this.flipThreeCartasRestantes > 0 && !objetivo.tieneBUST()) {
+
+            if (calculadora.verificarFlip7(objetivo)) {
+                oyente.flip7(idObjetivo, true);
+                this.revelandoFlipThree = false;
+                finalizarRonda();
+                return;
+            }
+
+            oyente.flipThreeJalando(idObjetivo, this.flipThreeCartasRestantes);
+
+            Carta carta = jalarDelMazo();
+            if (carta != null) {
+                this.flipThreeCartasRestantes--;
+
+                boolean sobrevivio = true;
+                if (carta.obtenerTipo() == TipoCarta.ACCION) {
+                    if (carta.obtenerCodigo() == Carta.SECOND_CHANCE && !objetivo.tieneSecondChance()) {
+                        objetivo.setTieneSecondChance(true);
+                        oyente.secondChanceObtenida(idObjetivo);
+                    } else {
+                        oyente.accionGuardadaFlipThree(carta);
+                        accionesAcumuladasFlipThree.add(carta);
+                    }
+                } else {
+                    oyente.cartaFlipThree(carta);
+                    sobrevivio = jugarCarta(objetivo, carta);
+                    if (!sobrevivio) {
+                        oyente.bust(idObjetivo);
+                        descartarAcumuladasFlipThree();
+                    }
+                }
+
+                if (sobrevivio) {
+                    programar(tiempos.pausaFlipThreeMs, () -> revelarCartaFlipThree(idObjetivo, objetivo));
+                    return;
+                }
+            }
+        }
+        terminarFlipThree(objetivo);
+    }
+
+    private void terminarFlipThree(Jugador objetivo) {
+        this.revelandoFlipThree = false;
+
+        // La tercera carta también puede completar el Flip 7
+        if (!objetivo.tieneBUST() && calculadora.verificarFlip7(objetivo)) {
+            oyente.flip7(idDe(objetivo), true);
+            finalizarRonda();
+            return;
+        }
+
+        if (objetivo.tieneBUST()) {
+            this.flipThreeCartasRestantes = 0;
+            this.flipThreeObjetivo = null;
+            siguienteTurno();
+        } else {
+            oyente.flipThreeTerminado(!accionesAcumuladasFlipThree.isEmpty());
+            procesarSiguienteAccionAcumulada();
+        }
+    }
+
+    private void procesarSiguienteAccionAcumulada() {
+        if (accionesAcumuladasFlipThree.isEmpty()) {
+            this.flipThreeObjetivo = null;
+            siguienteTurno();
+            return;
+        }
+
+        // El dueño de las acciones acumuladas es quien recibió el Flip Three;
+        // las juega como si las acabara de sacar
+        Carta cartaAccion = accionesAcumuladasFlipThree.remove(0);
+        procesarCartaAccion(idDe(flipThreeObjetivo), flipThreeObjetivo, cartaAccion);
+    }
+
+    private String idDe(Jugador jugador) {
+        for (Map.Entry<String, Jugador> e : jugadores.entrySet()) {
+            if (e.getValue() == jugador) return e.getKey();
+        }
+        return null;
+    }
+
+    private void accionParar(String id, Jugador jugador) {
+        jugador.plantarse();
+        oyente.plantado(id, calculadora.calcularPuntuacion(jugador));
+        siguienteTurno();
+    }
+
+    // --- Turnos y rondas ---
+
+    private void siguienteTurno() {
+        if (verificarFinDeRonda()) {
+            finalizarRonda();
+            return;
+        }
+        int intentos = 0;
+        do {
+            indiceTurnoActual = (indiceTurnoActual + 1) % asientos.size();
+            Jugador jProximo = jugadores.get(asientos.get(indiceTurnoActual));
+
+            if (!jProximo.tieneBUST() && !jProximo.sePlanto()) {
+                anunciarTurno();
+                return;
+            }
+            intentos++;
+        } while (intentos < asientos.size());
+        finalizarRonda();
+    }
+
+    private boolean verificarFinDeRonda() {
+        for (Jugador j : jugadores.values()) {
+            if (!j.tieneBUST() && !j.sePlanto()) return false;
+        }
+        return true;
+    }
+
+    private void anunciarTurno() {
+        if (asientos.isEmpty()) return;
+        if (indiceTurnoActual >= asientos.size()) indiceTurnoActual = 0;
+
+        String actual = asientos.get(indiceTurnoActual);
+        Jugador jActual = jugadores.get(actual);
+
+        if (jActual.estaAfk()) {
+            oyente.turnoSaltadoAfk(actual);
+            accionParar(actual, jActual);
+            return;
+        }
+
+        oyente.turno(actual);
+        if (tiempos.limiteTurnoMs > 0) {
+            programar(tiempos.limiteTurnoMs, () -> expirarTurno(actual));
+        }
+    }
+
+    private void finalizarRonda() {
+        cancelarProgramada(); // Un límite de turno pendiente ya no aplica
+        String ganadorDelJuego = null;
+        int maxPuntuacionGlobal = -1;
+        List<Jugador> enMesa = new ArrayList<>(asientos.size());
+        int[] puntosPorAsiento = new int[asientos.size()];
+
+        for (int i = 0; i < asientos.size(); i++) {
+            Jugador j = jugadores.get(asientos.get(i));
+            int puntosRonda = j.tieneBUST() ? 0 : calculadora.calcularPuntuacion(j);
+            j.sumarPuntos(puntosRonda);
+            enMesa.add(j);
+            puntosPorAsiento[i] = puntosRonda;
+
+            if (j.obtenerPuntuacionTotal() >= puntosParaGanar && j.obtenerPuntuacionTotal() > maxPuntuacionGlobal) {
+                maxPuntuacionGlobal = j.obtenerPuntuacionTotal();
+                ganadorDelJuego = asientos.get(i);
+            }
+        }
+
+        oyente.rondaTerminada(enMesa, puntosPorAsiento);
+        juegoIniciado = false;
+
+        if (ganadorDelJuego != null) {
+            oyente.juegoTerminado(ganadorDelJuego, maxPuntuacionGlobal);
+        } else {
+            esperarNuevaRonda();
+        }
+    }
+
+    private void esperarNuevaRonda() {
+        // Antes de programar: un Programador que corre al momento ya empieza la ronda
+        esperandoRonda = true;
+        oyente.esperandoNuevaRonda(tiempos.esperaRondaMs);
+        programar(tiempos.esperaRondaMs, () -> {
+            oyente.esperaTerminada();
+            iniciarSiguienteRonda();
+        });
+    }
+
+    private void iniciarSiguienteRonda() {
+        esperandoRonda = false;
+        if (asientos.isEmpty()) {
+            juegoIniciado = false;
+            return;
+        }
+
+        // Una mesa donde nadie juega no debe seguir repartiendo rondas para siempre
+        boolean todosAfk = true;
+        for (Jugador j : jugadores.values()) {
+            if (!j.estaAfk()) { todosAfk = false; break; }
+        }
+        if (todosAfk) {
+            oyente.todosAfk();
+            juegoIniciado = false;
+            return;
+        }
+
+        for (Jugador j : jugadores.values()) {
+            descartarTodoDe(j);
+            j.reiniciarParaRondaNueva();
+        }
+        // Un Flip Three cortado por Flip 7 no sigue en la ronda nueva
+        descartarAcumuladasFlipThree();
+        flipThreeCartasRestantes = 0;
+        flipThreeObjetivo = null;
+
+        juegoIniciado = true;
+        esperandoObjetivo = false;
+        oyente.rondaIniciada();
+        indiceTurnoActual = azar.nextInt(asientos.size());
+        anunciarTurno();
+    }
+
+    // --- Pasos programados ---
+
+    private void programar(long retrasoMs, Runnable paso) {
+        cancelarProgramada();
+        int generacion = generacionTarea;
+        Future<?> f = programador.programar(retrasoMs, () -> {
+            if (generacion != generacionTarea) return; // Se canceló mientras esperaba
+            tareaProgramada = null;
+            oyente.pasoProgramado();
+            paso.run();
+            assert verificarInvariantes();
+        });
+        // Un Programador que corre el paso al momento ya pudo haber programado otro
+        if (generacion == generacionTarea) tareaProgramada = f;
+    }
+
+    private void cancelarProgramada() {
+        generacionTarea++;
+        if (tareaProgramada != null) {
+            tareaProgramada.cancel(false);
+            tareaProgramada = null;
+        }
+    }
+
+    // --- Límites de tiempo ---
+
+    private void expirarTurno(String id) {
+        if (!juegoIniciado || esperandoObjetivo || revelandoFlipThree || asientos.isEmpty()) return;
+        if (!asientos.get(indiceTurnoActual).equals(id)) return; // El turno ya cambió
+
+        Jugador jugador = jugadores.get(id);
+        oyente.tiempoAgotado(id);
+        registrarExpiracion(id, jugador);
+        accionParar(id, jugador);
+    }
+
+    private void expirarObjetivo(String id, int accion) {
+        if (!juegoIniciado || !esperandoObjetivo || accion != numeroAccion) return;
+
+        oyente.tiempoObjetivoAgotado(id);
+        Jugador jugador = jugadores.get(id);
+        if (jugador != null) registrarExpiracion(id, jugador);
+
+        // Primero los demás jugadores: nadie elegiría congelarse a sí mismo. Solo se aplica
+        // a uno que sirva, para no mandarle "Elige otro" a quien ya no está eligiendo
+        List<String> candidatos = new ArrayList<>(objetivosPendientes);
+        candidatos.sort(Comparator.comparing((String otro) -> otro.equals(id)));
+        for (String otro : candidatos) {
+            if (motivoRechazo(jugadores.get(otro)) != null) continue;
+            ejecutarAccionPendiente(id, otro);
+            return;
+        }
+
+        // Ningún objetivo sirvió: la carta se descarta
+        oyente.accionDescartada(accionPendiente);
+        baraja.descartar(accionPendiente);
+        this.esperandoObjetivo = false;
+        this.accionPendiente = null;
+        this.idConAccion = null;
+        if (this.flipThreeObjetivo != null) {
+            procesarSiguienteAccionAcumulada();
+        } else {
+            siguienteTurno();
+        }
+    }
+
+    private void registrarExpiracion(String id, Jugador jugador) {
+        if (jugador.registrarExpiracion() >= tiempos.expiracionesParaAfk && !jugador.estaAfk()) {
+            jugador.setAfk(true);
+            oyente.marcadoAfk(id);
+        }
+    }
+
+    // --- Salidas ---
+
+    public void removerJugador(String id) {
+        removerJugadorInterno(id);
+        assert verificarInvariantes();
+    }
+
+    private void removerJugadorInterno(String id) {
+        if (!juegoIniciado) {
+            asientos.remove(id);
+            Jugador seVa = jugadores.remove(id);
+            if (seVa != null) descartarTodoDe(seVa);
+            if (asientos.isEmpty()) {
+                cancelarProgramada(); // Nadie espera ya la siguiente ronda
+                esperandoRonda = false;
+            }
+            if (indiceTurnoActual >= asientos.size()) indiceTurnoActual = 0;
+            oyente.jugadorSalio(id, false);
+            return;
+        }
+
+        oyente.jugadorSalio(id, true);
+        int indiceSeVa = asientos.indexOf(id);
+        if (indiceSeVa == -1) return;
+
+        boolean eraSuTurno = (indiceSeVa == indiceTurnoActual);
+        asientos.remove(indiceSeVa);
+        Jugador seVa = jugadores.remove(id);
+        if (seVa != null) descartarTodoDe(seVa);
+
+        // Si se va quien recibía el Flip Three, sus cartas pendientes ya no salen
+        boolean eraObjetivoFlip3 = (seVa != null && seVa == flipThreeObjetivo);
+        // Si tenía que elegir objetivo, la carta se pierde con él
+        if (id.equals(idConAccion) && esperandoObjetivo) {
+            cancelarProgramada();
+            baraja.descartar(accionPendiente);
+            esperandoObjetivo = false;
+            accionPendiente = null;
+            idConAccion = null;
+        }
+
+        if (eraObjetivoFlip3) {
+            cancelarProgramada();
+            revelandoFlipThree = false;
+            flipThreeCartasRestantes = 0;
+            flipThreeObjetivo = null;
+            descartarAcumuladasFlipThree();
+        }
+
+        if (asientos.size() <= 1) {
+            cancelarProgramada();
+            juegoIniciado = false;
+            if (!asientos.isEmpty()) oyente.victoriaPorAbandono(asientos.get(0));
+            return;
+        }
+
+        if (indiceSeVa < indiceTurnoActual) indiceTurnoActual--;
+        if (indiceTurnoActual >= asientos.size()) indiceTurnoActual = 0;
+
+        if (eraSuTurno && revelandoFlipThree) {
+            // Su Flip Three sigue saliendo; al terminar, siguienteTurno avanza desde el asiento anterior
+            indiceTurnoActual = (indiceTurnoActual - 1 + asientos.size()) % asientos.size();
+        } else if (eraSuTurno) {
+            oyente.turnoPasaPorSalida();
+            anunciarTurno();
+        } else if (eraObjetivoFlip3) {
+            siguienteTurno();
+        }
+    }
+
+    // --- Instantáneas ---
+
+    /**
+     * Todo el estado de la partida en bytes: el azar, las manos, lo que esté a medias
+     * (acción por elegir, Flip Three) y la baraja en orden. Los jugadores van por número
+     * de asiento; quién es cada uno lo guarda quien llama (InstantaneaPartida).
+     * Lo programado no se guarda: restaurar() lo vuelve a programar completo.
+     */
+    public void escribirEstado(DataOutput salida) throws IOException {
+        salida.writeLong(azar.obtenerEstado());
+        salida.writeInt(puntosParaGanar);
+        salida.writeByte(juegoIniciado ? EN_RONDA : esperandoRonda ? ENTRE_RONDAS : DETENIDA);
+        salida.writeByte(asientos.size());
+        salida.writeByte(indiceTurnoActual);
+
+        for (String id : asientos) {
+            Jugador j = jugadores.get(id);
+            salida.writeInt(j.obtenerPuntuacionTotal());
+            salida.writeByte((j.tieneSecondChance() ? 1 : 0) | (j.tieneBUST() ? 2 : 0) | (j.sePlanto() ? 4 : 0)
+                    | (j.estaCongelado() ? 8 : 0) | (j.estaAfk() ? 16 : 0));
+            salida.writeShort(Math.min(j.obtenerExpiracionesSeguidas(), Short.MAX_VALUE));
+            salida.writeByte(j.obtenerCartasEnMano().size());
+            for (Carta c : j.obtenerCartasEnMano()) salida.writeByte(c.obtenerCodigo());
+        }
+
+        salida.writeBoolean(esperandoObjetivo);
+        if (esperandoObjetivo) {
+            salida.writeByte(accionPendiente.obtenerCodigo());
+            salida.writeByte(asientos.indexOf(idConAccion));
+            salida.writeByte(objetivosPendientes.size());
+            // Un objetivo que ya se fue queda en -1: al elegir por tiempo se saltaría igual
+            for (String id : objetivosPendientes) salida.writeByte(asientos.indexOf(id));
+        }
+
+        salida.writeBoolean(revelandoFlipThree);
+        salida.writeByte(flipThreeCartasRestantes);
+        salida.writeByte(flipThreeObjetivo == null ? -1 : asientos.indexOf(idDe(flipThreeObjetivo)));
+        salida.writeByte(accionesAcumuladasFlipThree.size());
+        for (Carta c : accionesAcumuladasFlipThree) salida.writeByte(c.obtenerCodigo());
+
+        baraja.escribir(salida);
+    }
+
+    /**
+     * Deja la mesa como en escribirEstado(), con estos ids y nombres por asiento (en el
+     * orden guardado), y la pone a andar: anuncia el turno, vuelve a pedir el objetivo,
+     * sigue el Flip Three o la espera entre rondas. Si los datos no cuadran (asientos,
+     * códigos o una cuenta de cartas que no da una baraja) lanza IOException.
+     */
+    public void restaurar(DataInput entrada, List<String> ids, List<String> nombres) throws IOException {
+        cancelarProgramada();
+        juegoIniciado = false;
+        esperandoRonda = false;
+
+        long estadoAzar = entrada.readLong();
+        int puntos = entrada.readInt();
+        int fase = entrada.readUnsignedByte();
+        int n = entrada.readUnsignedByte();
+        if (fase > ENTRE_RONDAS || n != ids.size() || n == 0) {
+            throw new IOException("Instantánea con fase " + fase + " y " + n + " asientos");
+        }
+        asientos.clear();
+        jugadores.clear();
+        for (int i = 0; i < n; i++) agregarJugador(ids.get(i), nombres.get(i));
+        if (asientos.size() != n) throw new IOException("Asientos repetidos en la instantánea");
+        indiceTurnoActual = asiento(entrada, n);
+
+        for (String id : asientos) {
+            Jugador j = jugadores.get(id);
+            j.sumarPuntos(entrada.readInt());
+            int banderas = entrada.readUnsignedByte();
+            j.setTieneSecondChance((banderas & 1) != 0);
+            j.setTieneBUST((banderas & 2) != 0);
+            j.setSePlanto((banderas & 4) != 0);
+            j.setEstaCongelado((banderas & 8) != 0);
+            j.setAfk((banderas & 16) != 0);
+            j.setExpiracionesSeguidas(entrada.readUnsignedShort());
+            for (int k = entrada.readUnsignedByte(); k > 0; k--) {
+                j.agregarCarta(Carta.desdeCodigo(Baraja.leerCodigo(entrada)));
+            }
+        }
+
+        esperandoObjetivo = entrada.readBoolean();
+        accionPendiente = null;
+        idConAccion = null;
+        objetivosPendientes = new ArrayList<>();
+        if (esperandoObjetivo) {
+            accionPendiente = Carta.desdeCodigo(Baraja.leerCodigo(entrada));
+            idConAccion = asientos.get(asiento(entrada, n));
+            for (int k = entrada.readUnsignedByte(); k > 0; k--) {
+                int otro = entrada.readByte();
+                if (otro >= 0 && otro < n) objetivosPendientes.add(asientos.get(otro));
+            }
+        }
+
+        revelandoFlipThree = entrada.readBoolean();
+        flipThreeCartasRestantes = entrada.readUnsignedByte();
+        int objetivo = entrada.readByte();
+        flipThreeObjetivo = objetivo < 0 ? null : jugadores.get(asientos.get(asiento(objetivo, n)));
+        accionesAcumuladasFlipThree.clear();
+        for (int k = entrada.readUnsignedByte(); k > 0; k--) {
+            accionesAcumuladasFlipThree.add(Carta.desdeCodigo(Baraja.leerCodigo(entrada)));
+        }
+        if (revelandoFlipThree && flipThreeObjetivo == null) throw new IOException("Flip Three sin objetivo");
+
+        baraja.leer(entrada);
+        azar.fijarEstado(estadoAzar);
+        puntosParaGanar = puntos;
+        if (!verificarInvariantes()) throw new IOException("La instantánea no da una baraja completa");
+
+        if (fase == DETENIDA) return;
+        juegoIniciado = fase == EN_RONDA;
+        oyente.partidaIniciada();
+        if (fase == ENTRE_RONDAS) {
+            esperarNuevaRonda();
+        } else if (revelandoFlipThree) {
+            String idObjetivo = idDe(flipThreeObjetivo);
+            Jugador jObjetivo = flipThreeObjetivo;
+            programar(tiempos.pausaFlipThreeMs, () -> revelarCartaFlipThree(idObjetivo, jObjetivo));
+        } else if (esperandoObjetivo) {
+            pedirObjetivo();
+        } else {
+            anunciarTurno();
+        }
+        assert verificarInvariantes();
+    }
+
+    private static int asiento(DataInput entrada, int asientos) throws IOException {
+        return asiento(entrada.readUnsignedByte(), asientos);
+    }
+
+    private static int asiento(int numero, int asientos) throws IOException {
+        if (numero >= asientos) throw new IOException("Asiento " + numero + " de " + asientos);
+        return numero;
+    }
+
+    // --- Consultas ---
+
+    public boolean estaJuegoIniciado() { return juegoIniciado; }
+    public boolean estaEsperandoRonda() { return esperandoRonda; }
+    public boolean estaRevelandoFlipThree() { return revelandoFlipThree; }
+    public boolean estaEsperandoObjetivo() { return esperandoObjetivo; }
+    public int obtenerIndiceTurno() { return indiceTurnoActual; }
+    public long obtenerSemilla() { return semilla; }
+
+    // A quién le toca; null si la mesa está vacía
+    public String obtenerIdEnTurno() {
+        return asientos.isEmpty() ? null : asientos.get(indiceTurnoActual);
+    }
+
+    // La carta de acción que espera objetivo, quién la tiene y entre quiénes elige (null si no hay)
+    public Carta obtenerAccionPendiente() { return esperandoObjetivo ? accionPendiente : null; }
+    public String obtenerIdConAccion() { return esperandoObjetivo ? idConAccion : null; }
+    public List<String> obtenerObjetivosPendientes() { return Collections.unmodifiableList(objetivosPendientes); }
+
+    public Jugador obtenerJugador(String id) { return jugadores.get(id); }
+
+    // Cuántas quedan por jalar de cada código (ver Baraja.contarPorJalar)
+    public int[] contarPorJalar() {
+        int[] cuentas = new int[Carta.MAX_CODIGO + 1];
+        baraja.contarPorJalar(cuentas);
+        return cuentas;
+    }
+
+    // null si el id no está en la mesa
+    public ConsejeroFlip7.Consejo consejoPara(String id) {
+        Jugador j = jugadores.get(id);
+        return j == null ? null : ConsejeroFlip7.aconsejar(contarPorJalar(), j, reglas.bonoFlip7);
+    }
+
+    public Reglas obtenerReglas() { return reglas; }
+
+    // Por asiento; solo lectura
+    public Map<String, Jugador> obtenerJugadores() { return Collections.unmodifiableMap(jugadores); }
+    public List<String> obtenerAsientos() { return Collections.unmodifiableList(asientos); }
+}
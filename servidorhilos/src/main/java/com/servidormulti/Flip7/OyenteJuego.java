@@ -0,0 +1,65 @@
+package com.servidormulti.Flip7;
+
+import java.util.List;
+
+/**
+ * Lo que pasa en una partida de MotorFlip7, como eventos. Los jugadores van por su id.
+ *
+ * SesionJuego los convierte en mensajes para los clientes; una simulación puede
+ * ignorarlos todos (por eso todos tienen cuerpo vacío) o contar solo los que le sirven.
+ */
+public interface OyenteJuego {
+
+    // --- Partida y rondas ---
+    default void partidaIniciada() {}
+    default void rondaIniciada() {}
+    default void turno(String id) {}
+    default void rondaTerminada(List<Jugador> enMesa, int[] puntosPorAsiento) {}
+    default void esperandoNuevaRonda(long esperaMs) {}
+    default void esperaTerminada() {}
+    default void juegoTerminado(String idGanador, int puntos) {}
+    default void todosAfk() {}
+
+    // --- Cartas ---
+    default void cartaJalada(String id, Carta carta) {}
+    default void manoCambiada(String id) {}
+    default void bust(String id) {}
+    default void flip7(String id, boolean duranteFlipThree) {}
+    default void plantado(String id, int puntos) {}
+    default void secondChanceObtenida(String id) {}
+    default void secondChanceUsada(String id, Carta carta) {}
+    default void descarteRebarajeado() {}
+    default void mazoAgotado() {}
+
+    // --- Cartas de acción ---
+    default void eligeObjetivo(String id, Carta accion, List<String> idsObjetivo) {}
+    default void accionSinObjetivo(String id, Carta accion) {}
+    default void accionFallida(String id, String motivo) {}
+    default void accionEjecutada(Carta accion, String idObjetivo) {}
+    default void accionDescartada(Carta accion) {}
+
+    // --- Flip Three ---
+    default void flipThreeJalando(String idObjetivo, int restantes) {}
+    default void cartaFlipThree(Carta carta) {}
+    default void accionGuardadaFlipThree(Carta accion) {}
+    default void flipThreeTerminado(boolean hayAccionesGuardadas) {}
+
+    // --- Tiempos y AFK ---
+    default void tiempoAgotado(String id) {}
+    default void tiempoObjetivoAgotado(String id) {}
+    default void marcadoAfk(String id) {}
+    default void volvioDeAfk(String id) {}
+    default void turnoSaltadoAfk(String id) {}
+
+    // --- Comandos y salidas ---
+    default void comandoRechazado(String id, String motivo) {}
+    // Se avisa antes de sacarlo de la mesa si estaba en partida, después si no
+    default void jugadorSalio(String id, boolean enPartida) {}
+    default void victoriaPorAbandono(String idGanador) {}
+    default void turnoPasaPorSalida() {}
+
+    // --- Pasos programados ---
+    // Justo antes de correr un paso que se pidió al Programador (y que no se canceló).
+    // Quien anote la partida lo anota aquí: al repetirla, el paso se corre en el mismo punto
+    default void pasoProgramado() {}
+}
@@ -0,0 +1,17 @@
+package com.servidormulti.Flip7;
+
+import java.util.concurrent.Future;
+
+/**
+ * Cómo el motor deja un paso para después (la siguiente carta del Flip Three, la espera
+ * entre rondas, los límites de turno). En el servidor lo hace el Temporizador y el paso
+ * corre en el actor de la sala; en una simulación puede correr al momento.
+ *
+ * El paso debe correr en el mismo hilo (o actor) que el resto de llamadas al motor.
+ */
+@FunctionalInterface
+public interface Programador {
+
+    // El futuro devuelto sirve para cancelarlo
+    Future<?> programar(long retrasoMs, Runnable paso);
+}
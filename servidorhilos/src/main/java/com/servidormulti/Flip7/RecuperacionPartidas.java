@@ -0,0 +1,116 @@
+package com.servidormulti.Flip7;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.servidormulti.Bitacora;
+import com.servidormulti.ConfiguracionServidor;
+import com.servidormulti.Metricas;
+import com.servidormulti.RegistroSalas;
+import com.servidormulti.Sala;
+import com.servidormulti.Temporizador;
+
+/**
+ * Al arrancar: abre la Bitacora y vuelve a armar las partidas que quedaron a medias
+ * (las mesas cuyo último registro no es FIN). Cada una queda en su sala, suspendida,
+ * hasta que alguno de sus jugadores entre; si nadie vuelve a tiempo se cierra.
+ *
+ * La bitácora se recorre dos veces en su lugar: la primera solo para saber qué mesas
+ * terminaron, la segunda reproduce las demás registro por registro.
+ */
+public final class RecuperacionPartidas {
+
+    private RecuperacionPartidas() {}
+
+    // Lo que se sabe de una mesa mientras se recorre la bitácora
+    private static final class Mesa {
+        boolean terminada;
+        boolean descartada;
+        SesionJuego sesion;
+        Sala sala;
+    }
+
+    public static void iniciar(RegistroSalas registroSalas) {
+        String directorio = ConfiguracionServidor.directorioBitacora();
+        if (directorio.isBlank()) {
+            System.out.println("Bitácora desactivada: las partidas en curso solo vuelven desde su último respaldo.");
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            Bitacora.iniciar(Path.of(directorio),
+                    ConfiguracionServidor.segmentoBitacoraMB() * 1024 * 1024,
+                    ConfiguracionServidor.ventanaBitacoraMs());
+            recuperar(registroSalas);
+        } catch (IOException e) {
+            System.err.println("No se pudo leer la bitácora en '" + directorio + "': " + e.getMessage());
+            return;
+        }
+        long total = System.nanoTime() - inicio;
+        Metricas.sumar("bitacora.recuperacionMicros", total / 1000);
+        System.out.printf("Bitácora recuperada en %.1f ms.%n", total / 1e6);
+        Bitacora.compactar(); // Lo de las mesas que no se reconstruyeron ya sobra
+    }
+
+    static void recuperar(RegistroSalas registroSalas) throws IOException {
+        Map<Long, Mesa> mesas = new HashMap<>();
+        Bitacora.leer((mesa, datos) -> {
+            Mesa m = mesas.computeIfAbsent(mesa, k -> new Mesa());
+            m.terminada = BitacoraMesa.tipo(datos) == BitacoraMesa.FIN;
+        });
+
+        Bitacora.leer((mesa, datos) -> {
+            Mesa m = mesas.get(mesa);
+            if (m.terminada || m.descartada) return;
+            if (m.sesion == null) {
+                if (BitacoraMesa.tipo(datos) != BitacoraMesa.INICIO) {
+                    m.descartada = true; // Su inicio se perdió
+                    return;
+                }
+                String nombreSala = BitacoraMesa.salaDe(datos);
+                registroSalas.asegurarSalaExiste(nombreSala);
+                m.sala = registroSalas.obtener(nombreSala);
+                m.sesion = SesionJuego.reconstruir(mesa, datos, m.sala::ejecutar);
+            } else if (!m.sesion.reproducir(datos)) {
+                System.err.println("Bitácora: la mesa " + mesa + " no cuadra con el motor. Se descarta.");
+                m.descartada = true;
+            }
+        });
+
+        int reconstruidas = 0, terminadas = 0, descartadas = 0;
+        // En orden de mesa: si dos quedaron en la misma sala, la más nueva se queda
+        for (Mesa m : new TreeMap<>(mesas).values()) {
+            if (m.terminada) {
+                terminadas++;
+                continue;
+            }
+            if (m.descartada || m.sesion == null || !m.sesion.terminarReconstruccion()) {
+                descartadas++;
+                continue;
+            }
+            instalar(m.sala, m.sesion);
+            reconstruidas++;
+        }
+        Metricas.sumar("bitacora.partidasReconstruidas", reconstruidas);
+        System.out.println("Bitácora: " + reconstruidas + " partidas reconstruidas, " + terminadas
+                + " terminadas, " + descartadas + " descartadas.");
+    }
+
+    // Pone en su sala una partida suspendida; si nadie vuelve a tiempo se cierra
+    static void instalar(Sala sala, SesionJuego sesion) {
+        SesionJuego anterior = sala.getPartida();
+        if (anterior != null) anterior.cerrar();
+        sala.setPartida(sesion);
+
+        Temporizador.programar(ConfiguracionServidor.esperaRegresoMs(), sala::ejecutar, () -> {
+            if (sesion.descartarSiNadieVolvio() && sala.getPartida() == sesion) {
+                sala.setPartida(null);
+                System.out.println("Nadie volvió a la partida reconstruida de '" + sala.getNombre() + "'. Se cierra.");
+            }
+        });
+    }
+}
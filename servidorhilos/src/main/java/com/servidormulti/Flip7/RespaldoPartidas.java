@@ -0,0 +1,246 @@
+package com.servidormulti.Flip7;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.servidormulti.ConexionDB;
+import com.servidormulti.ConfiguracionServidor;
+import com.servidormulti.GrupoDB;
+import com.servidormulti.Metricas;
+import com.servidormulti.RegistroSalas;
+import com.servidormulti.Sala;
+import com.servidormulti.Temporizador;
+
+/**
+ * Respaldo automático de las partidas en curso en partidas_activas (una fila por sala,
+ * con su InstantaneaPartida). Corre cada N segundos y al terminar cada ronda; al
+ * arrancar, las partidas respaldadas que la bitácora no reconstruyó vuelven a su sala,
+ * suspendidas hasta que entren sus jugadores. Sirve también sin bitácora.
+ *
+ * No frena a ninguna mesa: la instantánea se toma en el actor de cada sala (una tarea
+ * más en su cola) y solo si la partida cambió desde el último respaldo. Lo de todas las
+ * mesas va al escritor de BD en una sola operación, que es una sola transacción; las
+ * partidas que terminaron se borran en esa misma.
+ */
+public final class RespaldoPartidas {
+
+    private static final long ESPERA_MAX_MESAS_MS = 10_000; // Una sala que no contesta no traba los respaldos
+
+    private static volatile RegistroSalas registro;
+    private static volatile long intervaloMs; // 0 = sin respaldo periódico
+
+    // Un respaldo a la vez; si se pide otro mientras tanto, corre al terminar
+    private static final AtomicBoolean enVuelo = new AtomicBoolean();
+    private static final AtomicBoolean pedido = new AtomicBoolean();
+    private static volatile boolean reescribirTodas = false; // Tras un error no se sabe qué quedó
+
+    // Salas con fila en partidas_activas. Lo toca el respaldo en vuelo y marcarGuardada()
+    private static final Set<String> respaldadas = ConcurrentHashMap.newKeySet();
+
+    // Sala -> mesa cuya partida terminó con /guardar. Se marca en el hilo escritor, dentro
+    // de la operación del guardado: un respaldo de esa mesa tomado antes del último voto
+    // llega al escritor después y ya no se escribe. Una partida nueva en la sala es otra mesa
+    private static final Map<String, Long> guardadas = new ConcurrentHashMap<>();
+
+    private RespaldoPartidas() {}
+
+    public static void iniciar(RegistroSalas registroSalas) {
+        int segundos = ConfiguracionServidor.respaldoSeg();
+        registro = registroSalas;
+        recuperar(registroSalas);
+        if (segundos <= 0) {
+            System.out.println("Respaldo de partidas desactivado.");
+            return;
+        }
+        intervaloMs = segundos * 1000L;
+        Temporizador.programar(intervaloMs, Runnable::run, RespaldoPartidas::periodico);
+    }
+
+    private static void periodico() {
+        respaldar();
+        Temporizador.programar(intervaloMs, Runnable::run, RespaldoPartidas::periodico);
+    }
+
+    // Pide un respaldo ya (fin de ronda). Solo encola: vuelve de inmediato
+    static void pedir() {
+        if (intervaloMs == 0) return;
+        Temporizador.programar(0, Runnable::run, RespaldoPartidas::respaldar);
+    }
+
+    // Al arrancar, después de la bitácora: lo que ella ya reconstruyó es más nuevo
+    private static void recuperar(RegistroSalas registroSalas) {
+        Map<String, byte[]> guardadas = new GrupoDB().cargarPartidasActivas();
+        int recuperadas = 0;
+        for (Map.Entry<String, byte[]> e : guardadas.entrySet()) {
+            String nombreSala = e.getKey();
+            respaldadas.add(nombreSala); // Si no se recupera, el primer respaldo borra la fila
+            Sala sala = registroSalas.obtener(nombreSala);
+            if (sala != null && sala.getPartida() != null) continue;
+            try {
+                registroSalas.asegurarSalaExiste(nombreSala);
+                sala = registroSalas.obtener(nombreSala);
+                SesionJuego sesion = SesionJuego.desdeRespaldo(nombreSala, e.getValue(), sala::ejecutar);
+                if (sesion == null) continue;
+                RecuperacionPartidas.instalar(sala, sesion);
+                recuperadas++;
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("Respaldo de la sala '" + nombreSala + "' ilegible: " + ex.getMessage());
+            }
+        }
+        Metricas.sumar("respaldo.partidasRecuperadas", recuperadas);
+        if (!guardadas.isEmpty()) {
+            System.out.println("Respaldo: " + recuperadas + " de " + guardadas.size() + " partidas recuperadas.");
+        }
+    }
+
+    // Corre en el hilo escritor, en la operación del /guardar que borra la fila de la sala
+    static void marcarGuardada(String nombreSala, long mesa) {
+        guardadas.put(nombreSala, mesa);
+        respaldadas.remove(nombreSala);
+    }
+
+    private static boolean fueGuardada(String nombreSala, Long mesa) {
+        return mesa != null && mesa.equals(guardadas.get(nombreSala));
+    }
+
+    /**
+     * Una partida cuyo /guardar no llegó a la BD vuelve a su sala, suspendida como las
+     * recuperadas al arrancar, hasta que entren sus jugadores. Corre en el actor de la
+     * sala; false si ya empezó otra partida ahí o la instantánea no sirve.
+     */
+    static CompletableFuture<Boolean> devolver(String nombreSala, byte[] estado) {
+        RegistroSalas registroSalas = registro;
+        if (registroSalas == null) return CompletableFuture.completedFuture(false);
+        registroSalas.asegurarSalaExiste(nombreSala);
+        Sala sala = registroSalas.obtener(nombreSala);
+        if (sala == null) return CompletableFuture.completedFuture(false);
+
+        CompletableFuture<Boolean> devuelta = new CompletableFuture<>();
+        sala.ejecutar(() -> {
+            try {
+                SesionJuego actual = sala.getPartida();
+                if (actual != null && actual.estaEnCurso()) {
+                    devuelta.complete(false);
+                    return;
+                }
+                SesionJuego sesion = SesionJuego.desdeRespaldo(nombreSala, estado, sala::ejecutar);
+                if (sesion != null) RecuperacionPartidas.instalar(sala, sesion);
+                devuelta.complete(sesion != null);
+            } catch (IOException | RuntimeException e) {
+                devuelta.completeExceptionally(e);
+            }
+        });
+        return devuelta;
+    }
+
+    static void respaldar() {
+        if (!enVuelo.compareAndSet(false, true)) {
+            pedido.set(true);
+            return;
+        }
+        long inicio = System.nanoTime();
+        boolean todas = reescribirTodas;
+        reescribirTodas = false;
+
+        // 1. Cada sala toma su instantánea en su actor
+        Map<String, byte[]> nuevas = new ConcurrentHashMap<>();
+        Map<String, Long> mesaDe = new ConcurrentHashMap<>();
+        Set<String> enCurso = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<Void>> tomas = new ArrayList<>();
+        for (Sala sala : registro.todas()) {
+            if (sala.getPartida() == null && !respaldadas.contains(sala.getNombre())) continue;
+            CompletableFuture<Void> toma = new CompletableFuture<>();
+            sala.ejecutar(() -> {
+                try {
+                    SesionJuego sesion = sala.getPartida();
+                    if (sesion != null && sesion.estaEnCurso()) {
+                        enCurso.add(sala.getNombre());
+                        byte[] estado = sesion.respaldoSiCambio(todas);
+                        if (estado != null) {
+                            nuevas.put(sala.getNombre(), estado);
+                            mesaDe.put(sala.getNombre(), sesion.obtenerMesa());
+                        }
+                    }
+                } finally {
+                    toma.complete(null);
+                }
+            });
+            tomas.add(toma);
+        }
+
+        // 2. Todas en una sola escritura, en el hilo escritor
+        Set<String> borrar = new HashSet<>();
+        CompletableFuture.allOf(tomas.toArray(new CompletableFuture<?>[0]))
+                .orTimeout(ESPERA_MAX_MESAS_MS, TimeUnit.MILLISECONDS)
+                .thenCompose(v -> {
+                    for (String nombre : respaldadas) {
+                        if (!enCurso.contains(nombre)) borrar.add(nombre);
+                    }
+                    if (nuevas.isEmpty() && borrar.isEmpty()) return CompletableFuture.completedFuture(0L);
+                    return ConexionDB.escribir(conn -> escribir(conn, nuevas, mesaDe, borrar));
+                })
+                .whenComplete((bytes, error) -> {
+                    if (error != null) {
+                        System.err.println("Error al respaldar partidas: " + error.getMessage());
+                        Metricas.incrementar("respaldo.errores");
+                        reescribirTodas = true;
+                    } else {
+                        // Una sala guardada mientras tanto no vuelve: su fila ya no existe
+                        for (String nombre : nuevas.keySet()) {
+                            if (!fueGuardada(nombre, mesaDe.get(nombre))) respaldadas.add(nombre);
+                        }
+                        respaldadas.removeAll(borrar);
+                        Metricas.incrementar("respaldo.respaldos");
+                        Metricas.sumar("respaldo.partidas", nuevas.size());
+                        Metricas.sumar("respaldo.borradas", borrar.size());
+                        Metricas.sumar("respaldo.bytes", bytes);
+                        Metricas.sumar("respaldo.latenciaMicros", (System.nanoTime() - inicio) / 1000);
+                    }
+                    enVuelo.set(false);
+                    if (pedido.getAndSet(false)) respaldar();
+                });
+    }
+
+    // Devuelve los bytes de instantáneas escritos. Corre en el hilo escritor: ve en orden
+    // las marcas de marcarGuardada() y se salta las mesas que ya se guardaron
+    private static long escribir(Connection conn, Map<String, byte[]> nuevas, Map<String, Long> mesaDe,
+                                 Set<String> borrar) throws SQLException {
+        long bytes = 0;
+        long ahora = System.currentTimeMillis();
+        nuevas.keySet().removeIf(nombre -> fueGuardada(nombre, mesaDe.get(nombre)));
+        if (!nuevas.isEmpty()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT OR REPLACE INTO partidas_activas (sala, estado, actualizado) VALUES (?, ?, ?)")) {
+                for (Map.Entry<String, byte[]> e : nuevas.entrySet()) {
+                    pstmt.setString(1, e.getKey());
+                    pstmt.setBytes(2, e.getValue());
+                    pstmt.setLong(3, ahora);
+                    pstmt.addBatch();
+                    bytes += e.getValue().length;
+                }
+                pstmt.executeBatch();
+            }
+        }
+        if (!borrar.isEmpty()) {
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM partidas_activas WHERE sala = ?")) {
+                for (String nombre : borrar) {
+                    pstmt.setString(1, nombre);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        }
+        return bytes;
+    }
+}
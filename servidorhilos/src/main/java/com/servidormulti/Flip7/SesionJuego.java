@@ -1,180 +1,291 @@
 package com.servidormulti.Flip7;
 
 import com.servidormulti.UnCliente;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.nio.ByteBuffer;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.servidormulti.Bitacora;
+import com.servidormulti.ConfiguracionServidor;
+import com.servidormulti.GrupoDB;
+import com.servidormulti.LoteSalida;
+import com.servidormulti.Metricas;
+import com.servidormulti.Temporizador;
+
+/**
+ * Una partida de Flip 7 en una sala: pone en la red a un MotorFlip7. Traduce los
+ * comandos de los clientes a llamadas al motor y los eventos del motor a mensajes
+ * de VistaJuego. Lo que no es regla del juego vive aquí: el chat, /puntuacion, /consejo,
+ * el voto de /guardar, la carga de una partida guardada y los bots.
+ *
+ * Un asiento lo juega un humano conectado o un bot (EstrategiaBot). Los bots no tienen
+ * socket ni hilo: cuando el motor espera algo de ellos se programa un paso en el
+ * Temporizador que decide y juega. Si un humano se va a media partida, un bot sigue
+ * con su asiento hasta que vuelva a entrar a la sala (reclamarAsiento).
+ *
+ * No tiene candados: todo lo que la toca (comandos, salidas y los pasos programados)
+ * entra por el actor de su sala, que lo corre de uno en uno. Las pausas del motor se
+ * programan en el Temporizador y el paso vuelve a entrar por el actor.
+ *
+ * Cada entrada al motor se anota en la Bitacora antes de aplicarse (BitacoraMesa). Si
+ * el servidor se cae, reconstruir() repite esas entradas sobre un motor con la misma
+ * semilla y la partida queda donde iba, esperando a que vuelvan sus jugadores.
+ */
+public class SesionJuego implements OyenteJuego {
 
-import com.servidormulti.ManejadorSalas;
-
-public class SesionJuego {
+    private static final long TIEMPO_ENTRE_CARTAS_FLIP3 = 1000; // 1 segundo entre cartas
+    private static final long TIEMPO_ESPERA_NUEVA_RONDA = 15000; // 15 segundos antes de nueva ronda
 
     private Set<String> votosGuardar = new HashSet<>();
-    private final List<UnCliente> clientesEnSala;
-    private final Map<String, Jugador> jugadores; 
-    private final Baraja baraja;
-    private final CalculadorPuntuacion calculadora;
-    private final ManejadorAcciones manejadorAcciones;
-    
+    private final List<UnCliente> clientesEnSala; // Los que reciben los mensajes de la mesa
+    private final Map<String, UnCliente> clientePorId = new HashMap<>(); // Asiento del motor -> humano conectado
+    private final Map<String, EstrategiaBot> bots = new HashMap<>();     // Asiento del motor -> bot que lo juega
+    private final Map<String, String> asientoDeAusente = new HashMap<>(); // Quien se fue -> su asiento, para recuperarlo
+    private int numeroBots = 0;
+    private boolean partidaEnCurso = false; // Del inicio hasta que hay ganador, con las esperas entre rondas
+
+    private final MotorFlip7 motor;
+    private final Executor actor;
+    private final long pausaBotMs;
+
+    private BitacoraMesa bitacora;
+    // Al reconstruir, el paso que el motor programa no corre: se guarda hasta que la
+    // bitácora diga que corrió (PASO). Suspendida, espera así al primer jugador que vuelva
+    private boolean reproduciendo = false;
+    private boolean suspendida = false;
+    private Runnable pasoPendiente;
+    private long retrasoPendiente;
+    private boolean pasoCorrio;
+    private int[] ultimaRonda; // Totales de la última ronda reproducida, para compararlos con RONDA
+
+    // Para RespaldoPartidas: cada entrada cuenta como cambio; se respalda si hubo alguno
+    private long cambios = 0;
+    private long cambiosRespaldados = -1;
+
     // Nueva Referencia a la Vista
     private final VistaJuego vista;
 
-    private boolean juegoIniciado = false;
-    private int indiceTurnoActual = 0;
-    private boolean esperandoObjetivo = false;
-    private Carta accionPendiente = null;
-    
-    private List<Carta> accionesAcumuladasFlipThree = new ArrayList<>();
-    private int flipThreeCartasRestantes = 0;
-    private Jugador flipThreeObjetivo = null;
-    private UnCliente flipThreeAtacante = null; // Mantenemos referencia aunque no se use mucho
-
-    private static final long TIEMPO_ENTRE_CARTAS_FLIP3 = 1000; // 1 segundo entre cartas
-    private static final long TIEMPO_ESPERA_NUEVA_RONDA = 15000; // 15 segundos antes de nueva ronda
+    public SesionJuego(List<UnCliente> clientes, List<EstrategiaBot> estrategiasBots, Executor actor) {
+        this(clientes, estrategiasBots, actor, semillaNueva());
+    }
 
-    public SesionJuego(List<UnCliente> clientes) {
+    public SesionJuego(List<UnCliente> clientes, List<EstrategiaBot> estrategiasBots, Executor actor, long semilla) {
         this.clientesEnSala = clientes;
-        this.jugadores = new HashMap<>();
-        this.baraja = new Baraja();
-        this.calculadora = new CalculadorPuntuacion();
-        this.manejadorAcciones = new ManejadorAcciones();
-        
-        // Inicializamos la vista
-        this.vista = new VistaJuego();
+        this.vista = new VistaJuego(this::nombresAsientos);
+        this.pausaBotMs = ConfiguracionServidor.pausaBotMs();
+
+        MotorFlip7.Tiempos tiempos = new MotorFlip7.Tiempos(
+                TIEMPO_ENTRE_CARTAS_FLIP3,
+                TIEMPO_ESPERA_NUEVA_RONDA,
+                ConfiguracionServidor.limiteTurnoMs(),
+                ConfiguracionServidor.limiteObjetivoMs(),
+                ConfiguracionServidor.expiracionesParaAfk());
+        this.actor = actor;
+        this.motor = new MotorFlip7(semilla, tiempos, this::programar, this);
+        for (UnCliente c : clientes) {
+            motor.agregarJugador(c.getClienteID(), c.getNombreUsuario());
+            clientePorId.put(c.getClienteID(), c);
+        }
+        // Los bots se sientan después de los humanos, con un nombre que nadie en la mesa use
+        for (EstrategiaBot estrategia : estrategiasBots) {
+            String nombre;
+            do {
+                nombre = "Bot" + (++numeroBots);
+            } while (asientoPorNombre(nombre) != null);
+            String id = "bot-" + numeroBots;
+            motor.agregarJugador(id, nombre);
+            bots.put(id, estrategia);
+        }
+        this.bitacora = new BitacoraMesa(Bitacora.nuevaMesa());
+        bitacora.asientos(motor.obtenerAsientos());
     }
 
-    public void iniciarPartida() {
-        if (juegoIniciado) return;
-
-        // Limpieza inicial
-        jugadores.clear();
-        for (UnCliente c : clientesEnSala) {
-            jugadores.put(c.getClienteID(), new Jugador(c.getNombreUsuario()));
+    // Cada entrada pública abre un LoteSalida: todo lo que provoca un paso del juego
+    // le llega a cada cliente en una sola escritura. Si la sala tenía una partida guardada
+    // (ya leída por quien llama, fuera del actor) sigue desde ahí; devuelve true si la
+    // cargó, y entonces quien llama la borra para que no se vuelva a cargar
+    public boolean iniciarPartida(GrupoDB.PartidaGuardada guardada) {
+        LoteSalida lote = LoteSalida.abrir();
+        try {
+            cambios++;
+            return iniciarPartidaInterno(guardada);
+        } finally {
+            lote.cerrar();
         }
+    }
+
+    private boolean iniciarPartidaInterno(GrupoDB.PartidaGuardada guardada) {
+        if (motor.estaJuegoIniciado() || clientesEnSala.isEmpty()) return false;
 
         // --- LÓGICA DE CARGA O REINICIO ---
         String nombreSala = clientesEnSala.get(0).obtenerSalaActual();
-        com.servidormulti.GrupoDB db = new com.servidormulti.GrupoDB(); // Instancia temporal
-        Integer idGuardado = db.obtenerIdPartidaPorSala(nombreSala);
+        System.out.println("Partida en sala '" + nombreSala + "' con semilla " + motor.obtenerSemilla());
+        anotarInicio(nombreSala);
 
-        if (idGuardado != null) {
+        if (guardada != null) {
             vista.mostrarMensajeGenerico(clientesEnSala, "¡PARTIDA GUARDADA ENCONTRADA! Cargando estado...");
-            boolean cargaExitosa = cargarEstadoDeBaseDeDatos(idGuardado, db);
-            if (cargaExitosa) {
-                // Borramos el guardado para que no se cargue infinitamente si reinician de nuevo
-                db.eliminarPartidaGuardada(idGuardado);
-            } else {
-                vista.mostrarMensajeGenerico(clientesEnSala, "Error cargando. Iniciando partida nueva.");
-                baraja.reiniciarBaraja();
-            }
-        } else {
-            // Partida Normal
-            baraja.reiniciarBaraja();
+            // Los guardados de antes de las instantáneas solo tienen puntos y manos
+            boolean cargada = guardada.estado != null
+                    ? cargarInstantanea(guardada.estado)
+                    : cargarEstadoDeBaseDeDatos(guardada);
+            if (cargada) return true;
+            vista.mostrarMensajeGenerico(clientesEnSala, "Error cargando. Iniciando partida nueva.");
         }
         // ----------------------------------
 
-        juegoIniciado = true;
-        esperandoObjetivo = false;
-        
-        vista.mostrarInicioPartida(clientesEnSala);
-        
-        // Si cargamos partida, anunciamos el turno guardado, si no, random
-        if (idGuardado == null) {
-            if (!clientesEnSala.isEmpty()) {
-                indiceTurnoActual = new java.util.Random().nextInt(clientesEnSala.size());
-            }
+        bitacora.iniciar();
+        motor.iniciarPartida();
+        return false;
+    }
+
+    private void anotarInicio(String nombreSala) {
+        List<String> nombres = new ArrayList<>();
+        List<String> estrategias = new ArrayList<>();
+        for (String id : motor.obtenerAsientos()) {
+            nombres.add(nombre(id));
+            EstrategiaBot bot = bots.get(id);
+            estrategias.add(bot != null ? bot.nombre() : "");
         }
-        anunciarTurno();
+        bitacora.inicio(nombreSala, motor.obtenerSemilla(), nombres, estrategias);
     }
 
-    // Carga el estado de la partida desde la base de datos
-    private boolean cargarEstadoDeBaseDeDatos(int id, com.servidormulti.GrupoDB db) {
+    // Carga un guardado sin instantánea (solo puntos y manos, con baraja nueva) y lo reanuda
+    private boolean cargarEstadoDeBaseDeDatos(GrupoDB.PartidaGuardada guardada) {
+        int turno = guardada.turno;
         try {
-            this.indiceTurnoActual = db.obtenerTurnoGuardado(id);
-            List<com.servidormulti.GrupoDB.DatosJugadorGuardado> datos = db.cargarJugadoresDePartida(id);
-
-            baraja.reiniciarBaraja(); 
-
-            for (com.servidormulti.GrupoDB.DatosJugadorGuardado d : datos) {
-                // Buscar al jugador conectado que coincida con el nombre
-                UnCliente clienteDueño = null;
-                for(UnCliente c : clientesEnSala) {
-                    if(c.getNombreUsuario().equals(d.nombre)) {
-                        clienteDueño = c;
-                        break;
-                    }
-                }
-                
-                if (clienteDueño != null) {
-                    Jugador j = jugadores.get(clienteDueño.getClienteID());
-                    j.sumarPuntos(d.puntuacion); // Restaurar puntos base
-                    j.setTieneSecondChance(d.secondChance);
-                    j.setTieneBUST(d.esBust);// Restaura si perdió
-                    j.setSePlanto(d.sePlanto);// Restaura si se plantó (/parar)
-                    j.setEstaCongelado(d.estaCongelado);
-                    
-                    // Restaurar cartas en mano
-                    if (d.cartas != null && !d.cartas.isEmpty()) {
-                        String[] cartasArr = d.cartas.split(",");
-                        for (String nombreCarta : cartasArr) {
-                            Carta c = reconstruirCarta(nombreCarta);
-                            if (c != null) j.obtenerCartasEnMano().add(c);
-                        }
+            bitacora.preparar();
+            motor.prepararMesa();
+
+            for (GrupoDB.DatosJugadorGuardado d : guardada.jugadores) {
+                // Buscar el asiento (humano o bot) que coincida con el nombre
+                String idDueño = asientoPorNombre(d.nombre);
+                if (idDueño == null) continue;
+
+                // Restaurar cartas en mano
+                List<Carta> mano = new ArrayList<>();
+                if (d.cartas != null && !d.cartas.isEmpty()) {
+                    for (String nombreCarta : d.cartas.split(",")) {
+                        Carta c = reconstruirCarta(nombreCarta);
+                        if (c != null) mano.add(c);
                     }
                 }
+                bitacora.restaurar(idDueño, d.puntuacion, d.secondChance,
+                        d.esBust, d.sePlanto, d.estaCongelado, mano);
+                motor.restaurarJugador(idDueño, d.puntuacion, d.secondChance,
+                        d.esBust, d.sePlanto, d.estaCongelado, mano);
             }
-            return true;
         } catch (Exception e) {
             e.printStackTrace();
             return false;
         }
+        bitacora.reanudar(turno);
+        motor.reanudarPartida(turno);
+        return true;
     }
 
-    // Construye una carta a partir de su nombre 
-    private Carta reconstruirCarta(String nombre) {
+    /**
+     * Carga una instantánea de /guardar: la partida sigue exactamente donde iba. Los
+     * asientos se buscan por nombre; el de quien no está lo juega un bot hasta que vuelva
+     * y quien está en la sala sin ser de la partida solo mira.
+     */
+    private boolean cargarInstantanea(byte[] estado) {
+        InstantaneaPartida guardada;
         try {
-            if (nombre.equals("Second Chance")) return new Carta(0, "Second Chance", TipoCarta.ACCION);
-            if (nombre.equals("Freeze")) return new Carta(0, "Freeze", TipoCarta.ACCION);
-            if (nombre.equals("Flip Three")) return new Carta(0, "Flip Three", TipoCarta.ACCION);
-            if (nombre.equals("x2")) return new Carta(0, "x2", TipoCarta.BONUS);
-            if (nombre.equals("+10")) return new Carta(0, "+10", TipoCarta.BONUS);
-            
-            int valor = Integer.parseInt(nombre);
-            return new Carta(valor, String.valueOf(valor), TipoCarta.NUMERICA);
-        } catch (Exception e) {
-            return null;
+            guardada = InstantaneaPartida.leer(estado);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("No se pudo leer la partida guardada: " + e.getMessage());
+            return false;
         }
-    }
 
-    private void iniciarSiguienteRonda() {
-        if (clientesEnSala.isEmpty()) {
-            juegoIniciado = false;
-            return;
+        List<String> ids = new ArrayList<>();
+        List<String> estrategias = new ArrayList<>();
+        Map<String, String> ausentes = new HashMap<>(); // Nombre -> asiento nuevo
+        for (int i = 0; i < guardada.asientos(); i++) {
+            String nombre = guardada.nombres.get(i);
+            String id = asientoPorNombre(nombre);
+            if (id == null || ids.contains(id)) id = "bot-" + (++numeroBots);
+            boolean presente = clientePorId.containsKey(id);
+            if (!presente && guardada.estrategias.get(i).isEmpty()) ausentes.put(nombre, id);
+            ids.add(id);
+            estrategias.add(presente ? "" : guardada.estrategias.get(i));
         }
+        InstantaneaPartida resuelta = guardada.conIds(ids, estrategias);
 
-        for (Jugador j : jugadores.values()) {
-            j.reiniciarParaRondaNueva();
+        bitacora.instantanea(resuelta.bytes());
+        try {
+            aplicarInstantanea(resuelta);
+        } catch (IOException | RuntimeException e) {
+            // leer() ya la probó entera: aquí no debería fallar
+            System.err.println("No se pudo restaurar la partida guardada: " + e.getMessage());
+            return false;
         }
-        
-        juegoIniciado = true;
-        esperandoObjetivo = false;
-        vista.mostrarInicioRonda(clientesEnSala, 0); // Podríamos llevar cuenta de rondas
-        configurarYArrancarRonda();
+        for (Map.Entry<String, String> e : ausentes.entrySet()) {
+            asientoDeAusente.put(e.getKey(), e.getValue());
+            cederAsientoABot(e.getValue());
+        }
+        if (!ausentes.isEmpty()) {
+            vista.mostrarMensajeGenerico(clientesEnSala, "Faltan " + String.join(", ", ausentes.keySet())
+                    + ". Un bot ocupa su asiento hasta que vuelvan.");
+            despertarBot();
+        }
+        return true;
     }
 
-    private void configurarYArrancarRonda() {
-        if (!clientesEnSala.isEmpty()) {
-            indiceTurnoActual = new Random().nextInt(clientesEnSala.size());
-        }
-        anunciarTurno();
+    // Deja la mesa como dice la instantánea (ids ya resueltos). También al reproducir la bitácora
+    private void aplicarInstantanea(InstantaneaPartida instantanea) throws IOException {
+        bots.clear();
+        for (int i = 0; i < instantanea.asientos(); i++) {
+            String estrategia = instantanea.estrategias.get(i);
+            if (!estrategia.isEmpty()) bots.put(instantanea.ids.get(i), EstrategiaBot.desdeTexto(estrategia));
+        }
+        // Quien no tiene asiento en la partida guardada se queda mirando
+        clientePorId.keySet().retainAll(instantanea.ids);
+        motor.restaurar(instantanea.estadoMotor(), instantanea.ids, instantanea.nombres);
+        bitacora.asientos(motor.obtenerAsientos());
+    }
+
+    // Los asientos de un ausente que cuida un bot se guardan como humanos: al cargar, vuelven a ser suyos
+    private InstantaneaPartida tomarInstantanea() {
+        List<String> ids = motor.obtenerAsientos();
+        List<String> nombres = new ArrayList<>(ids.size());
+        List<String> estrategias = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            nombres.add(nombre(id));
+            EstrategiaBot bot = bots.get(id);
+            estrategias.add(bot != null && !asientoDeAusente.containsValue(id) ? bot.nombre() : "");
+        }
+        return InstantaneaPartida.tomar(ids, nombres, estrategias, motor);
+    }
+
+    // Construye una carta a partir de su nombre
+    private Carta reconstruirCarta(String nombre) {
+        return Carta.desdeNombre(nombre.trim());
     }
 
     public void procesarMensajeJuego(UnCliente remitente, String mensaje) {
-        if (!juegoIniciado) return;
+        LoteSalida lote = LoteSalida.abrir();
+        try {
+            cambios++;
+            procesarComando(remitente, mensaje);
+        } finally {
+            lote.cerrar();
+        }
+    }
+
+    private void procesarComando(UnCliente remitente, String mensaje) {
+        if (!motor.estaJuegoIniciado()) return;
+
+        String id = idDe(remitente);
+        if (motor.marcarPresente(id)) bitacora.presente(id);
 
         // 1. Si no empieza con '/', es un mensaje de chat normal
         if (!mensaje.trim().startsWith("/")) {
@@ -185,65 +296,77 @@ public class SesionJuego {
         String[] partes = mensaje.trim().split("\\s+");
         String comando = partes[0].toLowerCase();
 
+        if (motor.estaRevelandoFlipThree() && !comando.equals("/puntuacion") && !comando.equals("/consejo")) {
+            vista.enviar(remitente, MotorFlip7.ESPERA_FLIP_THREE);
+            return;
+        }
+
         // --- COMANDO DE GUARDADO  ---
         if (comando.equals("/guardar")) {
             votosGuardar.add(remitente.getNombreUsuario());
             int total = clientesEnSala.size();
             int actuales = votosGuardar.size();
-            
-            vista.mostrarMensajeGenerico(clientesEnSala, 
+
+            vista.mostrarMensajeGenerico(clientesEnSala,
                 remitente.getNombreUsuario() + " quiere GUARDAR la partida (" + actuales + "/" + total + ").");
 
             if (actuales == total) {
-                // Instanciamos la nueva clase y llamamos al método
-                GuardadoPartida guardador = new GuardadoPartida();
-                
-                boolean guardadoExitoso = guardador.guardarYTerminar(
-                    clientesEnSala, 
-                    jugadores, 
-                    indiceTurnoActual, 
-                    vista
+                // Se copia lo que va a la BD y la mesa se suelta ya: la escritura sigue sola
+                GuardadoPartida guardado = new GuardadoPartida(
+                    remitente.obtenerSalaActual(),
+                    bitacora.obtenerMesa(),
+                    motor.obtenerJugadores(),
+                    motor.obtenerIndiceTurno(),
+                    tomarInstantanea().bytes()
                 );
+                List<UnCliente> jugadoresGuardado = new ArrayList<>(clientesEnSala);
 
-                // Si se guardó bien, limpiamos la sesión en memoria
-                if (guardadoExitoso) {
-                    clientesEnSala.clear();
-                    juegoIniciado = false;
-                }
+                bitacora.fin();
+                motor.terminar();
+                partidaEnCurso = false;
+                clientesEnSala.clear();
+                clientePorId.clear();
+                bots.clear();
+                votosGuardar.clear();
+
+                guardado.guardarYTerminar(jugadoresGuardado, vista);
             }
             return;
         }
         // -----------------------------------
 
         if (comando.equals("/puntuacion")) {
-            vista.mostrarReportePuntuacion(remitente, jugadores);
+            vista.mostrarReportePuntuacion(remitente, motor.obtenerJugadores());
             return;
         }
 
-        // 2. Validación de Turno
-        UnCliente clienteActual = clientesEnSala.get(indiceTurnoActual);
-        boolean esTurno = remitente.getClienteID().equals(clienteActual.getClienteID());
-        // Validación especial para quien está sufriendo un "Flip Three" (puede actuar fuera de turno normal)
-        boolean esVictimaFlip3 = (this.flipThreeObjetivo != null &&
-                remitente.getNombreUsuario().equalsIgnoreCase(this.flipThreeObjetivo.obtenerNombreUsuario()));
-
-        if (!esTurno && !esVictimaFlip3) {
-            vista.enviar(remitente, "No es tu turno. Espera a " + clienteActual.getNombreUsuario());
+        if (comando.equals("/consejo")) {
+            Jugador yo = motor.obtenerJugador(id);
+            if (yo == null || yo.tieneBUST() || yo.sePlanto()) {
+                vista.enviar(remitente, "Ya no juegas esta ronda.");
+                return;
+            }
+            vista.mostrarConsejo(remitente, motor.consejoPara(id));
             return;
         }
 
-        Jugador jugadorActual = jugadores.get(remitente.getClienteID());
+        // 2. Validación de Turno (el motor avisa si no le toca)
+        if (!motor.puedeActuar(id)) return;
 
         // 3. Manejo de cartas de ACCIÓN pendientes (Freeze, Flip Three, etc.)
-        if (esperandoObjetivo) {
+        if (motor.estaEsperandoObjetivo()) {
             if (comando.equals("/usar")) {
                 if (partes.length < 2) {
                     vista.enviar(remitente, "Debes especificar un nombre. Ej: /usar Juan");
                     return;
                 }
-                ejecutarAccionPendiente(remitente, partes[1]);
+                // Normalizamos quitando el [TU] si el usuario lo escribió
+                String nombreLimpio = partes[1].replace(" [TU]", "").trim();
+                String idObjetivo = asientoPorNombre(nombreLimpio);
+                bitacora.usar(id, idObjetivo);
+                motor.usar(id, idObjetivo);
             } else {
-                vista.enviar(remitente, "¡Tienes una carta de ACCION pendiente! Usa: /usar [Nombre]");
+                vista.enviar(remitente, MotorFlip7.ACCION_PENDIENTE);
             }
             return;
         }
@@ -251,354 +374,638 @@ public class SesionJuego {
         // 4. Comandos de Juego normales
         switch (comando) {
             case "/jalar":
-                if (esVictimaFlip3 && !esTurno) {
-                    vista.enviar(remitente, "Estás en un Flip Three. Solo puedes usar /usar cuando se te pida.");
-                    return;
-                }
-                accionJalar(remitente, jugadorActual);
+                bitacora.jalar(id);
+                motor.jalar(id);
                 break;
             case "/parar":
-                if (esVictimaFlip3 && !esTurno) return;
-                accionParar(remitente, jugadorActual);
+                bitacora.parar(id);
+                motor.parar(id);
                 break;
             default:
-                vista.enviar(remitente, "Comando no válido. Usa /jalar, /parar, /puntuacion o /guardar.");
+                vista.enviar(remitente, "Comando no válido. Usa /jalar, /parar, /consejo, /puntuacion o /guardar.");
         }
     }
 
-    private void accionJalar(UnCliente cliente, Jugador jugador) {
-        Carta carta = baraja.jalarCarta();
-
-        if (carta == null) {
-            vista.mostrarMensajeGenerico(clientesEnSala, "¡Se acabó la baraja! Barajeando descarte...");
-            baraja.reiniciarBaraja();
-            carta = baraja.jalarCarta();
+    public void removerJugador(UnCliente cliente) {
+        LoteSalida lote = LoteSalida.abrir();
+        try {
+            cambios++;
+            String id = idDe(cliente);
+            // A media partida, si queda algún otro humano, un bot sigue con su asiento
+            if (partidaEnCurso && clientePorId.containsKey(id) && clientePorId.size() > 1) {
+                clientesEnSala.remove(cliente);
+                clientePorId.remove(id);
+                votosGuardar.remove(cliente.getNombreUsuario());
+                asientoDeAusente.put(cliente.getNombreUsuario(), id);
+                vista.mostrarMensajeGenerico(clientesEnSala, "¡" + cliente.getNombreUsuario()
+                        + " salió de la partida! Un bot ocupa su asiento hasta que vuelva.");
+                cederAsientoABot(id);
+                despertarBot(); // Por si le tocaba jugar o elegir objetivo
+                return;
+            }
+            if (motor.obtenerJugador(id) != null) bitacora.salida(id);
+            motor.removerJugador(id); // El aviso y la baja llegan por jugadorSalio
+            clientesEnSala.remove(cliente);
+            clientePorId.remove(id);
+            if (clientePorId.isEmpty()) {
+                // Sin humanos la mesa se cierra: los bots no juegan solos
+                cerrar();
+            }
+        } finally {
+            lote.cerrar();
         }
+    }
 
-        if (carta == null) {
-            vista.mostrarMensajeGenerico(clientesEnSala, "Error: El mazo sigue vacío. Finalizando ronda...");
-            finalizarRonda();
-            return;
+    // La partida se cierra sin resultado y no se vuelve a reconstruir
+    public void cerrar() {
+        bitacora.fin();
+        motor.terminar();
+        partidaEnCurso = false;
+        suspendida = false;
+    }
+
+    // Quien vuelve a la sala recupera el asiento que le cuidaba un bot
+    public void reclamarAsiento(UnCliente cliente) {
+        LoteSalida lote = LoteSalida.abrir();
+        try {
+            cambios++;
+            String id = asientoDeAusente.remove(cliente.getNombreUsuario());
+            if (id == null || !partidaEnCurso || clientePorId.containsKey(id)) return;
+
+            bitacora.humano(id);
+            if (bots.remove(id) != null) Metricas.incrementar("bots.asientosDevueltos");
+            clientePorId.put(id, cliente);
+            clientesEnSala.add(cliente);
+            vista.mostrarMensajeGenerico(clientesEnSala, cliente.getNombreUsuario() + " volvió y recupera su asiento.");
+            vista.mostrarMano(cliente, motor.obtenerJugador(id));
+            if (suspendida) reanudarTrasRecuperacion();
+
+            // Si el motor esperaba algo de ese asiento, ahora se lo pide a él
+            if (!motor.estaJuegoIniciado() || motor.estaRevelandoFlipThree()) return;
+            if (id.equals(motor.obtenerIdConAccion())) {
+                eligeObjetivo(id, motor.obtenerAccionPendiente(), motor.obtenerObjetivosPendientes());
+            } else if (!motor.estaEsperandoObjetivo() && id.equals(motor.obtenerIdEnTurno())) {
+                vista.anunciarTurno(List.of(cliente), nombre(id), cliente, motor.obtenerJugador(id));
+            }
+        } finally {
+            lote.cerrar();
         }
+    }
 
-        vista.mostrarCartaJalada(clientesEnSala, cliente, carta);
+    private void cederAsientoABot(String id) {
+        EstrategiaBot estrategia = estrategiaPorDefecto();
+        bitacora.bot(id, estrategia.nombre());
+        bots.put(id, estrategia);
+        motor.obtenerJugador(id).marcarPresente(); // Un asiento AFK se saltaría; el bot sí juega
+        Metricas.incrementar("bots.reemplazos");
+    }
 
-        if (carta.obtenerTipo() == TipoCarta.ACCION) {
-            procesarCartaAccion(cliente, jugador, carta);
-            return;
+    // --- Recuperación desde la bitácora ---
+
+    /**
+     * Empieza a rearmar una partida desde el INICIO de su mesa en la bitácora. Los
+     * registros siguientes se aplican con reproducir() y al final terminarReconstruccion()
+     * la deja suspendida (nada corre) hasta que alguno de sus jugadores entre a la sala.
+     */
+    static SesionJuego reconstruir(long mesa, ByteBuffer inicio, Executor actor) {
+        if (inicio.get() != BitacoraMesa.INICIO) return null;
+        BitacoraMesa.leerTexto(inicio); // La sala: la busca quien llama
+        long semilla = inicio.getLong();
+
+        SesionJuego sesion = new SesionJuego(new ArrayList<>(), List.of(), actor, semilla);
+        sesion.bitacora = new BitacoraMesa(mesa);
+        int asientos = inicio.getInt();
+        for (int i = 0; i < asientos; i++) {
+            String id = BitacoraMesa.leerTexto(inicio);
+            String nombre = BitacoraMesa.leerTexto(inicio);
+            String estrategia = BitacoraMesa.leerTexto(inicio);
+            sesion.motor.agregarJugador(id, nombre);
+            if (!estrategia.isEmpty()) sesion.bots.put(id, EstrategiaBot.desdeTexto(estrategia));
+        }
+        sesion.bitacora.asientos(sesion.motor.obtenerAsientos());
+        sesion.reproduciendo = true;
+        return sesion;
+    }
+
+    // Aplica el siguiente registro de la mesa; false si no cuadra con lo que hace el motor
+    boolean reproducir(ByteBuffer registro) {
+        try {
+            return aplicar(registro);
+        } catch (RuntimeException e) {
+            System.err.println("Bitácora: error al reproducir la mesa " + bitacora.obtenerMesa() + ": " + e);
+            return false;
         }
+    }
 
-        boolean teniaVida = jugador.tieneSecondChance();
-        boolean sobrevivio = jugador.intentarJalarCarta(carta);
+    // Devuelve false si la partida ya no seguía (se terminó sin llegar a anotar FIN)
+    boolean terminarReconstruccion() {
+        reproduciendo = false;
+        if (!partidaEnCurso) return false;
 
-        if (sobrevivio && teniaVida && !jugador.tieneSecondChance()) {
-            vista.mostrarSalvacionSecondChance(clientesEnSala, cliente.getNombreUsuario(), carta);
+        // Los humanos recuperan su asiento al volver; mientras tanto la mesa espera
+        for (String id : motor.obtenerAsientos()) {
+            if (!bots.containsKey(id)) asientoDeAusente.put(nombre(id), id);
         }
+        suspendida = true;
+        bitacora.retomar();
+        return true;
+    }
 
-        if (!sobrevivio) {
-            vista.mostrarBust(clientesEnSala, cliente.getNombreUsuario());
-            siguienteTurno();
-        } else {
-            if (calculadora.verificarFlip7(jugador.obtenerCartasEnMano())) {
-                vista.mostrarFlip7(clientesEnSala, cliente.getNombreUsuario());
-                finalizarRonda();
-                return;
-            }
-            vista.enviar(cliente, "Tu mano actual: " + jugador.obtenerCartasEnMano());
-            siguienteTurno();
+    /**
+     * Arma una partida desde su respaldo en partidas_activas (cuando la bitácora no la
+     * tenía). Queda suspendida como una reconstruida; null si ya no seguía. La bitácora
+     * la retoma como mesa nueva: su INICIO (sin asientos) y la instantánea.
+     */
+    static SesionJuego desdeRespaldo(String nombreSala, byte[] estado, Executor actor) throws IOException {
+        InstantaneaPartida instantanea = InstantaneaPartida.leer(estado);
+        SesionJuego sesion = new SesionJuego(new ArrayList<>(), List.of(), actor);
+        sesion.reproduciendo = true;
+        sesion.anotarInicio(nombreSala);
+        sesion.bitacora.instantanea(estado);
+        sesion.aplicarInstantanea(instantanea);
+        if (!sesion.terminarReconstruccion()) {
+            sesion.cerrar();
+            return null;
         }
+        return sesion;
     }
 
-    private void procesarCartaAccion(UnCliente cliente, Jugador jugador, Carta carta) {
-        String nombreCarta = carta.toString();
-        List<String> objetivosValidos = new ArrayList<>();
+    // Para RespaldoPartidas (corre en el actor de la sala): la instantánea si la partida
+    // cambió desde el último respaldo ('todas': aunque no), null si no hace falta
+    byte[] respaldoSiCambio(boolean todas) {
+        if (!partidaEnCurso || (!todas && cambios == cambiosRespaldados)) return null;
+        cambiosRespaldados = cambios;
+        return tomarInstantanea().bytes();
+    }
 
-        // Lógica de filtrado de objetivos (sin strings de UI)
-        if (nombreCarta.equals("Second Chance") && jugador.tieneSecondChance()) {
-            for (UnCliente c : clientesEnSala) {
-                if (c.getClienteID().equals(cliente.getClienteID())) continue;
-                Jugador j = jugadores.get(c.getClienteID());
-                if (!j.tieneBUST() && !j.sePlanto() && !j.tieneSecondChance()) {
-                    objetivosValidos.add(c.getNombreUsuario());
+    boolean estaEnCurso() { return partidaEnCurso; }
+    long obtenerMesa() { return bitacora.obtenerMesa(); }
+
+    // Una entrada de la bitácora; false si el motor no llegó a donde dice el registro
+    private boolean aplicar(ByteBuffer r) {
+        byte tipo = r.get();
+        switch (tipo) {
+            case BitacoraMesa.PREPARAR:
+                motor.prepararMesa();
+                return true;
+            case BitacoraMesa.RESTAURAR: {
+                String id = jugador(r);
+                int puntos = r.getInt();
+                int banderas = r.get();
+                List<Carta> mano = new ArrayList<>();
+                for (int n = r.get(); n > 0; n--) mano.add(Carta.desdeCodigo(r.get()));
+                motor.restaurarJugador(id, puntos, (banderas & 1) != 0, (banderas & 2) != 0,
+                        (banderas & 4) != 0, (banderas & 8) != 0, mano);
+                return true;
+            }
+            case BitacoraMesa.INICIAR:
+                motor.iniciarPartida();
+                return true;
+            case BitacoraMesa.REANUDAR:
+                motor.reanudarPartida(r.getInt());
+                return true;
+            case BitacoraMesa.PRESENTE:
+                motor.marcarPresente(jugador(r));
+                return true;
+            case BitacoraMesa.JALAR:
+                motor.jalar(jugador(r));
+                return true;
+            case BitacoraMesa.PARAR:
+                motor.parar(jugador(r));
+                return true;
+            case BitacoraMesa.USAR: {
+                String id = jugador(r);
+                motor.usar(id, jugador(r));
+                return true;
+            }
+            case BitacoraMesa.SALIDA:
+                motor.removerJugador(jugador(r));
+                return true;
+            case BitacoraMesa.PASO: {
+                Runnable paso = pasoPendiente;
+                pasoPendiente = null;
+                if (paso == null) return false;
+                pasoCorrio = false;
+                paso.run();
+                return pasoCorrio; // El motor lo habría descartado: ya no iba por ahí
+            }
+            case BitacoraMesa.BOT: {
+                String id = jugador(r);
+                bots.put(id, EstrategiaBot.desdeTexto(BitacoraMesa.leerTexto(r)));
+                motor.obtenerJugador(id).marcarPresente();
+                return true;
+            }
+            case BitacoraMesa.HUMANO:
+                bots.remove(jugador(r));
+                return true;
+            case BitacoraMesa.RONDA: {
+                int n = r.get();
+                boolean iguales = ultimaRonda != null && ultimaRonda.length == n;
+                for (int i = 0; i < n; i++) {
+                    int total = r.getInt();
+                    if (iguales && ultimaRonda[i] != total) iguales = false;
                 }
+                ultimaRonda = null;
+                return iguales;
             }
-        } 
-        else if (nombreCarta.equals("Freeze") || nombreCarta.equals("Flip Three")) {
-            for (UnCliente c : clientesEnSala) {
-                Jugador j = jugadores.get(c.getClienteID());
-                if (!j.sePlanto() && !j.tieneBUST()) {
-                    String nombre = c.getNombreUsuario();
-                    if (c.getClienteID().equals(cliente.getClienteID())) nombre += " [TU]";
-                    objetivosValidos.add(nombre);
+            case BitacoraMesa.INSTANTANEA: {
+                byte[] datos = new byte[r.getInt()];
+                r.get(datos);
+                try {
+                    aplicarInstantanea(InstantaneaPartida.leer(datos));
+                } catch (IOException e) {
+                    return false;
                 }
+                return true;
             }
+            case BitacoraMesa.FIN:
+                motor.terminar();
+                partidaEnCurso = false;
+                return true;
+            default:
+                return false;
         }
-        else if (nombreCarta.equals("Second Chance") && !jugador.tieneSecondChance()) {
-            jugador.setTieneSecondChance(true);
-            vista.mostrarObtencionSecondChance(clientesEnSala, cliente.getNombreUsuario());
-            siguienteTurno();
-            return;
-        }
+    }
 
-        // Si hay objetivos, mostramos el menú usando la Vista
-        if (!objetivosValidos.isEmpty()) {
-            this.accionPendiente = carta;
-            this.esperandoObjetivo = true;
-            vista.mostrarMenuSeleccionObjetivo(cliente, nombreCarta, objetivosValidos);
-        } else {
-            // Si no hay objetivos, se descarta y pasa turno
-            vista.mostrarMensajeGenerico(clientesEnSala, cliente.getNombreUsuario() + " sacó " + nombreCarta + " pero no hay objetivos. Se DESCARTA.");
-            siguienteTurno();
-        }
+    private String jugador(ByteBuffer r) {
+        return bitacora.idDe(r.get());
+    }
+
+    // El primero que vuelve despierta la mesa: los asientos que siguen vacíos los toma un bot
+    private void reanudarTrasRecuperacion() {
+        suspendida = false;
+        for (String id : motor.obtenerAsientos()) {
+            if (!bots.containsKey(id) && !clientePorId.containsKey(id)) cederAsientoABot(id);
+        }
+        Runnable paso = pasoPendiente;
+        pasoPendiente = null;
+        if (paso != null) programar(retrasoPendiente, paso);
+        despertarBot();
+        Metricas.incrementar("bitacora.partidasReanudadas");
     }
 
-    private void ejecutarAccionPendiente(UnCliente atacante, String nombreObjetivo) {
-        // Normalizamos quitando el [TÚ] si el usuario lo escribió
-        String nombreLimpio = nombreObjetivo.replace(" [TU]", "").trim();
-        
-        UnCliente clienteObj = buscarClientePorNombre(nombreLimpio);
+    // Si nadie volvió a una partida reconstruida, se cierra. Devuelve si la cerró
+    boolean descartarSiNadieVolvio() {
+        if (!suspendida) return false;
+        cerrar();
+        return true;
+    }
 
-        if (clienteObj == null) {
-            vista.mostrarAccionFallida(atacante, "Jugador no encontrado.");
-            return;
-        }
+    // El paso vence en el Temporizador y corre en el actor de la sala, con su propio lote.
+    // Mientras se reconstruye (o espera a sus jugadores) solo se guarda el último
+    private Future<?> programar(long retrasoMs, Runnable paso) {
+        if (reproduciendo || suspendida) {
+            pasoPendiente = paso;
+            retrasoPendiente = retrasoMs;
+            return new CompletableFuture<Void>();
+        }
+        return Temporizador.programar(retrasoMs, actor, () -> {
+            LoteSalida lote = LoteSalida.abrir();
+            try {
+                cambios++;
+                paso.run();
+            } finally {
+                lote.cerrar();
+            }
+        });
+    }
+
+    // --- Bots ---
+
+    private void programarBot(String id) {
+        if (reproduciendo || suspendida) return;
+        programar(pausaBotMs, () -> jugarBot(id));
+    }
 
-        Jugador objetivo = jugadores.get(clienteObj.getClienteID());
-        String nombreAccion = accionPendiente.toString();
+    // Si el motor espera una jugada de un bot, se la programa
+    private void despertarBot() {
+        String id = motor.estaEsperandoObjetivo() ? motor.obtenerIdConAccion() : motor.obtenerIdEnTurno();
+        if (id != null && bots.containsKey(id)) programarBot(id);
+    }
 
-        // Validaciones lógicas
-        if ((objetivo.sePlanto() || objetivo.tieneBUST()) && !nombreAccion.equals("Second Chance")) { // Second Chance lógica aparte
-             vista.mostrarAccionFallida(atacante, "El jugador no está activo.");
-             return;
+    // Hace lo que el motor espere de ese asiento, si todavía lo juega un bot
+    private void jugarBot(String id) {
+        EstrategiaBot estrategia = bots.get(id);
+        if (estrategia == null || !motor.estaJuegoIniciado() || motor.estaRevelandoFlipThree()) return;
+
+        long inicio = System.nanoTime();
+        if (id.equals(motor.obtenerIdConAccion())) {
+            String objetivo = estrategia.elegirObjetivo(id, motor.obtenerAccionPendiente(),
+                    motor.obtenerObjetivosPendientes(), motor);
+            Metricas.sumar("bots.decisionNanos", System.nanoTime() - inicio);
+            Metricas.incrementar("bots.jugadas");
+            bitacora.usar(id, objetivo);
+            motor.usar(id, objetivo);
+        } else if (!motor.estaEsperandoObjetivo() && id.equals(motor.obtenerIdEnTurno())) {
+            boolean jalar = estrategia.quiereJalar(motor.obtenerJugador(id), motor);
+            Metricas.sumar("bots.decisionNanos", System.nanoTime() - inicio);
+            Metricas.incrementar("bots.jugadas");
+            if (jalar) {
+                bitacora.jalar(id);
+                motor.jalar(id);
+            } else {
+                bitacora.parar(id);
+                motor.parar(id);
+            }
         }
-        if (nombreAccion.equals("Second Chance") && objetivo.tieneSecondChance()) {
-             vista.mostrarAccionFallida(atacante, "Ya tiene Second Chance.");
-             return;
+    }
+
+    private static EstrategiaBot estrategiaPorDefecto() {
+        try {
+            return EstrategiaBot.desdeTexto(ConfiguracionServidor.estrategiaBots());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ". Se usa 'optima'.");
+            return EstrategiaBot.optima();
         }
+    }
 
-        if (nombreAccion.equals("Flip Three")) {
-            this.flipThreeCartasRestantes = 3;
-            this.flipThreeObjetivo = objetivo;
-            this.flipThreeAtacante = atacante;
-            this.accionesAcumuladasFlipThree.clear();
-            this.esperandoObjetivo = false;
-            this.accionPendiente = null;
-            iniciarOReanudarFlipThree(atacante, objetivo);
-            return;
-        } 
-        
-        // Ejecución de Freeze o Second Chance
-        if (nombreAccion.equals("Second Chance")) manejadorAcciones.transferirSecondChance(objetivo);
-        else if (nombreAccion.equals("Freeze")) manejadorAcciones.aplicarFreeze(objetivo);
+    // --- Eventos del motor ---
 
-        vista.mostrarAccionEjecutada(clientesEnSala, nombreAccion, objetivo.obtenerNombreUsuario());
+    @Override
+    public void partidaIniciada() {
+        partidaEnCurso = true;
+        vista.mostrarInicioPartida(clientesEnSala);
+    }
+
+    @Override
+    public void rondaIniciada() {
+        vista.mostrarInicioRonda(clientesEnSala, 0); // Podríamos llevar cuenta de rondas
+    }
 
-        this.esperandoObjetivo = false;
-        this.accionPendiente = null;
+    @Override
+    public void turno(String id) {
+        vista.anunciarTurno(clientesEnSala, nombre(id), cliente(id), motor.obtenerJugador(id));
+        if (bots.containsKey(id)) programarBot(id);
+    }
 
-        if (this.flipThreeObjetivo != null) {
-            procesarSiguienteAccionAcumulada();
+    @Override
+    public void rondaTerminada(List<Jugador> enMesa, int[] puntosPorAsiento) {
+        // Los totales van en la bitácora para comprobar la reproducción ronda por ronda
+        int[] totales = new int[bitacora.asientosIniciales()];
+        for (int i = 0; i < totales.length; i++) {
+            Jugador j = motor.obtenerJugador(bitacora.idDe(i));
+            totales[i] = j != null ? j.obtenerPuntuacionTotal() : -1;
+        }
+        if (reproduciendo) {
+            ultimaRonda = totales;
         } else {
-            siguienteTurno();
+            bitacora.ronda(totales);
+            RespaldoPartidas.pedir(); // Fin de ronda: buen punto para respaldar
         }
+        vista.mostrarResultadosRonda(clientesEnSala, enMesa, puntosPorAsiento);
     }
 
-    private void iniciarOReanudarFlipThree(UnCliente atacante, Jugador objetivo) {
-        this.esperandoObjetivo = false;
-        this.accionPendiente = null;
-        if (this.flipThreeCartasRestantes == 3) this.accionesAcumuladasFlipThree.clear();
+    @Override
+    public void esperandoNuevaRonda(long esperaMs) {
+        vista.mostrarEsperaNuevaRonda(clientesEnSala, esperaMs / 1000);
+        // Si todos los humanos están AFK, los bots también cuentan como AFK: así el motor
+        // cierra la mesa al empezar la ronda en vez de dejar a los bots jugando solos
+        for (String id : motor.obtenerAsientos()) {
+            if (!bots.containsKey(id) && !motor.obtenerJugador(id).estaAfk()) return;
+        }
+        for (String id : bots.keySet()) motor.obtenerJugador(id).setAfk(true);
+    }
 
-        while (this.flipThreeCartasRestantes > 0 && !objetivo.tieneBUST()) {
-            
-            if (calculadora.verificarFlip7(objetivo.obtenerCartasEnMano())) {
-                vista.mostrarMensajeGenerico(clientesEnSala, "¡FLIP 7 conseguido durante Flip Three! Se detiene la secuencia.");
-                finalizarRonda();
-                return;
-            }
+    @Override
+    public void esperaTerminada() {
+        vista.mostrarMensajeGenerico(clientesEnSala, "¡Tiempo fuera! Preparando cartas...");
+    }
 
-            vista.mostrarEstadoFlipThree(clientesEnSala, objetivo.obtenerNombreUsuario(), this.flipThreeCartasRestantes);
+    @Override
+    public void juegoTerminado(String idGanador, int puntos) {
+        partidaEnCurso = false;
+        if (!reproduciendo) bitacora.fin();
+        vista.mostrarFinJuego(clientesEnSala, nombre(idGanador), puntos);
+    }
 
-            Carta carta = baraja.jalarCarta();
-            // ... lógica de baraja vacía omitida por brevedad, igual que antes ...
-            if (carta == null) break;
+    @Override
+    public void todosAfk() {
+        partidaEnCurso = false;
+        if (!reproduciendo) bitacora.fin();
+        vista.mostrarMensajeGenerico(clientesEnSala, "Todos los jugadores están AFK. La partida termina.");
+    }
 
-            this.flipThreeCartasRestantes--;
+    @Override
+    public void cartaJalada(String id, Carta carta) {
+        vista.mostrarCartaJalada(clientesEnSala, nombre(id), carta);
+    }
 
-            if (carta.obtenerTipo() == TipoCarta.ACCION) {
-                if (carta.toString().equals("Second Chance") && !objetivo.tieneSecondChance()) {
-                    objetivo.setTieneSecondChance(true);
-                    vista.mostrarObtencionSecondChance(clientesEnSala, objetivo.obtenerNombreUsuario());
-                } else {
-                    vista.mostrarMensajeGenerico(clientesEnSala, "Salió " + carta + ". Se guarda para después.");
-                    accionesAcumuladasFlipThree.add(carta);
-                }
-            } else {
-                vista.mostrarCartaFlipThree(clientesEnSala, carta);
-                boolean sobrevivio = objetivo.intentarJalarCarta(carta);
-                if (!sobrevivio) {
-                    vista.mostrarBust(clientesEnSala, objetivo.obtenerNombreUsuario());
-                    accionesAcumuladasFlipThree.clear();
-                    break;
-                }
-            }
+    @Override
+    public void manoCambiada(String id) {
+        UnCliente c = cliente(id);
+        if (c != null) vista.mostrarMano(c, motor.obtenerJugador(id));
+    }
 
-            try { Thread.sleep(TIEMPO_ENTRE_CARTAS_FLIP3); } catch (InterruptedException e) {}
-        }
+    @Override
+    public void bust(String id) {
+        vista.mostrarBust(clientesEnSala, nombre(id));
+    }
 
-        if (objetivo.tieneBUST()) {
-            this.flipThreeCartasRestantes = 0;
-            this.flipThreeObjetivo = null;
-            siguienteTurno();
+    @Override
+    public void flip7(String id, boolean duranteFlipThree) {
+        if (duranteFlipThree) {
+            vista.mostrarMensajeGenerico(clientesEnSala, "¡FLIP 7 conseguido durante Flip Three! Se detiene la secuencia.");
         } else {
-            if (!accionesAcumuladasFlipThree.isEmpty()) {
-                vista.mostrarMensajeGenerico(clientesEnSala, "Flip Three finalizado. Aplicando acciones acumuladas...");
-                procesarSiguienteAccionAcumulada();
-            } else {
-                vista.mostrarMensajeGenerico(clientesEnSala, "Flip Three finalizado limpio.");
-                this.flipThreeObjetivo = null;
-                siguienteTurno();
-            }
+            vista.mostrarFlip7(clientesEnSala, nombre(id));
         }
     }
 
-    private void procesarSiguienteAccionAcumulada() {
-        if (accionesAcumuladasFlipThree.isEmpty()) {
-            this.flipThreeObjetivo = null;
-            this.flipThreeAtacante = null;
-            siguienteTurno();
-            return;
-        }
+    @Override
+    public void plantado(String id, int puntos) {
+        vista.mostrarPlantarse(clientesEnSala, nombre(id), puntos);
+    }
 
-        Carta cartaAccion = accionesAcumuladasFlipThree.remove(0);
-        
-        // El dueño de las acciones acumuladas es quien recibió el Flip Three (el objetivo original)
-        UnCliente dueno = buscarClientePorNombre(flipThreeObjetivo.obtenerNombreUsuario());
-        
-        if (dueno != null) {
-            // Tratamos la carta como si el jugador la acabara de sacar
-            procesarCartaAccion(dueno, flipThreeObjetivo, cartaAccion);
-        }
+    @Override
+    public void secondChanceObtenida(String id) {
+        vista.mostrarObtencionSecondChance(clientesEnSala, nombre(id));
+    }
+
+    @Override
+    public void secondChanceUsada(String id, Carta carta) {
+        vista.mostrarSalvacionSecondChance(clientesEnSala, nombre(id), carta);
     }
 
-    private void accionParar(UnCliente cliente, Jugador jugador) {
-        jugador.plantarse();
-        int puntos = calculadora.calcularPuntuacion(jugador.obtenerCartasEnMano());
-        vista.mostrarPlantarse(clientesEnSala, cliente.getNombreUsuario(), puntos);
-        siguienteTurno();
+    @Override
+    public void descarteRebarajeado() {
+        vista.mostrarMensajeGenerico(clientesEnSala, "¡Se acabó la baraja! Barajeando descarte...");
     }
 
-    private void siguienteTurno() {
-        if (verificarFinDeRonda()) {
-            finalizarRonda();
+    @Override
+    public void mazoAgotado() {
+        vista.mostrarMensajeGenerico(clientesEnSala, "Error: No quedan cartas en el mazo ni en el descarte. Finalizando ronda...");
+    }
+
+    @Override
+    public void eligeObjetivo(String id, Carta accion, List<String> idsObjetivo) {
+        if (bots.containsKey(id)) {
+            programarBot(id);
             return;
         }
-        int intentos = 0;
-        do {
-            indiceTurnoActual = (indiceTurnoActual + 1) % clientesEnSala.size();
-            UnCliente proximo = clientesEnSala.get(indiceTurnoActual);
-            Jugador jProximo = jugadores.get(proximo.getClienteID());
+        UnCliente atacante = cliente(id);
+        if (atacante == null) return;
+        List<String> nombres = new ArrayList<>(idsObjetivo.size());
+        for (String idObjetivo : idsObjetivo) {
+            String nombre = nombre(idObjetivo);
+            if (idObjetivo.equals(id)) nombre += " [TU]";
+            nombres.add(nombre);
+        }
+        vista.mostrarMenuSeleccionObjetivo(atacante, accion.toString(), nombres);
+    }
 
-            if (!jProximo.tieneBUST() && !jProximo.sePlanto()) {
-                anunciarTurno();
-                return;
-            }
-            intentos++;
-        } while (intentos < clientesEnSala.size());
-        finalizarRonda();
+    @Override
+    public void accionSinObjetivo(String id, Carta accion) {
+        vista.mostrarMensajeGenerico(clientesEnSala, nombre(id) + " sacó " + accion + " pero no hay objetivos. Se DESCARTA.");
     }
 
-    private boolean verificarFinDeRonda() {
-        for (Jugador j : jugadores.values()) {
-            if (!j.tieneBUST() && !j.sePlanto()) return false;
-        }
-        return true;
+    @Override
+    public void accionFallida(String id, String motivo) {
+        UnCliente atacante = cliente(id);
+        if (atacante != null) vista.mostrarAccionFallida(atacante, motivo);
     }
 
-    private void finalizarRonda() {
-        Jugador ganadorDelJuego = null;
-        int maxPuntuacionGlobal = -1;
-        StringBuilder resumen = new StringBuilder("Resultados:\n");
+    @Override
+    public void accionEjecutada(Carta accion, String idObjetivo) {
+        vista.mostrarAccionEjecutada(clientesEnSala, accion.toString(), nombre(idObjetivo));
+    }
 
-        for (UnCliente c : clientesEnSala) {
-            Jugador j = jugadores.get(c.getClienteID());
-            int puntosRonda = j.tieneBUST() ? 0 : calculadora.calcularPuntuacion(j.obtenerCartasEnMano());
-            j.sumarPuntos(puntosRonda);
-            
-            resumen.append(" -> ").append(c.getNombreUsuario())
-                   .append(": +").append(puntosRonda)
-                   .append(" (Total: ").append(j.obtenerPuntuacionTotal()).append(")\n");
+    @Override
+    public void accionDescartada(Carta accion) {
+        vista.mostrarMensajeGenerico(clientesEnSala, "Ningún objetivo es válido. Se DESCARTA la carta.");
+    }
 
-            if (j.obtenerPuntuacionTotal() >= 200 && j.obtenerPuntuacionTotal() > maxPuntuacionGlobal) {
-                maxPuntuacionGlobal = j.obtenerPuntuacionTotal();
-                ganadorDelJuego = j;
-            }
-        }
+    @Override
+    public void flipThreeJalando(String idObjetivo, int restantes) {
+        vista.mostrarEstadoFlipThree(clientesEnSala, nombre(idObjetivo), restantes);
+    }
 
-        vista.mostrarResultadosRonda(clientesEnSala, resumen.toString());
-        juegoIniciado = false;
+    @Override
+    public void cartaFlipThree(Carta carta) {
+        vista.mostrarCartaFlipThree(clientesEnSala, carta);
+    }
 
-        if (ganadorDelJuego != null) {
-            vista.mostrarFinJuego(clientesEnSala, ganadorDelJuego.obtenerNombreUsuario(), maxPuntuacionGlobal);
-        } else {
-            vista.mostrarEsperaNuevaRonda(clientesEnSala);
-            new Thread(() -> {
-                try {
-                    Thread.sleep(TIEMPO_ESPERA_NUEVA_RONDA);
-                    vista.mostrarMensajeGenerico(clientesEnSala, "¡Tiempo fuera! Preparando cartas...");
-                    iniciarSiguienteRonda();
-                } catch (InterruptedException e) { e.printStackTrace(); }
-            }).start();
-        }
+    @Override
+    public void accionGuardadaFlipThree(Carta accion) {
+        vista.mostrarMensajeGenerico(clientesEnSala, "Salió " + accion + ". Se guarda para después.");
     }
 
-    private void anunciarTurno() {
-        if (clientesEnSala.isEmpty()) return;
-        if (indiceTurnoActual >= clientesEnSala.size()) indiceTurnoActual = 0;
+    @Override
+    public void flipThreeTerminado(boolean hayAccionesGuardadas) {
+        vista.mostrarMensajeGenerico(clientesEnSala, hayAccionesGuardadas
+                ? "Flip Three finalizado. Aplicando acciones acumuladas..."
+                : "Flip Three finalizado limpio.");
+    }
 
-        UnCliente actual = clientesEnSala.get(indiceTurnoActual);
-        Jugador jActual = jugadores.get(actual.getClienteID());
-        
-        vista.anunciarTurno(clientesEnSala, actual, jActual);
+    @Override
+    public void tiempoAgotado(String id) {
+        Metricas.incrementar("turnos.expirados");
+        vista.mostrarMensajeGenerico(clientesEnSala, "Se acabó el tiempo de " + nombre(id) + ". Se planta automáticamente.");
     }
 
-    public synchronized void removerJugador(UnCliente cliente) {
-        if (!juegoIniciado) {
-            clientesEnSala.remove(cliente);
-            jugadores.remove(cliente.getClienteID());
-            vista.mostrarMensajeGenerico(clientesEnSala, cliente.getNombreUsuario() + " ha abandonado la sala.");
-            return;
-        }
+    @Override
+    public void tiempoObjetivoAgotado(String id) {
+        Metricas.incrementar("turnos.objetivosExpirados");
+        vista.mostrarMensajeGenerico(clientesEnSala, "Se acabó el tiempo de " + nombre(id) + " para elegir objetivo. Se elige automáticamente.");
+    }
 
-        vista.mostrarMensajeGenerico(clientesEnSala, "¡" + cliente.getNombreUsuario() + " abandonó la partida!");
-        int indiceSeVa = clientesEnSala.indexOf(cliente);
-        if (indiceSeVa == -1) return;
+    @Override
+    public void marcadoAfk(String id) {
+        Metricas.incrementar("turnos.afk");
+        vista.mostrarMensajeGenerico(clientesEnSala, nombre(id)
+                + " queda como AFK: sus turnos se saltarán hasta que vuelva a escribir.");
+    }
 
-        boolean eraSuTurno = (indiceSeVa == indiceTurnoActual);
-        clientesEnSala.remove(indiceSeVa);
-        jugadores.remove(cliente.getClienteID());
+    @Override
+    public void volvioDeAfk(String id) {
+        // Hay un humano otra vez: los bots que se marcaron AFK con la mesa vuelven a jugar
+        for (String idBot : bots.keySet()) motor.obtenerJugador(idBot).marcarPresente();
+        vista.mostrarMensajeGenerico(clientesEnSala, nombre(id) + " volvió. Ya no está AFK.");
+    }
 
-        if (clientesEnSala.size() == 1) {
-            UnCliente ganador = clientesEnSala.get(0);
-            vista.mostrarMensajeGenerico(clientesEnSala, "\n¡VICTORIA POR ABANDONO! EL GANADOR ES: " + ganador.getNombreUsuario());
-            juegoIniciado = false;
-            return;
+    @Override
+    public void turnoSaltadoAfk(String id) {
+        vista.mostrarMensajeGenerico(clientesEnSala, nombre(id) + " está AFK. Se salta su turno y se planta.");
+    }
+
+    @Override
+    public void comandoRechazado(String id, String motivo) {
+        UnCliente c = cliente(id);
+        if (c != null) vista.enviar(c, motivo);
+    }
+
+    @Override
+    public void jugadorSalio(String id, boolean enPartida) {
+        UnCliente seVa = cliente(id);
+        if (seVa == null) return;
+        clientePorId.remove(id);
+        if (enPartida) {
+            // Se entera también quien se va; después deja de recibir
+            vista.mostrarMensajeGenerico(clientesEnSala, "¡" + seVa.getNombreUsuario() + " abandonó la partida!");
+            clientesEnSala.remove(seVa);
+        } else {
+            clientesEnSala.remove(seVa);
+            vista.mostrarMensajeGenerico(clientesEnSala, seVa.getNombreUsuario() + " ha abandonado la sala.");
         }
+    }
+
+    @Override
+    public void victoriaPorAbandono(String idGanador) {
+        partidaEnCurso = false;
+        if (!reproduciendo) bitacora.fin();
+        vista.mostrarMensajeGenerico(clientesEnSala, "\n¡VICTORIA POR ABANDONO! EL GANADOR ES: " + nombre(idGanador));
+    }
 
-        if (indiceSeVa < indiceTurnoActual) indiceTurnoActual--;
-        if (indiceTurnoActual >= clientesEnSala.size()) indiceTurnoActual = 0;
+    @Override
+    public void pasoProgramado() {
+        if (reproduciendo) pasoCorrio = true;
+        else bitacora.paso();
+    }
+
+    @Override
+    public void turnoPasaPorSalida() {
+        vista.mostrarMensajeGenerico(clientesEnSala, "El jugador actual se fue. Pasando turno...");
+    }
 
-        if (eraSuTurno) {
-            vista.mostrarMensajeGenerico(clientesEnSala, "El jugador actual se fue. Pasando turno...");
-            anunciarTurno();
+    // --- Ids del motor a clientes ---
+
+    // null si el asiento lo juega un bot
+    private UnCliente cliente(String id) {
+        return clientePorId.get(id);
+    }
+
+    // El asiento de un cliente no siempre lleva su id: pudo recuperarlo desde otra conexión
+    private String idDe(UnCliente c) {
+        for (Map.Entry<String, UnCliente> e : clientePorId.entrySet()) {
+            if (e.getValue() == c) return e.getKey();
         }
+        return c.getClienteID(); // Sin asiento: el motor no lo conoce
     }
-    
-    private UnCliente buscarClientePorNombre(String nombre) {
-        for (UnCliente c : clientesEnSala) {
-            if (c.getNombreUsuario().equalsIgnoreCase(nombre)) return c;
+
+    private String nombre(String id) {
+        Jugador j = motor.obtenerJugador(id);
+        if (j != null) return j.obtenerNombreUsuario();
+        UnCliente c = cliente(id);
+        return c != null ? c.getNombreUsuario() : id;
+    }
+
+    private String asientoPorNombre(String nombre) {
+        for (Map.Entry<String, Jugador> e : motor.obtenerJugadores().entrySet()) {
+            if (e.getValue().obtenerNombreUsuario().equalsIgnoreCase(nombre)) return e.getKey();
         }
         return null;
     }
 
-    public boolean estaJuegoIniciado() { return juegoIniciado; }
-}
\ No newline at end of file
+    private List<String> nombresAsientos() {
+        List<String> nombres = new ArrayList<>();
+        for (String id : motor.obtenerAsientos()) nombres.add(motor.obtenerJugador(id).obtenerNombreUsuario());
+        return nombres;
+    }
+
+    private static long semillaNueva() {
+        Long fija = ConfiguracionServidor.semillaJuego();
+        return fija != null ? fija : ThreadLocalRandom.current().nextLong();
+    }
+
+    public long getSemilla() { return motor.obtenerSemilla(); }
+
+    public boolean estaJuegoIniciado() { return motor.estaJuegoIniciado(); }
+}
@@ -0,0 +1,394 @@
+package com.servidormulti.Flip7;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Juega muchas partidas completas de bots con MotorFlip7 para medir reglas y estrategias
+ * (la meta de 200, el bono de Flip 7, la composición de la baraja) en vez de adivinar.
+ *
+ * Cada hilo tiene su mesa: un motor, sus bots y una cola de pasos que se reutilizan
+ * partida tras partida, y su propio azar (el motor siembra una vez y sigue). Al final
+ * se juntan los resultados de todos los hilos. Con la misma semilla y el mismo número
+ * de hilos sale exactamente lo mismo.
+ *
+ * Uso:
+ *   java -cp target/classes -Dsimulacion.partidas=1000000 \
+ *        -Dsimulacion.estrategias=umbral:20,umbral:30,cartas:5 com.servidormulti.Flip7.SimuladorFlip7
+ * Otras propiedades: simulacion.hilos, simulacion.semilla, simulacion.meta (puntos para ganar),
+ * simulacion.bonoFlip7 y simulacion.baraja: cambios a la baraja estándar como
+ * código:cantidad, por ejemplo "12:0,16:2" (sin doces y con dos x2; ver Carta para los códigos).
+ */
+public class SimuladorFlip7 {
+
+    // Cubetas de 10 puntos; la última junta todo lo que pasa de ahí
+    private static final int CUBETAS_RONDA = 11;   // 0-9 ... 100+
+    private static final int CUBETAS_FINAL = 16;   // 200-209 ... 350+ (con meta 200)
+
+    public static void main(String[] args) throws Exception {
+        long partidas = Long.getLong("simulacion.partidas", 1_000_000L);
+        int hilos = Integer.getInteger("simulacion.hilos", Runtime.getRuntime().availableProcessors());
+        int meta = Integer.getInteger("simulacion.meta", MotorFlip7.PUNTOS_PARA_GANAR);
+        int bono = Integer.getInteger("simulacion.bonoFlip7", CalculadorPuntuacion.BONO_FLIP7);
+        Long fija = Long.getLong("simulacion.semilla");
+        long semilla = fija != null ? fija : ThreadLocalRandom.current().nextLong();
+
+        List<EstrategiaBot> estrategias = new ArrayList<>();
+        for (String texto : System.getProperty("simulacion.estrategias", "umbral:20,umbral:25,umbral:30,cartas:5").split(",")) {
+            estrategias.add(EstrategiaBot.desdeTexto(texto));
+        }
+        if (estrategias.size() < 2) {
+            System.err.println("Se necesitan al menos dos estrategias (una por asiento).");
+            return;
+        }
+
+        MotorFlip7.Reglas reglas;
+        try {
+            reglas = new MotorFlip7.Reglas(bono, composicion(System.getProperty("simulacion.baraja", "")));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Baraja no válida: " + e.getMessage());
+            return;
+        }
+        int cartas = 0;
+        for (int cuenta : reglas.composicionPorCodigo()) cartas += cuenta;
+
+        System.out.println("Simulando " + partidas + " partidas en " + hilos + " hilos, semilla " + semilla + ", meta " + meta
+                + ", bono " + bono + ", " + cartas + " cartas");
+        long inicio = System.nanoTime();
+        Resultados r = simular(estrategias, partidas, hilos, semilla, meta, reglas);
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        r.imprimir(System.out);
+        System.out.printf("%n%.1f s, %.0f partidas/minuto%n", segundos, r.partidas / segundos * 60);
+    }
+
+    // "código:cantidad,..." sobre la baraja estándar; IllegalArgumentException si no se entiende
+    private static int[] composicion(String cambios) {
+        int[] cuentas = Baraja.composicionPorCodigo();
+        for (String cambio : cambios.split(",")) {
+            if (cambio.isBlank()) continue;
+            String[] partes = cambio.trim().split(":");
+            try {
+                int codigo = Integer.parseInt(partes[0]);
+                if (codigo < 1 || codigo > Carta.MAX_CODIGO) {
+                    throw new IllegalArgumentException("Código de carta fuera de 1-" + Carta.MAX_CODIGO + ": " + cambio);
+                }
+                cuentas[codigo] = Integer.parseInt(partes[1]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Se esperaba código:cantidad, llegó '" + cambio + "'");
+            }
+        }
+        return cuentas;
+    }
+
+    // Una estrategia por asiento; las partidas se reparten parejas entre los hilos
+    public static Resultados simular(List<EstrategiaBot> estrategias, long partidas, int hilos,
+                                     long semilla, int meta, MotorFlip7.Reglas reglas) throws Exception {
+        SplittableRandom raiz = new SplittableRandom(semilla);
+        List<Callable<Resultados>> lotes = new ArrayList<>(hilos);
+        for (int h = 0; h < hilos; h++) {
+            long cuantas = partidas / hilos + (h < partidas % hilos ? 1 : 0);
+            long semillaHilo = raiz.nextLong();
+            lotes.add(() -> new Mesa(estrategias, semillaHilo, meta, reglas).jugar(cuantas));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(hilos);
+        try {
+            Resultados total = new Resultados(estrategias, meta);
+            for (Future<Resultados> f : pool.invokeAll(lotes)) {
+                total.combinar(f.get());
+            }
+            return total;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Lo que se cuenta en la simulación; cada hilo llena el suyo y al final se suman. */
+    public static final class Resultados {
+        private final String[] estrategiaPorAsiento;
+        private final int meta;
+        long partidas;
+        long atascadas; // Partidas que el motor dejó sin terminar (no debería pasar)
+        long rondas;
+        long rebarajeos; // Veces que se acabó el mazo y se rebarajeó el descarte
+        // Por cantidad de números distintos en mano al jalar una numérica (0-6)
+        final long[] jalonesPorTamano = new long[7];
+        final long[] bustsPorTamano = new long[7];
+        final long[] victoriasPorAsiento;
+        final long[] puntosRonda = new long[CUBETAS_RONDA];
+        final long[] puntosFinales = new long[CUBETAS_FINAL];
+        long sumaPuntosGanador;
+
+        Resultados(List<EstrategiaBot> estrategias, int meta) {
+            this.meta = meta;
+            estrategiaPorAsiento = new String[estrategias.size()];
+            for (int i = 0; i < estrategiaPorAsiento.length; i++) {
+                estrategiaPorAsiento[i] = estrategias.get(i).nombre();
+            }
+            victoriasPorAsiento = new long[estrategiaPorAsiento.length];
+        }
+
+        void combinar(Resultados otro) {
+            partidas += otro.partidas;
+            atascadas += otro.atascadas;
+            rondas += otro.rondas;
+            rebarajeos += otro.rebarajeos;
+            sumaPuntosGanador += otro.sumaPuntosGanador;
+            sumar(jalonesPorTamano, otro.jalonesPorTamano);
+            sumar(bustsPorTamano, otro.bustsPorTamano);
+            sumar(victoriasPorAsiento, otro.victoriasPorAsiento);
+            sumar(puntosRonda, otro.puntosRonda);
+            sumar(puntosFinales, otro.puntosFinales);
+        }
+
+        private static void sumar(long[] a, long[] b) {
+            for (int i = 0; i < a.length; i++) a[i] += b[i];
+        }
+
+        public long getPartidas() { return partidas; }
+
+        public long getAtascadas() { return atascadas; }
+
+        public long getRebarajeos() { return rebarajeos; }
+
+        public double rondasPorPartida() {
+            return partidas == 0 ? 0 : (double) rondas / partidas;
+        }
+
+        // Probabilidad de BUST al jalar una numérica con 'tamano' números distintos en mano
+        public double tasaBust(int tamano) {
+            return jalonesPorTamano[tamano] == 0 ? 0 : (double) bustsPorTamano[tamano] / jalonesPorTamano[tamano];
+        }
+
+        // Una misma estrategia en varios asientos se cuenta junta
+        public Map<String, Double> tasaVictoriaPorEstrategia() {
+            Map<String, long[]> cuentas = new LinkedHashMap<>(); // nombre -> {victorias, asientos}
+            for (int i = 0; i < estrategiaPorAsiento.length; i++) {
+                long[] c = cuentas.computeIfAbsent(estrategiaPorAsiento[i], k -> new long[2]);
+                c[0] += victoriasPorAsiento[i];
+                c[1]++;
+            }
+            Map<String, Double> tasas = new LinkedHashMap<>();
+            long terminadas = partidas - atascadas;
+            for (Map.Entry<String, long[]> e : cuentas.entrySet()) {
+                long[] c = e.getValue();
+                tasas.put(e.getKey(), terminadas == 0 ? 0 : (double) c[0] / (terminadas * c[1]));
+            }
+            return tasas;
+        }
+
+        public void imprimir(PrintStream salida) {
+            salida.printf("%nPartidas: %d (sin terminar: %d)%n", partidas, atascadas);
+            salida.printf("Rondas por partida: %.2f%n", rondasPorPartida());
+            salida.printf("Rebarajeos por partida: %.2f%n", partidas == 0 ? 0.0 : (double) rebarajeos / partidas);
+            long terminadas = partidas - atascadas;
+            salida.printf("Puntos del ganador (promedio): %.1f%n",
+                    terminadas == 0 ? 0.0 : (double) sumaPuntosGanador / terminadas);
+
+            salida.println("\nBUST por números distintos en mano:");
+            for (int k = 0; k < jalonesPorTamano.length; k++) {
+                salida.printf("  %d: %6.2f%%  (%d jalones)%n", k, 100 * tasaBust(k), jalonesPorTamano[k]);
+            }
+
+            salida.println("\nVictorias por estrategia (por asiento):");
+            for (Map.Entry<String, Double> e : tasaVictoriaPorEstrategia().entrySet()) {
+                salida.printf("  %-12s %6.2f%%%n", e.getKey(), 100 * e.getValue());
+            }
+
+            salida.println("\nPuntos por ronda de cada jugador:");
+            imprimirHistograma(salida, puntosRonda, 0);
+            salida.println("\nPuntos finales del ganador:");
+            imprimirHistograma(salida, puntosFinales, meta);
+        }
+
+        private static void imprimirHistograma(PrintStream salida, long[] cubetas, int desde) {
+            long total = 0;
+            for (long c : cubetas) total += c;
+            for (int i = 0; i < cubetas.length; i++) {
+                int de = desde + i * 10;
+                String rango = i == cubetas.length - 1 ? de + "+" : de + "-" + (de + 9);
+                salida.printf("  %-8s %6.2f%%%n", rango, total == 0 ? 0.0 : 100.0 * cubetas[i] / total);
+            }
+        }
+    }
+
+    /**
+     * La mesa de un hilo. Los pasos que el motor programa (cartas del Flip Three, la
+     * espera entre rondas) van a una cola y se corren en orden, sin esperar; los bots
+     * juegan cuando la cola está vacía. Así la pila no crece con la partida.
+     *
+     * Visible en el paquete para MotorFlip7Test, que revisa el motor tras cada paso.
+     */
+    static final class Mesa implements OyenteJuego, Programador {
+
+        private final List<EstrategiaBot> bots;
+        private final MotorFlip7 motor;
+        private final Map<String, Integer> asientoDe = new LinkedHashMap<>();
+        private final ArrayDeque<FutureTask<?>> pasos = new ArrayDeque<>();
+        private final Resultados resultados;
+        private final int meta;
+        private Runnable trasCadaPaso = () -> { };
+
+        // Lo que el motor espera de algún bot
+        private String idEnTurno;
+        private String idEligiendo;
+        private Carta accionPorElegir;
+        private List<String> objetivosPorElegir;
+        private int objetivoDeRespaldo; // -1 = lo elige la estrategia; si falla, se prueban en orden
+
+        private String idFlipThree; // Quién recibe las cartas del Flip Three en curso
+        private int tamanoUltimoJalon;
+
+        Mesa(List<EstrategiaBot> bots, long semilla, int meta, MotorFlip7.Reglas reglas) {
+            this.bots = bots;
+            this.meta = meta;
+            this.resultados = new Resultados(bots, meta);
+            this.motor = new MotorFlip7(semilla, MotorFlip7.Tiempos.sinEsperas(), reglas, this, this);
+            motor.fijarPuntosParaGanar(meta);
+            for (int i = 0; i < bots.size(); i++) {
+                String id = String.valueOf(i);
+                motor.agregarJugador(id, bots.get(i).nombre() + "#" + i);
+                asientoDe.put(id, i);
+            }
+        }
+
+        // Corre después de iniciar cada partida y de cada paso (de la cola o de un bot)
+        void alCadaPaso(Runnable revision) {
+            this.trasCadaPaso = revision;
+        }
+
+        MotorFlip7 motor() {
+            return motor;
+        }
+
+        Resultados jugar(long partidas) {
+            for (long p = 0; p < partidas; p++) {
+                jugarPartida();
+            }
+            return resultados;
+        }
+
+        private void jugarPartida() {
+            idEnTurno = null;
+            idEligiendo = null;
+            motor.iniciarPartida();
+            trasCadaPaso.run();
+            while (true) {
+                FutureTask<?> paso = pasos.poll();
+                if (paso != null) {
+                    paso.run(); // Si se canceló no hace nada
+                } else if (idEligiendo != null) {
+                    String quien = idEligiendo;
+                    idEligiendo = null;
+                    String objetivo = objetivoDeRespaldo < 0
+                            ? bot(quien).elegirObjetivo(quien, accionPorElegir, objetivosPorElegir, motor)
+                            : objetivosPorElegir.get(objetivoDeRespaldo);
+                    motor.usar(quien, objetivo);
+                } else if (idEnTurno != null) {
+                    String quien = idEnTurno;
+                    idEnTurno = null;
+                    if (bot(quien).quiereJalar(motor.obtenerJugador(quien), motor)) motor.jalar(quien);
+                    else motor.parar(quien);
+                } else {
+                    break;
+                }
+                trasCadaPaso.run();
+            }
+            resultados.partidas++;
+            if (motor.estaJuegoIniciado()) {
+                resultados.atascadas++;
+                motor.terminar();
+            }
+        }
+
+        private EstrategiaBot bot(String id) {
+            return bots.get(asientoDe.get(id));
+        }
+
+        // --- Programador: todo a la cola, sin esperas ---
+
+        @Override
+        public Future<?> programar(long retrasoMs, Runnable paso) {
+            FutureTask<?> tarea = new FutureTask<>(paso, null);
+            pasos.add(tarea);
+            return tarea;
+        }
+
+        // --- Eventos que se cuentan ---
+
+        @Override
+        public void turno(String id) {
+            idEnTurno = id;
+        }
+
+        @Override
+        public void eligeObjetivo(String id, Carta accion, List<String> idsObjetivo) {
+            idEligiendo = id;
+            accionPorElegir = accion;
+            objetivosPorElegir = idsObjetivo;
+            objetivoDeRespaldo = -1;
+        }
+
+        @Override
+        public void accionFallida(String id, String motivo) {
+            // La estrategia eligió mal: se prueban los que el motor ofreció
+            if (++objetivoDeRespaldo < objetivosPorElegir.size()) idEligiendo = id;
+        }
+
+        @Override
+        public void descarteRebarajeado() {
+            resultados.rebarajeos++;
+        }
+
+        @Override
+        public void cartaJalada(String id, Carta carta) {
+            if (carta.obtenerTipo() == TipoCarta.NUMERICA) contarJalon(id);
+        }
+
+        @Override
+        public void flipThreeJalando(String idObjetivo, int restantes) {
+            idFlipThree = idObjetivo;
+        }
+
+        @Override
+        public void cartaFlipThree(Carta carta) {
+            if (carta.obtenerTipo() == TipoCarta.NUMERICA) contarJalon(idFlipThree);
+        }
+
+        private void contarJalon(String id) {
+            tamanoUltimoJalon = Integer.bitCount(motor.obtenerJugador(id).obtenerMascaraValores());
+            resultados.jalonesPorTamano[tamanoUltimoJalon]++;
+        }
+
+        @Override
+        public void bust(String id) {
+            resultados.bustsPorTamano[tamanoUltimoJalon]++;
+        }
+
+        @Override
+        public void rondaTerminada(List<Jugador> enMesa, int[] puntosPorAsiento) {
+            resultados.rondas++;
+            for (int puntos : puntosPorAsiento) {
+                resultados.puntosRonda[Math.min(puntos / 10, CUBETAS_RONDA - 1)]++;
+            }
+        }
+
+        @Override
+        public void juegoTerminado(String idGanador, int puntos) {
+            resultados.victoriasPorAsiento[asientoDe.get(idGanador)]++;
+            resultados.sumaPuntosGanador += puntos;
+            resultados.puntosFinales[Math.min(Math.max(puntos - meta, 0) / 10, CUBETAS_FINAL - 1)]++;
+        }
+    }
+}
@@ -1,24 +1,98 @@
 package com.servidormulti.Flip7;
 
+import com.servidormulti.ProtocoloBinario;
+import com.servidormulti.Trama;
 import com.servidormulti.UnCliente;
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 public class VistaJuego {
 
+    // Nombres por asiento del motor, bots incluidos: los asientos del protocolo binario
+    private final Supplier<List<String>> asientos;
+
+    // Clientes binarios que ya tienen la MESA actual (asiento -> nombre)
+    private final Set<UnCliente> conMesa = new HashSet<>();
+    private List<String> mesaEnviada = new ArrayList<>();
+
+    public VistaJuego(Supplier<List<String>> asientos) {
+        this.asientos = asientos;
+    }
+
     // --- MÉTODOS BASE DE COMUNICACIÓN ---
 
     public void broadcast(List<UnCliente> clientes, String mensaje) {
+        Trama trama = Trama.de(mensaje); // Se codifica una vez para toda la mesa
         for (UnCliente c : clientes) {
-            enviar(c, mensaje);
+            c.enviar(trama);
         }
     }
 
     public void enviar(UnCliente c, String mensaje) {
-        try {
-            c.getSalida().writeUTF(mensaje);
-        } catch (IOException e) { /* Ignorar errores de socket aquí */ }
+        c.enviar(mensaje); // Solo encola: un jugador lento no detiene la partida
+    }
+
+    // Evento con dos formas: la frase solo se arma si algún cliente usa texto,
+    // y el mensaje binario solo si alguno usa ProtocoloBinario
+    private void difundir(List<UnCliente> clientes, Supplier<String> texto, Supplier<Trama> binario) {
+        Trama tramaTexto = null;
+        Trama tramaBinaria = null;
+        for (UnCliente c : clientes) {
+            if (c.usaProtocoloBinario()) {
+                if (tramaBinaria == null) {
+                    asegurarMesa(clientes);
+                    tramaBinaria = binario.get();
+                }
+                c.enviar(tramaBinaria);
+            } else {
+                if (tramaTexto == null) tramaTexto = Trama.de(texto.get());
+                c.enviar(tramaTexto);
+            }
+        }
+    }
+
+    // Partes del evento que el cliente binario arma por su cuenta
+    private void broadcastTexto(List<UnCliente> clientes, String mensaje) {
+        Trama trama = null;
+        for (UnCliente c : clientes) {
+            if (c.usaProtocoloBinario()) continue;
+            if (trama == null) trama = Trama.de(mensaje);
+            c.enviar(trama);
+        }
+    }
+
+    // Manda la MESA a quien no la tenga; si alguien se fue, los asientos cambian y se reenvía
+    private void asegurarMesa(List<UnCliente> clientes) {
+        List<String> nombres = asientos.get();
+        if (!nombres.equals(mesaEnviada)) {
+            mesaEnviada = nombres;
+            conMesa.clear();
+        }
+        Trama mesa = null;
+        for (UnCliente c : clientes) {
+            if (!c.usaProtocoloBinario() || conMesa.contains(c)) continue;
+            if (mesa == null) {
+                ProtocoloBinario m = ProtocoloBinario.mensaje(ProtocoloBinario.MESA).entero(nombres.size());
+                for (String nombre : nombres) m.texto(nombre);
+                mesa = m.trama();
+            }
+            c.enviar(mesa);
+            conMesa.add(c);
+        }
+    }
+
+    private int asiento(String nombre) {
+        return asientos.get().indexOf(nombre);
+    }
+
+    private static Trama mano(int tipo, List<Carta> cartas) {
+        ProtocoloBinario m = ProtocoloBinario.mensaje(tipo).entero(cartas.size());
+        for (Carta carta : cartas) m.entero(carta.obtenerCodigo());
+        return m.trama();
     }
 
     // --- MÉTODOS DE ESTADO DEL JUEGO ---
@@ -33,25 +107,46 @@ public class VistaJuego {
         broadcast(clientes, "\n--- INICIANDO SIGUIENTE RONDA ---");
     }
 
-    public void anunciarTurno(List<UnCliente> clientes, UnCliente actual, Jugador jugadorActual) {
+    // 'actual' es null si el asiento lo juega un bot: solo se anuncia
+    public void anunciarTurno(List<UnCliente> clientes, String nombre, UnCliente actual, Jugador jugadorActual) {
         if (clientes.isEmpty()) return;
-        broadcast(clientes, "\n>>> Turno de: " + actual.getNombreUsuario() + " <<<");
+        int asiento = asiento(nombre);
+        difundir(clientes,
+                () -> "\n>>> Turno de: " + nombre + " <<<",
+                () -> ProtocoloBinario.mensaje(ProtocoloBinario.TURNO).entero(asiento).trama());
+        if (actual == null) return;
+        if (actual.usaProtocoloBinario()) {
+            actual.enviar(mano(ProtocoloBinario.TU_TURNO, jugadorActual.obtenerCartasEnMano()));
+            return;
+        }
         enviar(actual, "Tu mano actual: " + jugadorActual.obtenerCartasEnMano());
         enviar(actual, "Es tu turno. Escribe /jalar o /parar");
     }
 
     // --- ACCIONES Y EVENTOS ---
 
-    public void mostrarCartaJalada(List<UnCliente> clientes, UnCliente actual, Carta carta) {
-        broadcast(clientes, actual.getNombreUsuario() + " jaló: " + carta);
+    public void mostrarCartaJalada(List<UnCliente> clientes, String nombre, Carta carta) {
+        int asiento = asiento(nombre);
+        difundir(clientes,
+                () -> nombre + " jaló: " + carta,
+                () -> ProtocoloBinario.mensaje(ProtocoloBinario.CARTA).entero(asiento).entero(carta.obtenerCodigo()).trama());
     }
 
     public void mostrarMensajeChat(List<UnCliente> clientes, String remitente, String mensaje) {
-        broadcast(clientes, "<" + remitente + ">: " + mensaje);
+        int asiento = asiento(remitente);
+        // Quien mira sin asiento no está en la MESA: su nombre va como texto
+        difundir(clientes,
+                () -> "<" + remitente + ">: " + mensaje,
+                () -> asiento < 0
+                        ? ProtocoloBinario.mensaje(ProtocoloBinario.CHAT_NOMBRE).texto(remitente).texto(mensaje).trama()
+                        : ProtocoloBinario.mensaje(ProtocoloBinario.CHAT).entero(asiento).texto(mensaje).trama());
     }
 
     public void mostrarBust(List<UnCliente> clientes, String nombre) {
-        broadcast(clientes, "¡BUST! " + nombre + " ha perdido la ronda.");
+        int asiento = asiento(nombre);
+        difundir(clientes,
+                () -> "¡BUST! " + nombre + " ha perdido la ronda.",
+                () -> ProtocoloBinario.mensaje(ProtocoloBinario.BUST).entero(asiento).trama());
     }
 
     public void mostrarSalvacionSecondChance(List<UnCliente> clientes, String nombre, Carta carta) {
@@ -63,7 +158,10 @@ public class VistaJuego {
     }
 
     public void mostrarPlantarse(List<UnCliente> clientes, String nombre, int puntos) {
-        broadcast(clientes, nombre + " se ha PLANTADO con " + puntos + " puntos provisionales.");
+        int asiento = asiento(nombre);
+        difundir(clientes,
+                () -> nombre + " se ha PLANTADO con " + puntos + " puntos provisionales.",
+                () -> ProtocoloBinario.mensaje(ProtocoloBinario.PLANTADO).entero(asiento).entero(puntos).trama());
     }
 
     // --- MENÚS DE CARTAS DE ACCIÓN ---
@@ -102,9 +200,33 @@ public class VistaJuego {
 
     // --- RESULTADOS ---
 
-    public void mostrarResultadosRonda(List<UnCliente> clientes, String resumen) {
-        broadcast(clientes, "\n--- FIN DE LA RONDA ---");
-        broadcast(clientes, resumen);
+    // jugadoresEnMesa y puntosRonda van por asiento del motor
+    public void mostrarResultadosRonda(List<UnCliente> clientes, List<Jugador> jugadoresEnMesa, int[] puntosRonda) {
+        broadcastTexto(clientes, "\n--- FIN DE LA RONDA ---");
+        difundir(clientes, () -> {
+            StringBuilder resumen = new StringBuilder("Resultados:\n");
+            for (int i = 0; i < jugadoresEnMesa.size(); i++) {
+                Jugador j = jugadoresEnMesa.get(i);
+                resumen.append(" -> ").append(j.obtenerNombreUsuario())
+                       .append(": +").append(puntosRonda[i])
+                       .append(" (Total: ").append(j.obtenerPuntuacionTotal()).append(")\n");
+            }
+            return resumen.toString();
+        }, () -> {
+            ProtocoloBinario m = ProtocoloBinario.mensaje(ProtocoloBinario.RESULTADOS).entero(jugadoresEnMesa.size());
+            for (int i = 0; i < jugadoresEnMesa.size(); i++) {
+                m.entero(i).entero(puntosRonda[i]).entero(jugadoresEnMesa.get(i).obtenerPuntuacionTotal());
+            }
+            return m.trama();
+        });
+    }
+
+    public void mostrarMano(UnCliente c, Jugador jugador) {
+        if (c.usaProtocoloBinario()) {
+            c.enviar(mano(ProtocoloBinario.MANO, jugador.obtenerCartasEnMano()));
+        } else {
+            enviar(c, "Tu mano actual: " + jugador.obtenerCartasEnMano());
+        }
     }
 
     public void mostrarFinJuego(List<UnCliente> clientes, String ganador, int puntos) {
@@ -115,8 +237,8 @@ public class VistaJuego {
         broadcast(clientes, "Escriban /listo para iniciar una partida nueva.");
     }
 
-    public void mostrarEsperaNuevaRonda(List<UnCliente> clientes) {
-        broadcast(clientes, "Nadie ha llegado a 200 puntos. La siguiente ronda comienza en 15 segundos...");
+    public void mostrarEsperaNuevaRonda(List<UnCliente> clientes, long segundos) {
+        broadcast(clientes, "Nadie ha llegado a 200 puntos. La siguiente ronda comienza en " + segundos + " segundos...");
     }
 
     public void mostrarReportePuntuacion(UnCliente cliente, Map<String, Jugador> jugadores) {
@@ -131,6 +253,15 @@ public class VistaJuego {
         enviar(cliente, reporte.toString());
     }
     
+    public void mostrarConsejo(UnCliente cliente, ConsejeroFlip7.Consejo consejo) {
+        StringBuilder sb = new StringBuilder("\n--- CONSEJO ---\n");
+        sb.append(String.format("Probabilidad de BUST si jalas: %.1f%%%n", 100 * consejo.probabilidadBust));
+        sb.append(String.format("Si te plantas: %.0f pts%n", consejo.puntosPlantandose));
+        sb.append(String.format("Si jalas (y sigues jugando bien): %.1f pts esperados%n", consejo.puntosJalando));
+        sb.append(consejo.convieneJalar() ? "Te conviene: /jalar" : "Te conviene: /parar");
+        enviar(cliente, sb.toString());
+    }
+
     // --- ERRORES Y VARIOS ---
     
     public void mostrarError(UnCliente c, String msg) {
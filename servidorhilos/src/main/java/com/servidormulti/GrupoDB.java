@@ -11,202 +11,82 @@ import java.util.Map;
 
 public class GrupoDB {
 
-    /**
-     * Obtiene el ID numérico de un grupo a partir de su nombre.
+    /*
+     * Las salas viven en RegistroSalas. Aquí solo se copian sus cambios a la BD en
+     * segundo plano (write-behind): nadie espera estas escrituras, y como todas pasan
+     * por el mismo hilo escritor se aplican en el orden en que ocurrieron.
      */
-    public Integer getGrupoId(String nombreGrupo) {
-        String sql = "SELECT id FROM grupos WHERE nombre = ?";
-        Connection conn = ConexionDB.conectar();
-        if (conn == null) return null;
 
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, nombreGrupo);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("id");
+    public void guardarSala(String nombreGrupo) {
+        enSegundoPlano("crear grupo", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT OR IGNORE INTO grupos (nombre) VALUES (?)")) {
+                pstmt.setString(1, nombreGrupo);
+                return pstmt.executeUpdate();
             }
-        } catch (SQLException e) {
-            System.err.println("Error al obtener ID de grupo: " + e.getMessage());
-        } finally {
-            ConexionDB.cerrarConexion(conn);
-        }
-        return null;
+        });
     }
 
-    /**
-     * Crea un nuevo grupo en la base de datos.
-     */
-    public String crearGrupo(String nombreGrupo) {
-        if (getGrupoId(nombreGrupo) != null) {
-            return "Error: El grupo '" + nombreGrupo + "' ya existe.";
-        }
-
-        String sql = "INSERT INTO grupos (nombre) VALUES (?)";
-        Connection conn = ConexionDB.conectar();
-        if (conn == null) return "Error de conexión.";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, nombreGrupo);
-            int filas = pstmt.executeUpdate();
-            if (filas > 0) {
-                return "Sala '" + nombreGrupo + "' creada exitosamente.";
-            } else {
-                return "Error al crear la sala.";
+    public void guardarMiembro(String nombreGrupo, String nombreUsuario) {
+        String sql = "INSERT OR IGNORE INTO grupos_miembros (grupo_id, usuario_nombre) " +
+                     "SELECT id, ? FROM grupos WHERE nombre = ?";
+        enSegundoPlano("unirse a grupo", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, nombreUsuario);
+                pstmt.setString(2, nombreGrupo);
+                return pstmt.executeUpdate();
             }
-        } catch (SQLException e) {
-            System.err.println("Error al crear grupo: " + e.getMessage());
-            return "Error interno al crear grupo.";
-        } finally {
-            ConexionDB.cerrarConexion(conn);
-        }
+        });
     }
 
-    /**
-     * Une un usuario a un grupo.
-     */
-    public String unirseGrupo(String nombreGrupo, String nombreUsuario) {
-        Integer grupoId = getGrupoId(nombreGrupo);
-        if (grupoId == null) {
-            return "Error: El grupo '" + nombreGrupo + "' no existe.";
-        }
-        
-        String sqlInsert = "INSERT OR IGNORE INTO grupos_miembros (grupo_id, usuario_nombre) VALUES (?, ?)";
-        Connection conn = ConexionDB.conectar();
-        if (conn == null) return "Error de conexión.";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sqlInsert)) {
-            pstmt.setInt(1, grupoId);
-            pstmt.setString(2, nombreUsuario);
-            int filasAfectadas = pstmt.executeUpdate();
-
-            if (filasAfectadas > 0) {
-                return "Te has unido al grupo '" + nombreGrupo + "'.";
-            } else {
-                return "Ya eras miembro del grupo '" + nombreGrupo + "'.";
+    public void borrarMiembro(String nombreGrupo, String nombreUsuario) {
+        String sql = "DELETE FROM grupos_miembros WHERE usuario_nombre = ? " +
+                     "AND grupo_id = (SELECT id FROM grupos WHERE nombre = ?)";
+        enSegundoPlano("salir de grupo", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, nombreUsuario);
+                pstmt.setString(2, nombreGrupo);
+                return pstmt.executeUpdate();
             }
-        } catch (SQLException e) {
-            System.err.println("Error al unirse a grupo: " + e.getMessage());
-            return "Error interno al unirse a grupo.";
-        } finally {
-            ConexionDB.cerrarConexion(conn);
-        }
+        });
     }
 
-    /**
-     * Saca un usuario de un grupo y BORRA LA SALA si queda vacía.
-     */
-    public String salirGrupo(String nombreGrupo, String nombreUsuario) {
-        if (nombreGrupo.equalsIgnoreCase("Todos")) {
-            return "Error: No puedes salir del grupo 'Todos'.";
-        }
-
-        Integer grupoId = getGrupoId(nombreGrupo);
-        if (grupoId == null) {
-            return "Error: El grupo '" + nombreGrupo + "' no existe.";
-        }
-
-        String sqlDeleteMiembro = "DELETE FROM grupos_miembros WHERE grupo_id = ? AND usuario_nombre = ?";
-        // Consulta para verificar cuántos quedan
-        String sqlCountMiembros = "SELECT COUNT(*) FROM grupos_miembros WHERE grupo_id = ?";
-        // Consulta para borrar la sala
-        String sqlDeleteGrupo = "DELETE FROM grupos WHERE id = ?";
-
-        Connection conn = ConexionDB.conectar();
-        if (conn == null) return "Error de conexión.";
-
-        try {
-            // Eliminar al usuario del grupo
-            try (PreparedStatement pstmtMiembro = conn.prepareStatement(sqlDeleteMiembro)) {
-                pstmtMiembro.setInt(1, grupoId);
-                pstmtMiembro.setString(2, nombreUsuario);
-                int filasAfectadas = pstmtMiembro.executeUpdate();
-
-                if (filasAfectadas > 0) {
-                    // Si salió con éxito, verificamos si la sala quedó vacía
-                    try (PreparedStatement pstmtCount = conn.prepareStatement(sqlCountMiembros)) {
-                        pstmtCount.setInt(1, grupoId);
-                        ResultSet rs = pstmtCount.executeQuery();
-                        
-                        if (rs.next() && rs.getInt(1) == 0) {
-                            // Si hay 0 miembros, borramos la sala de la tabla 'grupos'
-                            try (PreparedStatement pstmtDeleteGrupo = conn.prepareStatement(sqlDeleteGrupo)) {
-                                pstmtDeleteGrupo.setInt(1, grupoId);
-                                pstmtDeleteGrupo.executeUpdate();
-                                System.out.println("Sala '" + nombreGrupo + "' eliminada automáticamente por estar vacía.");
-                            }
-                        }
-                    }
-                    return "Has salido del grupo '" + nombreGrupo + "'.";
-                } else {
-                    return "No eras miembro del grupo '" + nombreGrupo + "'.";
-                }
+    // Los miembros se borran solos (ON DELETE CASCADE)
+    public void borrarSala(String nombreGrupo) {
+        enSegundoPlano("borrar grupo", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM grupos WHERE nombre = ?")) {
+                pstmt.setString(1, nombreGrupo);
+                return pstmt.executeUpdate();
             }
-        } catch (SQLException e) {
-            System.err.println("Error al salir de grupo: " + e.getMessage());
-            return "Error interno al salir de grupo.";
-        } finally {
-            ConexionDB.cerrarConexion(conn);
-        }
+        });
     }
 
-    /**
-     * Obtiene una lista de todos los miembros de un grupo.
-     */
-    public List<String> getMiembrosGrupo(int grupoId) {
-        List<String> miembros = new ArrayList<>();
-        String sql = "SELECT usuario_nombre FROM grupos_miembros WHERE grupo_id = ?";
-        Connection conn = ConexionDB.conectar();
-        if (conn == null) return miembros;
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, grupoId);
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                miembros.add(rs.getString("usuario_nombre"));
-            }
-        } catch (SQLException e) {
-            System.err.println("Error al obtener miembros de grupo: " + e.getMessage());
-        } finally {
-            ConexionDB.cerrarConexion(conn);
-        }
-        return miembros;
+    private void enSegundoPlano(String descripcion, OperacionEscritura<Integer> operacion) {
+        ConexionDB.escribir(operacion).exceptionally(e -> {
+            Throwable causa = e.getCause() != null ? e.getCause() : e;
+            System.err.println("Error al " + descripcion + " (write-behind): " + causa.getMessage());
+            return 0;
+        });
     }
 
     /**
-     * Obtiene un mapa con el nombre de la sala y la cantidad actual de jugadores.
-     * Filtra automáticamente las salas que ya tienen 6 o más jugadores.
+     * Nombres de las salas guardadas (sin 'Todos'), para armar el registro al arrancar.
      */
-    public Map<String, Integer> obtenerSalasDisponibles() {
-        Map<String, Integer> salas = new HashMap<>();
-        String sql = "SELECT g.nombre, COUNT(gm.usuario_nombre) as cantidad " +
-                     "FROM grupos g " +
-                     "LEFT JOIN grupos_miembros gm ON g.id = gm.grupo_id " +
-                     "WHERE g.nombre <> 'Todos' " + 
-                     "GROUP BY g.id, g.nombre " +
-                     "HAVING cantidad < 6";
-
+    public List<String> cargarNombresSalas() {
+        List<String> nombres = new ArrayList<>();
+        String sql = "SELECT nombre FROM grupos WHERE nombre <> 'Todos'";
         Connection conn = ConexionDB.conectar();
-        if (conn == null) return salas;
-
+        if (conn == null) return nombres;
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
-                String nombre = rs.getString("nombre");
-                int cantidad = rs.getInt("cantidad");
-                salas.put(nombre, cantidad);
+                nombres.add(rs.getString("nombre"));
             }
         } catch (SQLException e) {
-            System.err.println("Error al obtener salas disponibles: " + e.getMessage());
+            System.err.println("Error al cargar salas: " + e.getMessage());
         } finally {
             ConexionDB.cerrarConexion(conn);
         }
-        return salas;
-    }
-    
-    /**
-     * Obtiene una lista con los nombres de todas las salas disponibles.
-     */
-    public List<String> obtenerNombresDeGrupos() {
-        return new ArrayList<>(obtenerSalasDisponibles().keySet());
+        return nombres;
     }
 
     
@@ -236,38 +116,56 @@ public class GrupoDB {
         return partidas;
     }
 
-    // Restaura la sala en la tabla 'grupos' si fue eliminada al vaciarse
-    public void asegurarSalaExiste(String nombreSala) {
-        if (getGrupoId(nombreSala) == null) {
-            crearGrupo(nombreSala); // Reutilizamos el método de crear
-        }
+    // La última partida guardada de una sala (para saber si cargar o iniciar nueva).
+    // El id, el turno y la instantánea salen en la misma lectura; estado es null en
+    // guardados viejos, y entonces vienen también sus jugadores
+    public static class PartidaGuardada {
+        public int id;
+        public int turno;
+        public byte[] estado;
+        public List<DatosJugadorGuardado> jugadores = List.of();
     }
 
-    // Obtiene el ID de partida guardada asociado a una sala (para saber si cargar o iniciar nueva)
-    public Integer obtenerIdPartidaPorSala(String nombreSala) {
-        String sql = "SELECT id FROM partidas_guardadas WHERE sala = ? ORDER BY id DESC LIMIT 1";
+    // Lectura bloqueante: ManejadorSalas la hace fuera del actor de la sala
+    public PartidaGuardada cargarPartidaPorSala(String nombreSala) {
+        String sql = "SELECT id, turno_actual, estado FROM partidas_guardadas WHERE sala = ? ORDER BY id DESC LIMIT 1";
+        PartidaGuardada p = null;
         Connection conn = ConexionDB.conectar();
         if (conn == null) return null;
         try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, nombreSala);
             ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) return rs.getInt("id");
+            if (rs.next()) {
+                p = new PartidaGuardada();
+                p.id = rs.getInt("id");
+                p.turno = rs.getInt("turno_actual");
+                p.estado = rs.getBytes("estado");
+            }
         } catch (SQLException e) { e.printStackTrace(); }
         finally { ConexionDB.cerrarConexion(conn); }
-        return null;
+
+        if (p != null && p.estado == null) {
+            p.jugadores = cargarJugadoresDePartida(p.id);
+        }
+        return p;
     }
 
-    // Obtiene el turno guardado
-    public int obtenerTurnoGuardado(int partidaId) {
-        String sql = "SELECT turno_actual FROM partidas_guardadas WHERE id = ?";
+    // Los respaldos automáticos de partidas en curso: sala -> instantánea
+    public Map<String, byte[]> cargarPartidasActivas() {
+        Map<String, byte[]> partidas = new HashMap<>();
         Connection conn = ConexionDB.conectar();
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, partidaId);
+        if (conn == null) return partidas;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT sala, estado FROM partidas_activas")) {
             ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) return rs.getInt("turno_actual");
-        } catch (SQLException e) { e.printStackTrace(); }
-        finally { ConexionDB.cerrarConexion(conn); }
-        return 0;
+            while (rs.next()) {
+                partidas.put(rs.getString("sala"), rs.getBytes("estado"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al cargar partidas activas: " + e.getMessage());
+        } finally {
+            ConexionDB.cerrarConexion(conn);
+        }
+        return partidas;
     }
 
     // Estructura auxiliar para devolver datos del jugador
@@ -311,17 +209,21 @@ public class GrupoDB {
     public void eliminarPartidaGuardada(int partidaId) {
         String sql = "DELETE FROM partidas_guardadas WHERE id = ?";
         String sqlJ = "DELETE FROM jugadores_guardados WHERE partida_id = ?";
-        Connection conn = ConexionDB.conectar();
-        try {
-            PreparedStatement p1 = conn.prepareStatement(sqlJ);
-            p1.setInt(1, partidaId);
-            p1.executeUpdate();
-            
-            PreparedStatement p2 = conn.prepareStatement(sql);
-            p2.setInt(1, partidaId);
-            p2.executeUpdate();
-        } catch(SQLException e) { e.printStackTrace(); }
-        finally { ConexionDB.cerrarConexion(conn); }
+        // No hace falta esperar el commit: nadie lee este guardado después de cargarlo
+        ConexionDB.escribir(conn -> {
+            try (PreparedStatement p1 = conn.prepareStatement(sqlJ);
+                 PreparedStatement p2 = conn.prepareStatement(sql)) {
+                p1.setInt(1, partidaId);
+                p1.executeUpdate();
+
+                p2.setInt(1, partidaId);
+                p2.executeUpdate();
+            }
+            return null;
+        }).exceptionally(e -> {
+            System.err.println("Error al eliminar partida guardada: " + e.getMessage());
+            return null;
+        });
     }
 
     
@@ -0,0 +1,73 @@
+package com.servidormulti;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decide en qué tipo de hilo corren las tareas bloqueantes del servidor
+ * (sesiones de UnCliente y sus escritores) y sobre qué pool corren las salas.
+ * Las esperas de las partidas no usan hilos: van al Temporizador.
+ *
+ * En modo VIRTUAL se usa Executors.newVirtualThreadPerTaskExecutor(). El proyecto
+ * compila con Java 17, así que el ejecutor se obtiene por reflexión; si la JVM no lo
+ * tiene se avisa y se siguen usando hilos de plataforma.
+ */
+public final class Hilos {
+
+    private static volatile ExecutorService virtuales = null;
+    private static volatile Executor poolSalas = null;
+
+    private Hilos() {}
+
+    static void configurar(ModoConexion modo) {
+        if (modo != ModoConexion.VIRTUAL) return;
+        try {
+            virtuales = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            System.out.println("Sesiones de cliente en hilos virtuales.");
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Esta JVM no soporta hilos virtuales (se requiere Java 21). Usando hilos de plataforma.");
+        }
+    }
+
+    public static boolean sonVirtuales() {
+        return virtuales != null;
+    }
+
+    // Arranca la tarea en un hilo nuevo del tipo configurado
+    public static void ejecutar(String nombre, Runnable tarea) {
+        ExecutorService ejecutor = virtuales;
+        if (ejecutor != null) {
+            ejecutor.execute(() -> {
+                Thread.currentThread().setName(nombre);
+                tarea.run();
+            });
+        } else {
+            new Thread(tarea, nombre).start();
+        }
+    }
+
+    // Pool compartido sobre el que corren los actores de las salas (ver Sala)
+    public static Executor poolSalas() {
+        Executor pool = poolSalas;
+        if (pool != null) return pool;
+        synchronized (Hilos.class) {
+            if (poolSalas == null) {
+                if (virtuales != null) {
+                    poolSalas = virtuales;
+                } else {
+                    AtomicInteger contador = new AtomicInteger(0);
+                    poolSalas = Executors.newFixedThreadPool(ConfiguracionServidor.hilosSalas(), r -> {
+                        Thread t = new Thread(r, "Sala-" + contador.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+            return poolSalas;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.servidormulti;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agrupa todo lo que se le envía a cada cliente durante un paso de la partida
+ * (jalar, plantarse, fin de ronda...) para mandarlo en una sola escritura.
+ *
+ * El lote pertenece al hilo que lo abre. Mientras está abierto, UnCliente.enviar()
+ * guarda las tramas aquí en vez de encolarlas; al cerrarlo, las tramas de cada
+ * cliente se unen en un solo búfer. El cliente sigue recibiendo las mismas
+ * tramas writeUTF, solo que llegan juntas.
+ *
+ * Uso: LoteSalida lote = LoteSalida.abrir(); try { ... } finally { lote.cerrar(); }
+ */
+public final class LoteSalida {
+
+    private static final ThreadLocal<LoteSalida> actual = new ThreadLocal<>();
+
+    private final Map<UnCliente, List<ByteBuffer>> pendientes = new LinkedHashMap<>();
+    private int profundidad = 1; // Permite abrir lotes anidados en el mismo hilo
+
+    private LoteSalida() {}
+
+    public static LoteSalida abrir() {
+        LoteSalida lote = actual.get();
+        if (lote != null) {
+            lote.profundidad++;
+            return lote;
+        }
+        lote = new LoteSalida();
+        actual.set(lote);
+        return lote;
+    }
+
+    // Devuelve true si hay un lote abierto en este hilo y se quedó con la trama
+    static boolean agregar(UnCliente cliente, ByteBuffer trama) {
+        LoteSalida lote = actual.get();
+        if (lote == null) return false;
+        lote.pendientes.computeIfAbsent(cliente, k -> new ArrayList<>(4)).add(trama);
+        return true;
+    }
+
+    private void vaciar() {
+        long tramas = 0;
+        for (Map.Entry<UnCliente, List<ByteBuffer>> e : pendientes.entrySet()) {
+            List<ByteBuffer> lista = e.getValue();
+            tramas += lista.size();
+            if (lista.size() == 1) {
+                e.getKey().encolarSinLote(lista.get(0));
+                continue;
+            }
+            int total = 0;
+            for (ByteBuffer b : lista) total += b.remaining();
+            ByteBuffer unido = ByteBuffer.allocate(total);
+            for (ByteBuffer b : lista) unido.put(b);
+            unido.flip();
+            e.getKey().encolarSinLote(unido);
+        }
+        if (tramas > 0) {
+            Metricas.sumar("salida.tramasEnLote", tramas);
+            Metricas.sumar("salida.tramasAhorradas", tramas - pendientes.size());
+        }
+        pendientes.clear();
+    }
+
+    public void cerrar() {
+        if (--profundidad > 0) return;
+        actual.remove();
+        vaciar();
+    }
+}
@@ -1,8 +1,7 @@
 package com.servidormulti;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -13,23 +12,11 @@ public class ManejadorMensajes {
     private static final Pattern PATRON_GRUPO = Pattern.compile("^#([\\w\\-]+)\\s+(.+)");
 
     private final Map<String, UnCliente> clientesConectados;
-    private final GrupoDB grupoDB;
+    private final RegistroSalas registroSalas;
 
-    public ManejadorMensajes(Map<String, UnCliente> clientes, GrupoDB gdb) {
+    public ManejadorMensajes(Map<String, UnCliente> clientes, RegistroSalas registroSalas) {
         this.clientesConectados = clientes;
-        this.grupoDB = gdb;
-    }
-
-    private UnCliente buscarClienteConectado(String identificador) {
-        // busca por ID numérico o por nombre de usuario.
-        UnCliente cliente = clientesConectados.get(identificador);
-        if (cliente != null) return cliente;
-        for (UnCliente c : clientesConectados.values()) {
-            if (c.getNombreUsuario().equalsIgnoreCase(identificador)) {
-                return c;
-            }
-        }
-        return null;
+        this.registroSalas = registroSalas;
     }
 
     /**
@@ -56,33 +43,32 @@ public class ManejadorMensajes {
     private void manejarMensajeGrupo(UnCliente remitente, String nombreGrupo, String contenido) throws IOException {
         String nombreRemitente = remitente.getNombreUsuario();
         
-        Integer grupoId = grupoDB.getGrupoId(nombreGrupo);
-        
-        if (grupoId == null || grupoId == -1) {
+        Sala sala = registroSalas.obtener(nombreGrupo);
+
+        if (sala == null) {
             remitente.salida.writeUTF("Error: El grupo '" + nombreGrupo + "' no existe.");
             return;
         }
-        
 
-        List<String> miembros;
+
+        Collection<UnCliente> miembros;
         
-        if (nombreGrupo.equalsIgnoreCase("Todos")) {
+        if (nombreGrupo.equalsIgnoreCase(RegistroSalas.GENERAL)) {
             // Para el grupo 'Todos', enviamos a todos los conectados.
-            miembros = new ArrayList<>(clientesConectados.keySet());
+            miembros = clientesConectados.values();
         } else {
-            // Para grupos específicos (futuros chats de juego), usamos GrupoDB.
-            miembros = grupoDB.getMiembrosGrupo(grupoId.intValue());
+            // Para las salas, los miembros ya están en memoria (sin ir a la BD).
+            miembros = sala.getMiembros();
         }
         
         String msgFormateado = String.format("<%s> %s: %s", nombreGrupo, nombreRemitente, contenido);
+        Trama trama = Trama.de(msgFormateado); // Una sola codificación para todos los miembros
         
         // 2. Se envia a los miembros 
-        for (String identificadorMiembro : miembros) {
-            UnCliente clienteDestino = buscarClienteConectado(identificadorMiembro);
-            
-            // Si el cliente está conectado y no es el remitente
-            if (clienteDestino != null && !clienteDestino.clienteID.equals(remitente.clienteID)) {
-                clienteDestino.salida.writeUTF(msgFormateado);
+        for (UnCliente clienteDestino : miembros) {
+            // Si no es el remitente
+            if (!clienteDestino.clienteID.equals(remitente.clienteID)) {
+                clienteDestino.enviar(trama);
             }
         }
         
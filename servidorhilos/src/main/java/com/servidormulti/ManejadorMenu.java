@@ -103,6 +103,7 @@ public class ManejadorMenu {
                       "  * Escribe /jugadores para ver quién está en la sala.\n" +
                       "  * Escribe /listo para votar iniciar partida (min 3).\n" +
                       "  * Escribe /nolisto para cancelar tu voto.\n" +
+                      "  * Escribe /bot [estrategia] para sumar un bot a la mesa (/quitarbot lo quita).\n" +
                       "  * Para volver al menú principal de salas: /salir\n" +
                       "  " + limite + "\n" +
                       "----------------------------------------------------\n" +
@@ -201,8 +202,8 @@ public class ManejadorMenu {
                     if (misPartidas.containsKey(idPartida)) {
                         String nombreSala = misPartidas.get(idPartida);
 
-                        // 1. Asegurar que la sala exista en la BD
-                        grupoDB.asegurarSalaExiste(nombreSala);
+                        // 1. Asegurar que la sala exista (pudo borrarse al quedar vacía)
+                        manejadorSalas.asegurarSalaExiste(nombreSala);
 
                         // 2. Unirse a la sala 
                         if (manejadorSalas.unirseASala(nombreSala, cliente, salida)) {
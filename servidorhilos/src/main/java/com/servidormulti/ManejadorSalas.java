@@ -3,27 +3,24 @@ package com.servidormulti;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import com.servidormulti.Flip7.EstrategiaBot;
 import com.servidormulti.Flip7.SesionJuego;
 
 public class ManejadorSalas {
 
-    private final GrupoDB grupoDB;
+    private final GrupoDB grupoDB; // Solo para partidas guardadas
+    private final RegistroSalas registroSalas;
     private final ManejadorMensajes manejadorMensajes;
 
-    private final Map<String, SesionJuego> partidasActivas;
-    private final Map<String, Set<String>> votosListo;
-
-    public ManejadorSalas(GrupoDB grupoDB, ManejadorMensajes manejadorMensajes) {
+    public ManejadorSalas(GrupoDB grupoDB, RegistroSalas registroSalas, ManejadorMensajes manejadorMensajes) {
         this.grupoDB = grupoDB;
+        this.registroSalas = registroSalas;
         this.manejadorMensajes = manejadorMensajes;
-        this.partidasActivas = new HashMap<>();
-        this.votosListo = new HashMap<>();
     }
 
     public void procesar(String mensaje, UnCliente cliente, DataOutputStream salida) throws IOException {
@@ -34,7 +31,7 @@ public class ManejadorSalas {
             case MENU_SALA_PRINCIPAL:
                 if (mensaje.equals("1")) { // Unirse a una sala
                     // Lógica: Obtener datos -> Pasarlos a la vista
-                    Map<String, Integer> salas = grupoDB.obtenerSalasDisponibles();
+                    Map<String, Integer> salas = registroSalas.obtenerSalasDisponibles();
                     menu.mostrarSalasDisponibles(cliente, salida, salas);
 
                 } else if (mensaje.equals("2")) { // Crear una sala
@@ -92,7 +89,7 @@ public class ManejadorSalas {
                 }
 
                 try {
-                    Map<String, Integer> salasMap = grupoDB.obtenerSalasDisponibles();
+                    Map<String, Integer> salasMap = registroSalas.obtenerSalasDisponibles();
                     List<String> salasLista = new ArrayList<>(salasMap.keySet());
 
                     int indiceSeleccionado = Integer.parseInt(mensaje.trim());
@@ -114,7 +111,7 @@ public class ManejadorSalas {
                 } catch (NumberFormatException e) {
                     salida.writeUTF("Entrada no válida. Debes escribir el NÚMERO de la sala.");
                     // Re-fetch para mostrar
-                    menu.mostrarSalasDisponibles(cliente, salida, grupoDB.obtenerSalasDisponibles());
+                    menu.mostrarSalasDisponibles(cliente, salida, registroSalas.obtenerSalasDisponibles());
                 }
                 break;
 
@@ -136,9 +133,9 @@ public class ManejadorSalas {
                     // Lógica para preparar datos de jugadores
                     String nombreSala = cliente.obtenerSalaActual();
                     if (nombreSala != null) {
-                        Integer grupoId = grupoDB.getGrupoId(nombreSala);
-                        if (grupoId != null) {
-                            List<String> miembros = grupoDB.getMiembrosGrupo(grupoId);
+                        Sala sala = registroSalas.obtener(nombreSala);
+                        if (sala != null) {
+                            List<String> miembros = sala.nombresMiembros();
                             menu.mostrarJugadoresEnSala(cliente, salida, miembros, nombreSala);
                         } else {
                             salida.writeUTF("Error: La sala no existe.");
@@ -149,23 +146,10 @@ public class ManejadorSalas {
 
                 } else {
                     String nombreSala = cliente.obtenerSalaActual();
-                    if (nombreSala != null) {
-
-                        SesionJuego juegoActual = partidasActivas.get(nombreSala);
-
-                        if (juegoActual != null && juegoActual.estaJuegoIniciado()) {
-                            juegoActual.procesarMensajeJuego(cliente, mensaje);
-                        } else {
-                            if (mensaje.trim().equalsIgnoreCase("/listo")) {
-                                manejarComandoListo(cliente, nombreSala);
-                            } else if (mensaje.trim().equalsIgnoreCase("/nolisto")) {
-                                manejarComandoNoListo(cliente, nombreSala);
-                            } else {
-                                String mensajeSala = "#" + nombreSala + " " + mensaje;
-                                manejadorMensajes.enrutarMensaje(cliente, mensajeSala);
-                            }
-                        }
-
+                    Sala sala = nombreSala != null ? registroSalas.obtener(nombreSala) : null;
+                    if (sala != null) {
+                        // Lo que toca la partida o los votos corre en el actor de la sala
+                        sala.ejecutar(() -> procesarEnSala(cliente, sala, mensaje));
                     } else {
                         salida.writeUTF("Error: No estás en una sala válida.");
                         menu.mostrarMenuSalaPrincipal(cliente, salida);
@@ -180,10 +164,39 @@ public class ManejadorSalas {
         }
     }
 
+    // Corre dentro del actor de la sala: aquí no hay otro hilo tocando la partida ni los votos
+    private void procesarEnSala(UnCliente cliente, Sala sala, String mensaje) {
+        String nombreSala = sala.getNombre();
+        if (!nombreSala.equals(cliente.obtenerSalaActual())) return; // Se fue antes de que tocara su turno
+
+        try {
+            SesionJuego juegoActual = sala.getPartida();
+
+            if (juegoActual != null && juegoActual.estaJuegoIniciado()) {
+                juegoActual.procesarMensajeJuego(cliente, mensaje);
+            } else {
+                if (mensaje.trim().equalsIgnoreCase("/listo")) {
+                    manejarComandoListo(cliente, sala);
+                } else if (mensaje.trim().equalsIgnoreCase("/nolisto")) {
+                    manejarComandoNoListo(cliente, sala);
+                } else if (mensaje.trim().toLowerCase().startsWith("/bot")) {
+                    manejarComandoBot(cliente, sala, mensaje.trim());
+                } else if (mensaje.trim().equalsIgnoreCase("/quitarbot")) {
+                    manejarComandoQuitarBot(cliente, sala);
+                } else {
+                    String mensajeSala = "#" + nombreSala + " " + mensaje;
+                    manejadorMensajes.enrutarMensaje(cliente, mensajeSala);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error en la sala " + nombreSala + ": " + e.getMessage());
+        }
+    }
+
     // Maneja el comando /listo
-    private void manejarComandoListo(UnCliente cliente, String nombreSala) throws IOException {
-        votosListo.putIfAbsent(nombreSala, new HashSet<>());
-        Set<String> listos = votosListo.get(nombreSala);
+    private void manejarComandoListo(UnCliente cliente, Sala sala) throws IOException {
+        String nombreSala = sala.getNombre();
+        Set<String> listos = sala.getVotosListo();
 
         if (listos.contains(cliente.getNombreUsuario())) {
             cliente.getSalida().writeUTF("Ya estás marcado como listo. Esperando a los demás...");
@@ -191,20 +204,21 @@ public class ManejadorSalas {
         }
 
         listos.add(cliente.getNombreUsuario());
+        int preparados = listos.size() + sala.getBots().size(); // Los bots siempre están listos
 
         String msgAviso = "#" + nombreSala + " El jugador " + cliente.getNombreUsuario() + " está LISTO ("
-                + listos.size() + "/3 necesarios).";
+                + preparados + "/3 necesarios).";
         manejadorMensajes.enrutarMensaje(cliente, msgAviso);
 
-        if (listos.size() >= 3) {
-            iniciarPartidaEnSala(nombreSala);
+        if (preparados >= 3 && !sala.estaIniciando()) {
+            iniciarPartidaEnSala(sala);
         }
     }
 
     // Maneja el comando /nolisto
-    private void manejarComandoNoListo(UnCliente cliente, String nombreSala) throws IOException {
-        votosListo.putIfAbsent(nombreSala, new HashSet<>());
-        Set<String> listos = votosListo.get(nombreSala);
+    private void manejarComandoNoListo(UnCliente cliente, Sala sala) throws IOException {
+        String nombreSala = sala.getNombre();
+        Set<String> listos = sala.getVotosListo();
 
         if (!listos.contains(cliente.getNombreUsuario())) {
             cliente.getSalida().writeUTF("No estabas marcado como listo.");
@@ -214,51 +228,111 @@ public class ManejadorSalas {
         listos.remove(cliente.getNombreUsuario());
 
         String msgAviso = "#" + nombreSala + " El jugador " + cliente.getNombreUsuario() + " ya NO está listo ("
-                + listos.size() + "/3 necesarios).";
+                + (listos.size() + sala.getBots().size()) + "/3 necesarios).";
         manejadorMensajes.enrutarMensaje(cliente, msgAviso);
 
         cliente.getSalida().writeUTF("Has cancelado tu voto de listo.");
     }
 
-    // Inicia la partida en la sala especificada
-    private void iniciarPartidaEnSala(String nombreSala) {
-        Integer grupoId = grupoDB.getGrupoId(nombreSala);
-        if (grupoId == null)
+    // Maneja el comando /bot [estrategia]: un bot ocupa un asiento en las partidas de la sala
+    private void manejarComandoBot(UnCliente cliente, Sala sala, String mensaje) throws IOException {
+        String[] partes = mensaje.split("\\s+");
+        if (!partes[0].equalsIgnoreCase("/bot")) {
+            cliente.getSalida().writeUTF("Comando no válido. Usa /bot [estrategia] o /quitarbot.");
+            return;
+        }
+        EstrategiaBot estrategia;
+        try {
+            estrategia = EstrategiaBot.desdeTexto(partes.length > 1 ? partes[1] : ConfiguracionServidor.estrategiaBots());
+        } catch (IllegalArgumentException e) {
+            cliente.getSalida().writeUTF("Error: " + e.getMessage());
+            return;
+        }
+        // Humanos y bots comparten el cupo de la sala
+        if (!sala.agregarBot(estrategia)) {
+            cliente.getSalida().writeUTF("Error: La mesa ya está llena (máx " + sala.getCapacidad() + " asientos).");
+            return;
+        }
+        List<EstrategiaBot> bots = sala.getBots();
+
+        String aviso = "Se agregó un bot (" + estrategia.nombre() + "). Bots en la sala: " + bots.size()
+                + " (" + (sala.getVotosListo().size() + bots.size()) + "/3 necesarios).";
+        manejadorMensajes.enrutarMensaje(cliente, "#" + sala.getNombre() + " " + aviso);
+        cliente.getSalida().writeUTF(aviso);
+    }
+
+    // Maneja el comando /quitarbot: quita el último bot agregado
+    private void manejarComandoQuitarBot(UnCliente cliente, Sala sala) throws IOException {
+        EstrategiaBot quitado = sala.quitarBot();
+        if (quitado == null) {
+            cliente.getSalida().writeUTF("No hay bots en la sala.");
             return;
+        }
+        List<EstrategiaBot> bots = sala.getBots();
 
-        List<String> nombresMiembros = grupoDB.getMiembrosGrupo(grupoId);
+        String aviso = "Se quitó un bot (" + quitado.nombre() + "). Bots en la sala: " + bots.size() + ".";
+        manejadorMensajes.enrutarMensaje(cliente, "#" + sala.getNombre() + " " + aviso);
+        cliente.getSalida().writeUTF(aviso);
+    }
+
+    // Inicia la partida en la sala especificada. Su partida guardada se lee fuera del
+    // actor, para que la BD no frene a la sala; la partida arranca cuando llega
+    private void iniciarPartidaEnSala(Sala sala) {
+        String nombreSala = sala.getNombre();
+        sala.setIniciando(true);
+        CompletableFuture
+                .supplyAsync(() -> grupoDB.cargarPartidaPorSala(nombreSala),
+                        tarea -> Hilos.ejecutar("Carga-" + nombreSala, tarea))
+                .exceptionally(e -> {
+                    System.err.println("Error al leer la partida guardada de '" + nombreSala + "': " + e.getMessage());
+                    return null;
+                })
+                .thenAccept(guardada -> sala.ejecutar(() -> {
+                    sala.setIniciando(false);
+                    arrancarPartida(sala, guardada);
+                }));
+    }
+
+    private void arrancarPartida(Sala sala, GrupoDB.PartidaGuardada guardada) {
+        String nombreSala = sala.getNombre();
         List<UnCliente> jugadoresConectados = new ArrayList<>();
 
-        for (String nombre : nombresMiembros) {
-            UnCliente c = ServidorMulti.buscarClientePorNombre(nombre);
-            if (c != null && nombreSala.equals(c.obtenerSalaActual())) {
+        for (UnCliente c : sala.getMiembros()) {
+            if (nombreSala.equals(c.obtenerSalaActual())) {
                 jugadoresConectados.add(c);
             }
         }
 
-        SesionJuego nuevaPartida = new SesionJuego(jugadoresConectados);
-        partidasActivas.put(nombreSala, nuevaPartida);
-        votosListo.get(nombreSala).clear();
-        nuevaPartida.iniciarPartida();
+        // La anterior pudo quedar entre rondas (o reconstruida sin que nadie volviera): se cierra
+        SesionJuego anterior = sala.getPartida();
+        if (anterior != null) anterior.cerrar();
+
+        SesionJuego nuevaPartida = new SesionJuego(jugadoresConectados, sala.getBots(), sala::ejecutar);
+        sala.setPartida(nuevaPartida);
+        sala.getVotosListo().clear();
+        if (nuevaPartida.iniciarPartida(guardada)) {
+            // Borramos el guardado para que no se cargue infinitamente si reinician de nuevo
+            grupoDB.eliminarPartidaGuardada(guardada.id);
+        }
     }
 
     // Lógica para salir del grupo/sala actual
     public void salirDelGrupoActual(UnCliente cliente) {
         String sala = cliente.obtenerSalaActual();
         if (sala != null) {
-            grupoDB.salirGrupo(sala, cliente.getNombreUsuario());
-
-            if (votosListo.containsKey(sala)) {
-                votosListo.get(sala).remove(cliente.getNombreUsuario());
-            }
-
-            SesionJuego juego = partidasActivas.get(sala);
-            if (juego != null) {
-                juego.removerJugador(cliente);
-
-                if (grupoDB.obtenerSalasDisponibles().get(sala) == null) {
-                    partidasActivas.remove(sala);
-                }
+            Sala salaActual = registroSalas.obtener(sala);
+            // Si la sala queda vacía, el registro la borra junto con su partida
+            registroSalas.salir(sala, cliente);
+
+            if (salaActual != null) {
+                // El voto y la partida son del actor: la baja se encola detrás de sus comandos
+                salaActual.ejecutar(() -> {
+                    salaActual.getVotosListo().remove(cliente.getNombreUsuario());
+                    SesionJuego juego = salaActual.getPartida();
+                    if (juego != null) {
+                        juego.removerJugador(cliente);
+                    }
+                });
             }
 
             cliente.establecerSalaActual(null);
@@ -268,7 +342,7 @@ public class ManejadorSalas {
 
     // Lógica para unirse a una sala
     public boolean unirseASala(String nombreSala, UnCliente cliente, DataOutputStream salida) throws IOException {
-        String resultado = grupoDB.unirseGrupo(nombreSala, cliente.getNombreUsuario());
+        String resultado = registroSalas.unirse(nombreSala, cliente);
 
         if (resultado.contains("Error") || resultado.contains("no existe")) {
             salida.writeUTF(resultado + " Intenta de nuevo.");
@@ -277,6 +351,17 @@ public class ManejadorSalas {
 
         cliente.establecerSalaActual(nombreSala);
         salida.writeUTF(resultado + " ¡Has entrado a la sala!");
+
+        // Si un bot cuida su asiento en la partida en curso, lo recupera
+        Sala sala = registroSalas.obtener(nombreSala);
+        if (sala != null) {
+            sala.ejecutar(() -> {
+                SesionJuego juego = sala.getPartida();
+                if (juego != null && nombreSala.equals(cliente.obtenerSalaActual())) {
+                    juego.reclamarAsiento(cliente);
+                }
+            });
+        }
         return true;
     }
 
@@ -298,7 +383,7 @@ public class ManejadorSalas {
             return false;
         }
 
-        String resultadoCreacion = grupoDB.crearGrupo(nombreSala);
+        String resultadoCreacion = registroSalas.crear(nombreSala);
 
         if (resultadoCreacion.contains("Error") || resultadoCreacion.contains("ya existe")) {
             salida.writeUTF(resultadoCreacion + " Intenta de nuevo, hubo un error o el nombre ya es usado.");
@@ -314,6 +399,10 @@ public class ManejadorSalas {
         }
     }
 
+    public void asegurarSalaExiste(String nombreSala) {
+        registroSalas.asegurarSalaExiste(nombreSala);
+    }
+
     public Map<Integer, String> obtenerPartidasGuardadas(String usuario) {
         return grupoDB.obtenerPartidasGuardadas(usuario);
     }
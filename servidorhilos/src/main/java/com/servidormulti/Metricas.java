@@ -0,0 +1,76 @@
+package com.servidormulti;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Contadores del servidor. Cualquier clase suma a un contador por nombre y un hilo
+ * de fondo imprime cada cierto tiempo el total y la tasa por segundo.
+ */
+public final class Metricas {
+
+    private static final Map<String, LongAdder> contadores = new ConcurrentHashMap<>();
+    // Valores instantáneos (no acumulados): se leen al momento de imprimir
+    private static final Map<String, LongSupplier> indicadores = new ConcurrentHashMap<>();
+
+    private Metricas() {}
+
+    public static void sumar(String nombre, long cantidad) {
+        contadores.computeIfAbsent(nombre, k -> new LongAdder()).add(cantidad);
+    }
+
+    public static void incrementar(String nombre) {
+        sumar(nombre, 1);
+    }
+
+    public static void registrarIndicador(String nombre, LongSupplier valor) {
+        indicadores.put(nombre, valor);
+    }
+
+    public static long valor(String nombre) {
+        LongAdder contador = contadores.get(nombre);
+        return contador == null ? 0 : contador.sum();
+    }
+
+    // Arranca el hilo que imprime las métricas cada 'intervaloSeg' segundos
+    static void iniciarReporte(int intervaloSeg) {
+        if (intervaloSeg <= 0) return;
+        Thread hilo = new Thread(() -> {
+            Map<String, Long> anteriores = new TreeMap<>();
+            while (true) {
+                try {
+                    Thread.sleep(intervaloSeg * 1000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                imprimir(anteriores, intervaloSeg);
+            }
+        }, "Reporte-Metricas");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    private static void imprimir(Map<String, Long> anteriores, int intervaloSeg) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(contadores).entrySet()) {
+            long total = e.getValue().sum();
+            long antes = anteriores.getOrDefault(e.getKey(), 0L);
+            anteriores.put(e.getKey(), total);
+            if (total == antes) continue; // Solo lo que cambió en este intervalo
+            sb.append("\n  ").append(e.getKey()).append(": ").append(total)
+              .append(String.format(" (%.1f/s)", (total - antes) / (double) intervaloSeg));
+        }
+        for (Map.Entry<String, LongSupplier> e : new TreeMap<>(indicadores).entrySet()) {
+            long actual = e.getValue().getAsLong();
+            Long antes = anteriores.put("~" + e.getKey(), actual);
+            if (antes != null && antes == actual) continue;
+            sb.append("\n  ").append(e.getKey()).append(" = ").append(actual);
+        }
+        if (sb.length() > 0) {
+            System.out.println("[Métricas]" + sb);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.servidormulti;
+
+public enum ModoConexion {
+    HILOS,   // Un hilo de plataforma por cliente (modo original)
+    VIRTUAL, // Un hilo virtual por cliente (requiere Java 21 en ejecución)
+    NIO;     // Pocos bucles de Selector atienden a todos los clientes
+
+    // Convierte el texto de configuración ("hilos", "virtual", "nio") al modo correspondiente
+    public static ModoConexion desdeTexto(String texto) {
+        if (texto == null) return HILOS;
+        for (ModoConexion modo : values()) {
+            if (modo.name().equalsIgnoreCase(texto.trim())) {
+                return modo;
+            }
+        }
+        System.err.println("Modo de conexión desconocido '" + texto + "'. Usando HILOS.");
+        return HILOS;
+    }
+}
@@ -0,0 +1,78 @@
+package com.servidormulti;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Motor de conexiones basado en java.nio.
+ * Un hilo acepta sockets y los reparte entre unos pocos bucles de Selector;
+ * la lógica de menús y salas corre en un pool pequeño de trabajadores,
+ * manteniendo el orden de los mensajes de cada cliente.
+ */
+public class MotorNIO {
+
+    private final int puerto;
+    private final ContextoServidor contexto;
+    private final BucleSelector[] bucles;
+    private final ExecutorService trabajadores;
+
+    public MotorNIO(int puerto, int numeroSelectores, int numeroTrabajadores, ContextoServidor contexto) {
+        this.puerto = puerto;
+        this.contexto = contexto;
+        this.bucles = new BucleSelector[Math.max(1, numeroSelectores)];
+
+        AtomicInteger contadorTrabajadores = new AtomicInteger(0);
+        this.trabajadores = Executors.newFixedThreadPool(Math.max(1, numeroTrabajadores), r -> {
+            Thread t = new Thread(r, "Trabajador-" + contadorTrabajadores.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Bloquea el hilo que lo llama aceptando conexiones
+    public void ejecutar() throws IOException {
+        for (int i = 0; i < bucles.length; i++) {
+            bucles[i] = new BucleSelector();
+            Thread hilo = new Thread(bucles[i], "Selector-" + i);
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+
+        try (ServerSocketChannel servidor = ServerSocketChannel.open()) {
+            servidor.bind(new InetSocketAddress(puerto), ConfiguracionServidor.backlog());
+            System.out.println("Servidor NIO escuchando en el puerto " + puerto + " con "
+                    + bucles.length + " selector(es).");
+
+            int siguiente = 0;
+            while (true) {
+                SocketChannel canal = servidor.accept();
+                try {
+                    canal.configureBlocking(false);
+                    canal.socket().setTcpNoDelay(true);
+                } catch (IOException e) {
+                    System.err.println("No se pudo configurar el socket: " + e.getMessage());
+                    canal.close();
+                    continue;
+                }
+
+                String clienteId = ServidorMulti.nuevoIdCliente();
+                BucleSelector bucle = bucles[siguiente];
+                siguiente = (siguiente + 1) % bucles.length;
+
+                ConexionNIO conexion = new ConexionNIO(canal, bucle, new EjecutorSerial(trabajadores), clienteId);
+                UnCliente unCliente = new UnCliente(clienteId, contexto, conexion.getColaSalida());
+                conexion.asignarCliente(unCliente);
+
+                ServidorMulti.clientes.put(clienteId, unCliente);
+                bucle.registrar(conexion);
+                conexion.iniciar();
+                System.out.println("Se conecto el chango # " + clienteId);
+            }
+        }
+    }
+}
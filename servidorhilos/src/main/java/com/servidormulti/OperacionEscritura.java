@@ -0,0 +1,13 @@
+package com.servidormulti;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Escritura que corre en el hilo de EscritorDB (ver ConexionDB.escribir).
+ * No debe hacer commit/rollback: la transacción la maneja el escritor.
+ */
+@FunctionalInterface
+public interface OperacionEscritura<T> {
+    T ejecutar(Connection conn) throws SQLException;
+}
@@ -0,0 +1,277 @@
+package com.servidormulti;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool acotado de conexiones SQLite.
+ *
+ * ConexionDB.conectar() presta una conexión y cerrarConexion() (o close()) la devuelve;
+ * las clases de BD no cambian. Cada conexión guarda sus PreparedStatement por SQL, así
+ * las consultas repetidas (getGrupoId, getMiembrosGrupo...) no se vuelven a compilar.
+ *
+ * Un hilo vigía avisa si una conexión lleva prestada más de servidor.db.fugaMs, con la
+ * pila de quien la pidió.
+ */
+final class PoolConexiones {
+
+    private static final int SENTENCIAS_POR_CONEXION = 32;
+
+    private final String url;
+    private final Properties propiedades;
+    private final int maximo;
+    private final long esperaMaxMs;
+    private final long umbralFugaMs;
+
+    private final BlockingQueue<ConexionAgrupada> libres;
+    private final Set<ConexionAgrupada> prestadas = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger creadas = new AtomicInteger();
+
+    PoolConexiones(String url, Properties propiedades, int maximo, long esperaMaxMs, long umbralFugaMs) {
+        this.url = url;
+        this.propiedades = propiedades;
+        this.maximo = maximo;
+        this.esperaMaxMs = esperaMaxMs;
+        this.umbralFugaMs = umbralFugaMs;
+        this.libres = new ArrayBlockingQueue<>(maximo);
+
+        Metricas.registrarIndicador("db.conexionesActivas", prestadas::size);
+        Metricas.registrarIndicador("db.conexionesLibres", libres::size);
+        if (umbralFugaMs > 0) iniciarVigia();
+    }
+
+    Connection tomar() throws SQLException {
+        ConexionAgrupada c = libres.poll();
+        if (c == null) c = crearSiHayLugar();
+        if (c == null) {
+            // Pool lleno: aquí está la espera que mide db.esperaMicros
+            long inicio = System.nanoTime();
+            try {
+                c = libres.poll(esperaMaxMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrumpido esperando una conexión");
+            }
+            if (c == null) {
+                Metricas.incrementar("db.esperasAgotadas");
+                throw new SQLException("No hubo conexión libre en " + esperaMaxMs + " ms (máximo " + maximo + ")");
+            }
+            Metricas.incrementar("db.esperas");
+            Metricas.sumar("db.esperaMicros", (System.nanoTime() - inicio) / 1000);
+        }
+        Metricas.incrementar("db.prestamos");
+
+        c.prestar();
+        prestadas.add(c);
+        return c.proxy;
+    }
+
+    private ConexionAgrupada crearSiHayLugar() throws SQLException {
+        while (true) {
+            int actuales = creadas.get();
+            if (actuales >= maximo) return null;
+            if (creadas.compareAndSet(actuales, actuales + 1)) break;
+        }
+        try {
+            Metricas.incrementar("db.conexionesCreadas");
+            return new ConexionAgrupada(DriverManager.getConnection(url, propiedades));
+        } catch (SQLException e) {
+            creadas.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void devolver(ConexionAgrupada c) {
+        if (!prestadas.remove(c)) return; // Ya se había devuelto
+        if (c.limpiar()) {
+            libres.offer(c);
+        } else {
+            c.descartar();
+            creadas.decrementAndGet();
+        }
+    }
+
+    private void iniciarVigia() {
+        Thread hilo = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(Math.max(1000, umbralFugaMs / 2));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long ahora = System.currentTimeMillis();
+                for (ConexionAgrupada c : prestadas) {
+                    if (!c.fugaReportada && ahora - c.prestadaDesde > umbralFugaMs) {
+                        c.fugaReportada = true;
+                        Metricas.incrementar("db.posiblesFugas");
+                        System.err.println("Posible fuga de conexión: prestada hace "
+                                + (ahora - c.prestadaDesde) + " ms al hilo " + c.hiloDueno + " desde:");
+                        c.origen.printStackTrace();
+                    }
+                }
+            }
+        }, "Vigia-PoolDB");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    // Conexión real + su caché de sentencias. El proxy es lo que ven las clases de BD
+    private final class ConexionAgrupada implements InvocationHandler {
+
+        private final Connection real;
+        private final Connection proxy;
+
+        // LRU por SQL: al pasarse del límite se cierra de verdad la menos usada
+        private final Map<String, SentenciaGuardada> sentencias =
+                new LinkedHashMap<String, SentenciaGuardada>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, SentenciaGuardada> mayor) {
+                        if (size() <= SENTENCIAS_POR_CONEXION) return false;
+                        mayor.getValue().cerrarReal();
+                        return true;
+                    }
+                };
+
+        private volatile long prestadaDesde;
+        private volatile String hiloDueno;
+        private volatile Exception origen;
+        private volatile boolean fugaReportada;
+
+        ConexionAgrupada(Connection real) {
+            this.real = real;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, this);
+        }
+
+        void prestar() {
+            prestadaDesde = System.currentTimeMillis();
+            hiloDueno = Thread.currentThread().getName();
+            origen = umbralFugaMs > 0 ? new Exception("Conexión tomada aquí") : null;
+            fugaReportada = false;
+        }
+
+        // Deja la conexión como nueva para el siguiente; false si ya no sirve
+        boolean limpiar() {
+            try {
+                if (real.isClosed()) return false;
+                for (SentenciaGuardada s : sentencias.values()) s.reiniciar();
+                if (!real.getAutoCommit()) {
+                    real.rollback(); // Una transacción que quedó abierta no se hereda
+                    real.setAutoCommit(true);
+                }
+                return true;
+            } catch (SQLException e) {
+                System.err.println("Conexión descartada del pool: " + e.getMessage());
+                return false;
+            }
+        }
+
+        void descartar() {
+            for (SentenciaGuardada s : sentencias.values()) s.cerrarReal();
+            sentencias.clear();
+            try {
+                real.close();
+            } catch (SQLException e) { /* Ya estaba cerrada */ }
+        }
+
+        @Override
+        public Object invoke(Object p, Method metodo, Object[] args) throws Throwable {
+            switch (metodo.getName()) {
+                case "close":
+                    devolver(this);
+                    return null;
+                case "isClosed":
+                    return !prestadas.contains(this) || real.isClosed();
+                case "prepareStatement":
+                    if (args.length == 1) return sentencia((String) args[0]);
+                    break;
+                case "unwrap":
+                    return real.unwrap((Class<?>) args[0]);
+                default:
+                    break;
+            }
+            return llamar(real, metodo, args);
+        }
+
+        private PreparedStatement sentencia(String sql) throws SQLException {
+            SentenciaGuardada s = sentencias.get(sql);
+            if (s == null) {
+                s = new SentenciaGuardada(real.prepareStatement(sql));
+                sentencias.put(sql, s);
+                Metricas.incrementar("db.sentenciasPreparadas");
+            } else {
+                Metricas.incrementar("db.sentenciasReutilizadas");
+            }
+            return s.proxy;
+        }
+    }
+
+    // close() no cierra la sentencia: solo suelta su ResultSet y limpia los parámetros
+    private static final class SentenciaGuardada implements InvocationHandler {
+
+        private final PreparedStatement real;
+        private final PreparedStatement proxy;
+        private ResultSet ultimo;
+
+        SentenciaGuardada(PreparedStatement real) {
+            this.real = real;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        void reiniciar() throws SQLException {
+            if (ultimo != null) {
+                ultimo.close(); // En SQLite un ResultSet abierto mantiene un bloqueo de lectura
+                ultimo = null;
+            }
+            real.clearParameters();
+            real.clearBatch();
+        }
+
+        void cerrarReal() {
+            try {
+                real.close();
+            } catch (SQLException e) { /* Ya estaba cerrada */ }
+        }
+
+        @Override
+        public Object invoke(Object p, Method metodo, Object[] args) throws Throwable {
+            switch (metodo.getName()) {
+                case "close":
+                    reiniciar();
+                    return null;
+                case "isClosed":
+                    return false;
+                case "executeQuery":
+                    ultimo = (ResultSet) llamar(real, metodo, args);
+                    return ultimo;
+                default:
+                    return llamar(real, metodo, args);
+            }
+        }
+    }
+
+    private static Object llamar(Object destino, Method metodo, Object[] args) throws Throwable {
+        try {
+            return metodo.invoke(destino, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause(); // Que el llamador vea la SQLException original
+        }
+    }
+}
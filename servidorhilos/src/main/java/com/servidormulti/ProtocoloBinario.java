@@ -0,0 +1,77 @@
+package com.servidormulti;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Protocolo binario opcional para los eventos de la partida.
+ *
+ * El cliente lo pide mandando "/protocolo binario" al conectarse. Desde ese momento
+ * los eventos del juego le llegan como mensajes tipados en vez de frases armadas
+ * por el servidor; los menús y avisos generales siguen siendo texto.
+ *
+ * Cada mensaje viaja en la misma trama que writeUTF (2 bytes de longitud + cuerpo).
+ * El cuerpo empieza con un byte 0, que el UTF modificado de Java nunca produce, así
+ * el cliente distingue una trama binaria de una de texto. Después va el tipo (1 byte)
+ * y los datos: enteros como varint (7 bits por byte) y textos como varint de longitud
+ * + UTF-8. Los jugadores se nombran por su asiento en la última MESA recibida.
+ */
+public final class ProtocoloBinario {
+
+    public static final String COMANDO = "/protocolo binario";
+
+    public static final int MARCA = 0;
+
+    // Tipos de mensaje (el cliente tiene la misma tabla en DecodificadorBinario)
+    public static final int MESA = 1;        // n, n nombres por asiento
+    public static final int TURNO = 2;       // asiento
+    public static final int TU_TURNO = 3;    // n, n códigos de carta (tu mano)
+    public static final int CARTA = 4;       // asiento, código de carta
+    public static final int BUST = 5;        // asiento
+    public static final int PLANTADO = 6;    // asiento, puntos
+    public static final int RESULTADOS = 7;  // n, n x (asiento, puntos de ronda, total)
+    public static final int CHAT = 8;        // asiento, texto
+    public static final int MANO = 9;        // n, n códigos de carta
+    public static final int CHAT_NOMBRE = 10; // nombre, texto (el remitente no tiene asiento)
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+
+    private ProtocoloBinario(int tipo) {
+        bytes.write(0); // Espacio para la longitud, se llena en trama()
+        bytes.write(0);
+        bytes.write(MARCA);
+        bytes.write(tipo);
+    }
+
+    public static ProtocoloBinario mensaje(int tipo) {
+        return new ProtocoloBinario(tipo);
+    }
+
+    public ProtocoloBinario entero(int valor) {
+        while ((valor & ~0x7F) != 0) {
+            bytes.write((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        bytes.write(valor);
+        return this;
+    }
+
+    public ProtocoloBinario texto(String valor) {
+        byte[] utf8 = valor.getBytes(StandardCharsets.UTF_8);
+        entero(utf8.length);
+        bytes.write(utf8, 0, utf8.length);
+        return this;
+    }
+
+    public Trama trama() {
+        byte[] trama = bytes.toByteArray();
+        int longitud = trama.length - 2;
+        if (longitud > 0xFFFF) {
+            throw new IllegalArgumentException("Mensaje binario demasiado largo: " + longitud + " bytes");
+        }
+        trama[0] = (byte) (longitud >>> 8);
+        trama[1] = (byte) longitud;
+        Metricas.incrementar("protocolo.tramasBinarias");
+        return Trama.envolver(trama);
+    }
+}
@@ -0,0 +1,120 @@
+package com.servidormulti;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro autoritativo de salas y sus miembros, en memoria.
+ *
+ * ManejadorSalas y ManejadorMensajes consultan aquí (chat, /jugadores, lista de salas,
+ * inicio de partida) sin tocar la BD. Cada cambio se copia después a GrupoDB en
+ * segundo plano (write-behind) por el escritor de BD, solo para que quede registro.
+ *
+ * Los mensajes de respuesta son los mismos que devolvía GrupoDB.
+ */
+public class RegistroSalas {
+
+    public static final String GENERAL = "Todos";
+
+    private final Map<String, Sala> salas = new ConcurrentHashMap<>();
+    private final GrupoDB grupoDB;
+
+    public RegistroSalas(GrupoDB grupoDB) {
+        this.grupoDB = grupoDB;
+        salas.put(GENERAL, new Sala(GENERAL, Integer.MAX_VALUE));
+
+        // Las salas que seguían en la BD: las vacías se borran solas, así que son las que quedaron
+        // abiertas cuando el servidor cayó (ConexionDB solo vacía sus membresías al arrancar)
+        for (String nombre : grupoDB.cargarNombresSalas()) {
+            salas.putIfAbsent(nombre, new Sala(nombre, Sala.CAPACIDAD));
+        }
+        Metricas.registrarIndicador("salas.activas", () -> salas.size() - 1);
+    }
+
+    public Sala obtener(String nombre) {
+        return salas.get(nombre);
+    }
+
+    // Todas, también 'Todos'. Vista en vivo: puede cambiar mientras se recorre
+    public Collection<Sala> todas() {
+        return salas.values();
+    }
+
+    public boolean existe(String nombre) {
+        return salas.containsKey(nombre);
+    }
+
+    public String crear(String nombreSala) {
+        if (salas.putIfAbsent(nombreSala, new Sala(nombreSala, Sala.CAPACIDAD)) != null) {
+            return "Error: El grupo '" + nombreSala + "' ya existe.";
+        }
+        grupoDB.guardarSala(nombreSala);
+        return "Sala '" + nombreSala + "' creada exitosamente.";
+    }
+
+    // Para reanudar una partida guardada: la sala pudo borrarse al quedar vacía
+    public void asegurarSalaExiste(String nombreSala) {
+        if (!existe(nombreSala)) {
+            crear(nombreSala);
+        }
+    }
+
+    public String unirse(String nombreSala, UnCliente cliente) {
+        Sala sala = salas.get(nombreSala);
+        if (sala == null) {
+            return "Error: El grupo '" + nombreSala + "' no existe.";
+        }
+        switch (sala.agregar(cliente)) {
+            case UNIDO:
+                grupoDB.guardarMiembro(nombreSala, cliente.getNombreUsuario());
+                return "Te has unido al grupo '" + nombreSala + "'.";
+            case YA_ERA_MIEMBRO:
+                return "Ya eras miembro del grupo '" + nombreSala + "'.";
+            case LLENA:
+                return "Error: La sala '" + nombreSala + "' está llena (máx " + sala.getCapacidad() + ").";
+            default: // Se cerró justo ahora por quedar vacía
+                return "Error: El grupo '" + nombreSala + "' no existe.";
+        }
+    }
+
+    /**
+     * Saca al cliente y BORRA LA SALA si queda vacía (junto con su partida).
+     */
+    public String salir(String nombreSala, UnCliente cliente) {
+        if (nombreSala.equalsIgnoreCase(GENERAL)) {
+            return "Error: No puedes salir del grupo 'Todos'.";
+        }
+        Sala sala = salas.get(nombreSala);
+        if (sala == null) {
+            return "Error: El grupo '" + nombreSala + "' no existe.";
+        }
+
+        Boolean quedoVacia = sala.quitar(cliente, true);
+        if (quedoVacia == null) {
+            return "No eras miembro del grupo '" + nombreSala + "'.";
+        }
+        grupoDB.borrarMiembro(nombreSala, cliente.getNombreUsuario());
+
+        if (quedoVacia) {
+            salas.remove(nombreSala, sala);
+            grupoDB.borrarSala(nombreSala);
+            System.out.println("Sala '" + nombreSala + "' eliminada automáticamente por estar vacía.");
+        }
+        return "Has salido del grupo '" + nombreSala + "'.";
+    }
+
+    /**
+     * Nombre de sala -> jugadores, sin 'Todos' ni las salas llenas. Ordenado por nombre
+     * para que el número que elige el cliente siga apuntando a la misma sala.
+     */
+    public Map<String, Integer> obtenerSalasDisponibles() {
+        Map<String, Integer> disponibles = new TreeMap<>();
+        for (Sala sala : salas.values()) {
+            if (sala.getNombre().equals(GENERAL) || sala.estaLlena()) continue;
+            disponibles.put(sala.getNombre(), sala.asientosOcupados()); // Los bots también ocupan asiento
+        }
+        return disponibles;
+    }
+}
@@ -0,0 +1,148 @@
+package com.servidormulti;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.servidormulti.Flip7.EstrategiaBot;
+import com.servidormulti.Flip7.SesionJuego;
+
+/**
+ * Una sala en memoria: sus miembros conectados (en orden de llegada) y su partida.
+ *
+ * Los miembros se leen en cada mensaje de chat y cambian pocas veces, por eso van en
+ * una CopyOnWriteArrayList: leer no bloquea. Las altas y bajas pasan por el candado
+ * para que el cupo y el cierre de la sala se respeten.
+ *
+ * Cada sala es además un actor: todo lo que toca su partida o sus votos (comandos,
+ * /listo, salidas, temporizadores) se manda con ejecutar() y corre de uno en uno en
+ * un EjecutorSerial sobre el pool compartido de Hilos.poolSalas(). Por eso SesionJuego
+ * y los votos no necesitan candados. Los bots sí pasan por el candado: ocupan asiento.
+ */
+public class Sala {
+
+    public static final int CAPACIDAD = 6;
+
+    public enum Estado { ESPERANDO, EN_PARTIDA }
+
+    private final String nombre;
+    private final int capacidad;
+    private final List<UnCliente> miembros = new CopyOnWriteArrayList<>();
+    private final ReentrantLock candado = new ReentrantLock();
+    private boolean cerrada = false; // Se vació y salió del registro; ya no admite miembros
+
+    private volatile SesionJuego partida;
+
+    private final EjecutorSerial actor = new EjecutorSerial(Hilos.poolSalas());
+    private final Set<String> votosListo = new HashSet<>(); // Solo se toca dentro del actor
+    // Bots pedidos con /bot. Ocupan asiento como los miembros: se agregan y quitan bajo el
+    // candado para que el cupo se cuente junto; se leen sin candado
+    private final List<EstrategiaBot> bots = new CopyOnWriteArrayList<>();
+    private boolean iniciando = false; // Se está leyendo su partida guardada para arrancar; solo en el actor
+
+    Sala(String nombre, int capacidad) {
+        this.nombre = nombre;
+        this.capacidad = capacidad;
+    }
+
+    public String getNombre() { return nombre; }
+    public int getCapacidad() { return capacidad; }
+    public int cantidadMiembros() { return miembros.size(); }
+    public int asientosOcupados() { return miembros.size() + bots.size(); }
+    public boolean estaLlena() { return asientosOcupados() >= capacidad; }
+
+    // Vista de solo lectura; se puede recorrer sin candado
+    public List<UnCliente> getMiembros() { return miembros; }
+
+    public List<String> nombresMiembros() {
+        List<String> nombres = new ArrayList<>(miembros.size());
+        for (UnCliente c : miembros) nombres.add(c.getNombreUsuario());
+        return nombres;
+    }
+
+    // Encola la tarea en el buzón de la sala
+    public void ejecutar(Runnable tarea) {
+        actor.execute(tarea);
+    }
+
+    public Set<String> getVotosListo() { return votosListo; }
+    // Vista de solo lectura; para cambiarlos, agregarBot() y quitarBot()
+    public List<EstrategiaBot> getBots() { return Collections.unmodifiableList(bots); }
+    public boolean estaIniciando() { return iniciando; }
+    public void setIniciando(boolean iniciando) { this.iniciando = iniciando; }
+
+    public SesionJuego getPartida() { return partida; }
+    public void setPartida(SesionJuego partida) { this.partida = partida; }
+
+    public Estado getEstado() {
+        SesionJuego p = partida;
+        return p != null && p.estaJuegoIniciado() ? Estado.EN_PARTIDA : Estado.ESPERANDO;
+    }
+
+    // --- Altas y bajas (las usa RegistroSalas) ---
+
+    enum ResultadoAlta { UNIDO, YA_ERA_MIEMBRO, LLENA, CERRADA }
+
+    ResultadoAlta agregar(UnCliente cliente) {
+        candado.lock();
+        try {
+            if (cerrada) return ResultadoAlta.CERRADA;
+            if (buscar(cliente.getNombreUsuario()) != null) return ResultadoAlta.YA_ERA_MIEMBRO;
+            if (asientosOcupados() >= capacidad) return ResultadoAlta.LLENA;
+            miembros.add(cliente);
+            return ResultadoAlta.UNIDO;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    // Devuelve null si no era miembro; si no, true cuando la sala quedó vacía y se cerró
+    Boolean quitar(UnCliente cliente, boolean cerrarSiQuedaVacia) {
+        candado.lock();
+        try {
+            UnCliente miembro = buscar(cliente.getNombreUsuario());
+            if (miembro == null) return null;
+            miembros.remove(miembro);
+            if (cerrarSiQuedaVacia && miembros.isEmpty()) {
+                cerrada = true;
+                return true;
+            }
+            return false;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    // false si ya no queda asiento libre
+    public boolean agregarBot(EstrategiaBot estrategia) {
+        candado.lock();
+        try {
+            if (asientosOcupados() >= capacidad) return false;
+            bots.add(estrategia);
+            return true;
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    // Quita el último bot agregado; null si no había
+    public EstrategiaBot quitarBot() {
+        candado.lock();
+        try {
+            return bots.isEmpty() ? null : bots.remove(bots.size() - 1);
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    private UnCliente buscar(String nombreUsuario) {
+        for (UnCliente c : miembros) {
+            if (c.getNombreUsuario().equals(nombreUsuario)) return c;
+        }
+        return null;
+    }
+}
@@ -6,35 +6,60 @@ import java.net.Socket;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.servidormulti.Flip7.RecuperacionPartidas;
+import com.servidormulti.Flip7.RespaldoPartidas;
+
 public class ServidorMulti {
 
     static ConcurrentHashMap<String, UnCliente> clientes = new ConcurrentHashMap<String,UnCliente>();
     static AtomicInteger contadorClientes = new AtomicInteger(0); // Recomendado
 
     public static void main(String[] args) throws IOException {
+
+        // El modo se puede pasar como argumento (hilos | virtual | nio) o con -Dservidor.modo
+        ModoConexion modo = args.length > 0 ? ModoConexion.desdeTexto(args[0]) : ConfiguracionServidor.modo();
+        int puerto = ConfiguracionServidor.puerto();
+        Hilos.configurar(modo);
+        Metricas.iniciarReporte(ConfiguracionServidor.intervaloMetricasSeg());
         
         ConexionDB.inicializar();
         
         ContextoServidor contexto = new ContextoServidor(clientes);
+        RecuperacionPartidas.iniciar(contexto.getRegistroSalas());
+        RespaldoPartidas.iniciar(contexto.getRegistroSalas());
         System.out.println("Servicios del servidor inicializados.");
+
+        if (modo == ModoConexion.NIO) {
+            try {
+                new MotorNIO(puerto, ConfiguracionServidor.selectores(),
+                        ConfiguracionServidor.trabajadores(), contexto).ejecutar();
+            } catch (IOException e) {
+                System.err.println("Error al iniciar el servidor: " + e.getMessage());
+            }
+            return;
+        }
         
-        try (ServerSocket servidorSocket = new ServerSocket(8081)) {
+        try (ServerSocket servidorSocket = new ServerSocket(puerto, ConfiguracionServidor.backlog())) {
             
             while (true) {
                 Socket s = servidorSocket.accept();
-                String clienteId = String.valueOf(contadorClientes.incrementAndGet());
+                String clienteId = nuevoIdCliente();
             
                 UnCliente unCliente = new UnCliente(s, clienteId, contexto);
                 
-                Thread hilo = new Thread(unCliente, "Cliente-" + clienteId);
                 clientes.put(clienteId , unCliente);
-                hilo.start();
+                Hilos.ejecutar("Cliente-" + clienteId, unCliente);
                 System.out.println("Se conecto el chango # " + clienteId );
             }
         } catch (IOException e) {
             System.err.println("Error al iniciar el servidor: " + e.getMessage());
         }
     }
+
+    static String nuevoIdCliente() {
+        return String.valueOf(contadorClientes.incrementAndGet());
+    }
+
     public static UnCliente buscarClientePorNombre(String nombre) {
         for (UnCliente c : clientes.values()) {
             if (c.getNombreUsuario().equalsIgnoreCase(nombre)) {
@@ -43,4 +68,4 @@ public class ServidorMulti {
         }
         return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,38 @@
+package com.servidormulti;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloj compartido de todo el servidor: un solo hilo dispara las tareas programadas
+ * de todas las mesas (cartas del Flip Three, espera entre rondas).
+ *
+ * El hilo del reloj no corre lógica de juego: cuando vence una tarea solo la entrega
+ * al ejecutor indicado (el actor de la sala) y ahí corre. Así diez mil mesas
+ * esperando son diez mil entradas en una cola, no diez mil hilos dormidos.
+ */
+public final class Temporizador {
+
+    private static final ScheduledThreadPoolExecutor reloj = crearReloj();
+
+    private Temporizador() {}
+
+    private static ScheduledThreadPoolExecutor crearReloj() {
+        ScheduledThreadPoolExecutor r = new ScheduledThreadPoolExecutor(1, tarea -> {
+            Thread hilo = new Thread(tarea, "Temporizador");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        // Una mesa que se vacía cancela su tarea; que no se quede ocupando la cola
+        r.setRemoveOnCancelPolicy(true);
+        Metricas.registrarIndicador("temporizador.pendientes", () -> r.getQueue().size());
+        return r;
+    }
+
+    // Dentro de 'retrasoMs' manda la tarea a 'destino'. Se cancela con el futuro devuelto
+    public static ScheduledFuture<?> programar(long retrasoMs, Executor destino, Runnable tarea) {
+        return reloj.schedule(() -> destino.execute(tarea), retrasoMs, TimeUnit.MILLISECONDS);
+    }
+}
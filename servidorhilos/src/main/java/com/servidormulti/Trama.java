@@ -0,0 +1,48 @@
+package com.servidormulti;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Mensaje ya codificado en el formato de DataOutputStream.writeUTF
+ * (2 bytes de longitud + UTF modificado), o un mensaje de ProtocoloBinario
+ * con el mismo encabezado de longitud.
+ *
+ * Se codifica una sola vez y se comparte entre todos los destinatarios: cada uno
+ * recibe una copia de solo lectura del mismo ByteBuffer, sin copiar los bytes.
+ */
+public final class Trama {
+
+    private final ByteBuffer bytes;
+
+    private Trama(ByteBuffer bytes) {
+        this.bytes = bytes.asReadOnlyBuffer();
+    }
+
+    public static Trama de(String mensaje) {
+        try {
+            ByteArrayOutputStream salida = new ByteArrayOutputStream(mensaje.length() + 2);
+            new DataOutputStream(salida).writeUTF(mensaje);
+            return new Trama(ByteBuffer.wrap(salida.toByteArray()));
+        } catch (IOException e) {
+            // Solo pasa si el mensaje codificado supera 65535 bytes
+            throw new IllegalArgumentException("Mensaje demasiado largo para una trama: " + e.getMessage(), e);
+        }
+    }
+
+    // Para ProtocoloBinario: el arreglo ya trae los 2 bytes de longitud
+    static Trama envolver(byte[] trama) {
+        return new Trama(ByteBuffer.wrap(trama));
+    }
+
+    // Vista propia (posición independiente) sobre los mismos bytes, para un destinatario
+    public ByteBuffer duplicado() {
+        return bytes.duplicate();
+    }
+
+    public int tamano() {
+        return bytes.remaining();
+    }
+}
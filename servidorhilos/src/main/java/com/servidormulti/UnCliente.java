@@ -1,43 +1,61 @@
 package com.servidormulti;
 
-import java.io.BufferedReader;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 
 public class UnCliente implements Runnable {
-    
+
     final DataOutputStream salida;
-    final DataInputStream entrada;
-    final String clienteID; 
-    
+    final DataInputStream entrada; // null en modo NIO: el selector decodifica las tramas
+    final String clienteID;
+
+    // Todo lo que se le manda al cliente pasa por aquí; nadie escribe directo al socket
+    private final ColaSalida colaSalida;
+    private final EscritorSalida escritor; // null en modo NIO: el selector vacía la cola
+
     // Referencias a los manejadores
-    private final ManejadorSalas manejadorSalas; 
+    private final ManejadorSalas manejadorSalas;
     private final ManejadorMenu manejadorMenu; // Nueva referencia
-    
-    private String nombreUsuario; 
+
+    private String nombreUsuario;
     private boolean logueado = false;
+    private volatile boolean protocoloBinario = false; // Se activa con ProtocoloBinario.COMANDO
 
-    private EstadoMenu estadoActual = EstadoMenu.MENU_PRINCIPAL; 
+    private EstadoMenu estadoActual = EstadoMenu.MENU_PRINCIPAL;
     private String nombreTemporal = null;
     private String contrasenaTemporal = null;
     private String salaActual = null;
 
-    private final PrintWriter salidaUTF;
-    private final BufferedReader entradaUTF;
-    
     UnCliente(Socket s, String id, ContextoServidor contexto) throws java.io.IOException {
-        this.salidaUTF = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), "UTF-8"), true);
-        this.entradaUTF = new BufferedReader(new InputStreamReader(s.getInputStream(), "UTF-8"));
+        this(id, contexto, new ColaSalida(id, () -> cerrarSocket(s)), new DataInputStream(s.getInputStream()), s);
+    }
+
+    // Constructor para el motor NIO: no hay hilo lector, los mensajes llegan por procesarMensaje()
+    UnCliente(String id, ContextoServidor contexto, ColaSalida colaSalida) {
+        this.clienteID = id;
+        this.nombreUsuario = "Invitado-" + id;
+        this.colaSalida = colaSalida;
+        this.escritor = null;
+        this.salida = new DataOutputStream(new FlujoSalida());
+        this.entrada = null;
+
+        this.manejadorSalas = contexto.getManejadorSalas();
+        this.manejadorMenu = contexto.getManejadorMenu();
+    }
+
+    private UnCliente(String id, ContextoServidor contexto, ColaSalida colaSalida, DataInputStream entrada, Socket s)
+            throws IOException {
         this.clienteID = id;
         this.nombreUsuario = "Invitado-" + id;
 
-        this.salida = new DataOutputStream(s.getOutputStream());
-        this.entrada = new DataInputStream(s.getInputStream());
+        this.colaSalida = colaSalida;
+        this.escritor = new EscritorSalida(colaSalida, s.getOutputStream(), () -> cerrarSocket(s));
+        this.salida = new DataOutputStream(new FlujoSalida());
+        this.entrada = entrada;
 
         // Obtenemos los manejadores del contexto
         this.manejadorSalas = contexto.getManejadorSalas();
@@ -51,20 +69,21 @@ public class UnCliente implements Runnable {
     public synchronized void establecerNombreTemporal(String nombre) { this.nombreTemporal = nombre; }
     public synchronized String obtenerContrasenaTemporal() { return contrasenaTemporal; }
     public synchronized void establecerContrasenaTemporal(String password) { this.contrasenaTemporal = password; }
-    public synchronized void limpiarTemporales() { 
-        this.nombreTemporal = null; 
+    public synchronized void limpiarTemporales() {
+        this.nombreTemporal = null;
         this.contrasenaTemporal = null;
     }
     public synchronized String obtenerSalaActual() { return salaActual; }
     public synchronized void establecerSalaActual(String sala) { this.salaActual = sala; }
-    
+
     public String getNombreUsuario() { return nombreUsuario; }
     public boolean estaLogueado() { return logueado; }
-    
+    public boolean usaProtocoloBinario() { return protocoloBinario; }
+
     // --- Manejo Interno de Login/Logout ---
     public boolean manejarLoginInterno(String nombre, String password) throws IOException {
         try {
-            this.nombreUsuario = nombre; 
+            this.nombreUsuario = nombre;
             this.logueado = true;
             return true;
         } catch (Exception e) {
@@ -74,66 +93,140 @@ public class UnCliente implements Runnable {
             return false;
         }
     }
-    
+
     // Manejo Externo de Logout
     public void manejarLogoutInterno() {
         if (this.logueado) {
             manejadorSalas.salirDelGrupoActual(this);
             this.logueado = false;
-            this.nombreUsuario = "Invitado-" + this.clienteID; 
+            this.nombreUsuario = "Invitado-" + this.clienteID;
         }
     }
-    
+
     // Manejo Externo de Logout con Mensaje
     public void manejarLogout() throws IOException {
         manejarLogoutInterno();
         this.salida.writeUTF("Has cerrado sesión. Tu nombre es ahora '" + this.getNombreUsuario() + "'.");
     }
 
-    @Override
-    public void run() {
+    // Muestra el menú inicial al conectarse
+    void mostrarBienvenida() {
         try {
             // Delegamos al ManejadorMenu mostrar el menú inicial
-            manejadorMenu.mostrarMenuPrincipal(this, salida); 
+            manejadorMenu.mostrarMenuPrincipal(this, salida);
         } catch (IOException e) { System.err.println("Error de bienvenida: " + e.getMessage()); }
+    }
+
+    // Procesa un mensaje ya decodificado (lo usan el hilo lector y el motor NIO)
+    void procesarMensaje(String mensaje) throws IOException {
+        // Negociación del protocolo: vale en cualquier menú, normalmente es lo primero que llega
+        if (mensaje.equalsIgnoreCase(ProtocoloBinario.COMANDO)) {
+            this.protocoloBinario = true;
+            salida.writeUTF("Protocolo binario activado para los eventos de la partida.");
+            return;
+        }
+        // Delegamos la lógica de decisión al ManejadorMenu
+        if (manejadorMenu.esEstadoDeSalas(obtenerEstadoActual())) {
+            manejadorSalas.procesar(mensaje, this, salida);
+        } else {
+            // Si no es sala, es lógica de menú/auth
+            manejadorMenu.procesar(mensaje, this, salida);
+        }
+    }
+
+    // El cliente se ha desconectado o hubo un error
+    void desconectar() {
+        System.out.println("Cliente " + this.nombreUsuario + " se ha desconectado.");
+        if (obtenerSalaActual() != null) {
+            manejadorSalas.salirDelGrupoActual(this);
+        }
+        ServidorMulti.clientes.remove(this.clienteID); // Elimina al cliente de la lista activa
+        try {
+            if (this.entrada != null) this.entrada.close();
+            this.salida.close();
+        } catch (IOException e) { e.printStackTrace(); } // Cierra flujos
+    }
+
+    private static void cerrarSocket(Socket s) {
+        try {
+            s.close();
+        } catch (IOException e) { /* Ya estaba cerrado */ }
+    }
+
+    // Encola un mensaje sin bloquear; si el cliente ya no está, se descarta
+    public void enviar(String mensaje) {
+        enviar(Trama.de(mensaje));
+    }
+
+    // Para difusiones: la trama se codificó una vez y aquí solo se comparte
+    public void enviar(Trama trama) {
+        encolar(trama.duplicado());
+    }
+
+    // Si el hilo actual tiene un LoteSalida abierto, la trama espera ahí
+    private boolean encolar(ByteBuffer trama) {
+        return LoteSalida.agregar(this, trama) || colaSalida.encolar(trama);
+    }
+
+    boolean encolarSinLote(ByteBuffer trama) {
+        return colaSalida.encolar(trama);
+    }
+
+    @Override
+    public void run() {
+        Hilos.ejecutar("Escritor-" + clienteID, escritor);
+        mostrarBienvenida();
 
         while (true) {
             try {
                 // Lee el mensaje del cliente
                 String mensaje = entrada.readUTF();
+                procesarMensaje(mensaje);
 
-                // Delegamos la lógica de decisión al ManejadorMenu
-                if (manejadorMenu.esEstadoDeSalas(estadoActual)) {
-                    manejadorSalas.procesar(mensaje, this, salida);
-                } else {
-                    // Si no es sala, es lógica de menú/auth
-                    manejadorMenu.procesar(mensaje, this, salida);
-                }
-                
             } catch (Exception ex) { // El cliente se ha desconectado o hubo un error
-                System.out.println("Cliente " + this.nombreUsuario + " se ha desconectado.");
-                if (this.salaActual != null) {
-                    manejadorSalas.salirDelGrupoActual(this);
-                }
-                ServidorMulti.clientes.remove(this.clienteID); // Elimina al cliente de la lista activa
-                try {
-                    this.entrada.close();
-                    this.salida.close();
-                } catch (IOException e) { e.printStackTrace(); } // Cierra flujos
+                desconectar();
                 break;
             }
         }
     }
-    
+
     public String getClienteID() {
         return this.clienteID;
     }
 
+    // Cada llamada da un flujo propio: DataOutputStream.writeUTF reutiliza un arreglo interno
+    // y no es seguro compartirlo entre el hilo del cliente y los de otros jugadores
     public DataOutputStream getSalida() {
-        return this.salida;
+        return new DataOutputStream(new FlujoSalida());
     }
 
     public ManejadorMenu getManejadorMenu() {
         return this.manejadorMenu;
     }
-}
\ No newline at end of file
+
+    public ManejadorSalas getManejadorSalas() {
+        return this.manejadorSalas;
+    }
+
+    // Permite seguir usando DataOutputStream.writeUTF: cada write() es una trama completa
+    private class FlujoSalida extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            byte[] copia = new byte[len];
+            System.arraycopy(b, off, copia, 0, len);
+            if (!encolar(ByteBuffer.wrap(copia))) {
+                throw new IOException("Conexión cerrada");
+            }
+        }
+
+        @Override
+        public void close() {
+            colaSalida.cerrarConexion();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.servidormulti;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Lo que Bitacora deja pendiente cuando no puede borrar o reemplazar un segmento
+ * mapeado (Windows). Aquí se arman los archivos como los dejaría la compactación, así
+ * que la prueba da lo mismo en cualquier sistema: el arranque los tiene que aplicar
+ * antes de mapear nada.
+ */
+class BitacoraTest {
+
+    private static final int SEGMENTO = 4096;
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void elArranqueBorraLosSegmentosMarcados() throws IOException {
+        segmento(1, registro(7, new byte[] {1, 2, 3}));
+        Files.createFile(directorio.resolve("bitacora-000001.log.borrar"));
+
+        Bitacora.iniciar(directorio, SEGMENTO, 1000);
+
+        // El número quedó libre: el segmento nuevo vuelve a ser el 1, sin el registro viejo
+        assertArrayEquals(new byte[4], Arrays.copyOf(Files.readAllBytes(directorio.resolve("bitacora-000001.log")), 4));
+        assertFalse(Files.exists(directorio.resolve("bitacora-000001.log.borrar")));
+        assertTrue(leidos().isEmpty());
+    }
+
+    @Test
+    void elArranqueAplicaLaCopiaCompactada() throws IOException {
+        byte[] vivo = registro(9, new byte[] {4, 5});
+        Path viejo = segmento(2, registro(8, new byte[] {1}), vivo);
+        Files.write(directorio.resolve("bitacora-000002.log.compactado"), vivo);
+
+        Bitacora.iniciar(directorio, SEGMENTO, 1000);
+
+        assertArrayEquals(vivo, Files.readAllBytes(viejo));
+        assertFalse(Files.exists(directorio.resolve("bitacora-000002.log.compactado")));
+        assertEquals(List.of(9L), leidos());
+    }
+
+    @Test
+    void unSegmentoSinRegistrosNoSobreviveAlArranque() throws IOException {
+        Path vacio = segmento(3, new byte[SEGMENTO]); // Preasignado en un arranque sin partidas
+
+        Bitacora.iniciar(directorio, SEGMENTO, 1000);
+
+        assertFalse(Files.exists(vacio));
+        assertTrue(Files.exists(directorio.resolve("bitacora-000004.log"))); // El número sigue avanzando
+    }
+
+    private List<Long> leidos() throws IOException {
+        List<Long> mesas = new ArrayList<>();
+        Bitacora.leer((mesa, datos) -> mesas.add(mesa));
+        return mesas;
+    }
+
+    private Path segmento(int numero, byte[]... registros) throws IOException {
+        ByteBuffer contenido = ByteBuffer.allocate(SEGMENTO);
+        for (byte[] r : registros) contenido.put(r);
+        Path archivo = directorio.resolve(String.format("bitacora-%06d.log", numero));
+        Files.write(archivo, contenido.array());
+        return archivo;
+    }
+
+    // [largo][crc][mesa][datos], como lo escribe Bitacora.anotar
+    private static byte[] registro(long mesa, byte[] datos) {
+        ByteBuffer cuerpo = ByteBuffer.allocate(8 + datos.length).putLong(mesa).put(datos);
+        CRC32C crc = new CRC32C();
+        crc.update(cuerpo.array());
+        return ByteBuffer.allocate(8 + cuerpo.capacity())
+                .putInt(8 + cuerpo.capacity()).putInt((int) crc.getValue()).put(cuerpo.array()).array();
+    }
+}
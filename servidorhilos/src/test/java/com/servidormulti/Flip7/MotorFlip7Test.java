@@ -0,0 +1,142 @@
+package com.servidormulti.Flip7;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Cuenta de cartas de MotorFlip7 (mazo + descarte + manos + acciones en vuelo = una
+ * baraja) revisada después de cada paso de partidas simuladas con semilla fija. Con
+ * meta alta y seis asientos el mazo se agota muchas veces por partida, así que el
+ * rebarajeo del descarte queda cubierto. Las partidas las juega la mesa de SimuladorFlip7.
+ */
+class MotorFlip7Test {
+
+    private static final int PARTIDAS = 200;
+    private static final int META = 1000;
+
+    private static final List<EstrategiaBot> ESTRATEGIAS = List.of(
+            EstrategiaBot.umbral(15), EstrategiaBot.umbral(30), EstrategiaBot.cartas(3),
+            EstrategiaBot.cartas(6), EstrategiaBot.optima(), EstrategiaBot.umbral(50));
+
+    @Test
+    void laBarajaTieneOchentaYNueveCartas() {
+        int total = 0;
+        for (int cuenta : Baraja.composicionPorCodigo()) total += cuenta;
+        assertEquals(78 + 3 * 3 + 2, total); // Numéricas del 1 al 12, tres de cada acción y dos bonus
+    }
+
+    @Test
+    void laCuentaDeCartasCuadraTrasCadaPaso() {
+        long rebarajeos = 0;
+        for (long semilla = 1; semilla <= PARTIDAS; semilla++) {
+            SimuladorFlip7.Mesa mesa = new SimuladorFlip7.Mesa(ESTRATEGIAS, semilla, META, MotorFlip7.Reglas.estandar());
+            long[] pasos = {0};
+            long s = semilla;
+            mesa.alCadaPaso(() -> assertTrue(mesa.motor().verificarInvariantes(), "Semilla " + s + ", paso " + ++pasos[0]));
+            SimuladorFlip7.Resultados r = mesa.jugar(1);
+            assertEquals(0, r.getAtascadas(), "La partida " + semilla + " no terminó");
+            rebarajeos += r.getRebarajeos();
+        }
+        // Sin rebarajeos la prueba no estaría revisando el descarte
+        assertTrue(rebarajeos > PARTIDAS, "Solo hubo " + rebarajeos + " rebarajeos");
+    }
+
+    @Test
+    void otraBarajaTambienCuadra() {
+        int[] composicion = Baraja.composicionPorCodigo();
+        composicion[12] = 0;        // Sin doces
+        composicion[Carta.X2] = 2;  // Dos x2
+        MotorFlip7.Reglas reglas = new MotorFlip7.Reglas(30, composicion);
+        for (long semilla = 1; semilla <= 20; semilla++) {
+            SimuladorFlip7.Mesa mesa = new SimuladorFlip7.Mesa(ESTRATEGIAS, semilla, META, reglas);
+            mesa.alCadaPaso(() -> assertTrue(mesa.motor().verificarInvariantes()));
+            assertEquals(0, mesa.jugar(1).getAtascadas());
+        }
+    }
+
+    @Test
+    void elObjetivoAutomaticoNoRechazaAlQueSeLeAcaboElTiempo() {
+        // Nadie elige objetivo: siempre se vence el límite y el motor elige solo. Mientras
+        // tanto se va un rival de la lista, que deja de ser un objetivo válido
+        MotorFlip7.Tiempos tiempos = new MotorFlip7.Tiempos(0, 0, 0, 1, Integer.MAX_VALUE);
+        for (long semilla = 1; semilla <= 50; semilla++) {
+            ArrayDeque<Runnable> pasos = new ArrayDeque<>();
+            String[] enTurno = {null};
+            List<String> rivalesPorSalir = new ArrayList<>();
+            List<String> rechazos = new ArrayList<>();
+            OyenteJuego oyente = new OyenteJuego() {
+                @Override
+                public void turno(String id) {
+                    enTurno[0] = id;
+                }
+
+                @Override
+                public void eligeObjetivo(String id, Carta accion, List<String> idsObjetivo) {
+                    for (String otro : idsObjetivo) {
+                        if (!otro.equals(id)) {
+                            rivalesPorSalir.add(otro);
+                            return;
+                        }
+                    }
+                }
+
+                @Override
+                public void accionFallida(String id, String motivo) {
+                    rechazos.add(motivo);
+                }
+            };
+            MotorFlip7 motor = new MotorFlip7(semilla, tiempos, (retrasoMs, paso) -> {
+                FutureTask<?> tarea = new FutureTask<>(paso, null);
+                pasos.add(tarea);
+                return tarea;
+            }, oyente);
+            motor.fijarPuntosParaGanar(META);
+            for (int i = 0; i < ESTRATEGIAS.size(); i++) motor.agregarJugador(String.valueOf(i), "J" + i);
+            motor.iniciarPartida();
+            while (true) {
+                Runnable paso = pasos.poll();
+                if (!rivalesPorSalir.isEmpty()) {
+                    if (paso != null) pasos.addFirst(paso); // El límite vence después de la salida
+                    String rival = rivalesPorSalir.remove(0);
+                    if (motor.obtenerJugadores().size() > 2) motor.removerJugador(rival);
+                } else if (paso != null) {
+                    paso.run();
+                } else if (enTurno[0] != null) {
+                    String quien = enTurno[0];
+                    enTurno[0] = null;
+                    if (ESTRATEGIAS.get(Integer.parseInt(quien)).quiereJalar(motor.obtenerJugador(quien), motor)) {
+                        motor.jalar(quien);
+                    } else {
+                        motor.parar(quien);
+                    }
+                } else {
+                    break;
+                }
+            }
+            assertFalse(motor.estaJuegoIniciado(), "La partida " + semilla + " no terminó");
+            assertEquals(List.of(), rechazos, "Semilla " + semilla);
+        }
+    }
+
+    @Test
+    void laMismaSemillaDaLaMismaPartida() {
+        assertEquals(jugarContandoPasos(42), jugarContandoPasos(42));
+    }
+
+    // Pasos y puntos del ganador: con la misma semilla tienen que repetirse
+    private static List<Long> jugarContandoPasos(long semilla) {
+        SimuladorFlip7.Mesa mesa = new SimuladorFlip7.Mesa(ESTRATEGIAS, semilla, META, MotorFlip7.Reglas.estandar());
+        long[] pasos = {0};
+        mesa.alCadaPaso(() -> pasos[0]++);
+        SimuladorFlip7.Resultados r = mesa.jugar(1);
+        return List.of(pasos[0], r.sumaPuntosGanador, r.getRebarajeos());
+    }
+}